@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Measures the time per draw of a shoulder sticker before and after stickers were pre-scaled:
+ * scaling the decoded sticker to the target height while drawing, as {@link FaceGraphic} used to,
+ * and blitting the variant the sticker cache made for that height.  Draws at a typical overlay size
+ * and at a typical picture size, and logs both.  The canvases are software ones, so the figures
+ * are for the resampling a draw costs rather than for a frame on the hardware renderer.<p>
+ *
+ * Run it on a device with {@code ./gradlew connectedAndroidTest}.
+ */
+public class ShoulderDrawBenchmark extends AndroidTestCase {
+    private static final String TAG = "ShoulderDrawBenchmark";
+    private static final int WARMUP_DRAWS = 10;
+    private static final int DRAWS = 50;
+
+    /**
+     * One draw of the sticker into the canvas.
+     */
+    private interface Draw {
+        void run(Canvas canvas);
+    }
+
+    public void testOverlaySize() {
+        StickerCache stickers = StickerCache.getInstance(getContext());
+        compare("overlay", 1080, 1920,
+                stickers.getVariant(StickerCache.SHOULDER_LEFT, 1920));
+    }
+
+    public void testPictureSize() {
+        StickerCache stickers = StickerCache.getInstance(getContext());
+        compare("picture", 1920, 2560,
+                stickers.getCaptureVariant(StickerCache.SHOULDER_LEFT, 2560));
+    }
+
+    /**
+     * Logs the time per draw of scaling the sticker into a {@code width} x {@code height} canvas
+     * next to the time per draw of blitting the given variant.
+     */
+    private void compare(String name, int width, int height, final Bitmap variant) {
+        final Bitmap sticker = StickerCache.getInstance(getContext())
+                .get(StickerCache.SHOULDER_LEFT);
+        assertNotNull(sticker);
+        assertNotNull(variant);
+        assertEquals(height, variant.getHeight());
+
+        final float scale = (float) height / sticker.getHeight();
+        final Paint filter = new Paint(Paint.FILTER_BITMAP_FLAG);
+        Bitmap target = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        try {
+            double before = millisPerDraw(canvas, new Draw() {
+                @Override
+                public void run(Canvas canvas) {
+                    canvas.save();
+                    canvas.scale(scale, scale);
+                    canvas.drawBitmap(sticker, 0, 0, filter);
+                    canvas.restore();
+                }
+            });
+            double after = millisPerDraw(canvas, new Draw() {
+                @Override
+                public void run(Canvas canvas) {
+                    canvas.drawBitmap(variant, 0, 0, null);
+                }
+            });
+            Log.i(TAG, String.format(Locale.US,
+                    "%s %dx%d: %.2f ms per draw scaling, %.2f ms blitting the variant", name,
+                    width, height, before, after));
+        } finally {
+            target.recycle();
+        }
+    }
+
+    private static double millisPerDraw(Canvas canvas, Draw draw) {
+        for (int i = 0; i < WARMUP_DRAWS; ++i) {
+            draw.run(canvas);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < DRAWS; ++i) {
+            draw.run(canvas);
+        }
+        return (System.nanoTime() - start) / 1e6 / DRAWS;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Detector wrapper which only passes every n-th camera frame on to the underlying detector, as
+ * decided by a {@link DetectionCadenceController}, and reports the latency of each processed frame
+ * and the frames the camera dropped back to the controller.<p>
+ *
+ * Skipped frames don't reach the processor at all, so trackers don't see them as missing.  Set the
+ * processor on this detector, not on the wrapped one.<p>
+ *
+ * Since it sees every camera frame, it also hands out copies of preview frames on request, for
+ * captures that don't need a full resolution still.
+ */
+class AdaptiveDetector<T> extends Detector<T> {
+    private final Detector<T> mDelegate;
+    private final DetectionCadenceController mController;
+    private int mLastFrameId = -1;
+    private final AtomicReference<FrameListener> mFrameRequest = new AtomicReference<>();
+
+    /**
+     * Receives a copy of the next camera frame, or null if the frame carries no NV21 data.  Called
+     * on the detector thread.
+     */
+    interface FrameListener {
+        void onFrame(PreviewFrame frame);
+    }
+
+    AdaptiveDetector(Detector<T> delegate, DetectionCadenceController controller) {
+        mDelegate = delegate;
+        mController = controller;
+    }
+
+    /**
+     * Asks for a copy of the next camera frame, skipped or not.  Replaces an earlier request that
+     * hasn't been served yet.  Frames are only copied while a request is pending.
+     */
+    void requestFrame(FrameListener listener) {
+        mFrameRequest.set(listener);
+    }
+
+    @Override
+    public void receiveFrame(Frame frame) {
+        FrameListener listener = mFrameRequest.getAndSet(null);
+        if (listener != null) {
+            listener.onFrame(PreviewFrame.copyOf(frame));
+        }
+
+        int frameId = frame.getMetadata().getId();
+        int dropped = (mLastFrameId < 0) ? 0 : Math.max(frameId - mLastFrameId - 1, 0);
+        mLastFrameId = frameId;
+        if (!mController.onFrame(dropped)) {
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        super.receiveFrame(frame);
+        mController.onFrameProcessed(SystemClock.elapsedRealtime() - start);
+    }
+
+    @Override
+    public SparseArray<T> detect(Frame frame) {
+        return mDelegate.detect(frame);
+    }
+
+    @Override
+    public boolean isOperational() {
+        return mDelegate.isOperational();
+    }
+
+    @Override
+    public boolean setFocus(int id) {
+        return mDelegate.setFocus(id);
+    }
+
+    @Override
+    public void release() {
+        mDelegate.release();
+        super.release();
+    }
+}
@@ -4,11 +4,16 @@ package com.google.android.gms.samples.vision.face.facetracker;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.RectF;
 import android.media.ExifInterface;
 import android.net.Uri;
 
+import com.google.android.gms.samples.vision.face.common.BitmapPool;
+
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
@@ -49,12 +54,8 @@ public class BitmapUtils {
         if (src == null) {
             return src;
         }
-        int w = src.getWidth();
-        int h = src.getHeight();
-
         Matrix mtx = flip(new Matrix());
-        Bitmap dst = Bitmap.createBitmap(src, 0, 0, w, h, mtx, false);
-        return dst;
+        return transform(src, mtx);
     }
 
     private static Matrix flip(Matrix input) {
@@ -66,15 +67,35 @@ public class BitmapUtils {
         if (rotate == 0 || src == null) {
             return src;
         }
-        int w = src.getWidth();
-        int h = src.getHeight();
         Matrix mtx = new Matrix();
         mtx.postRotate(rotate);
         if (shouldFlip) {
             mtx = flip(mtx);
         }
 
-        return Bitmap.createBitmap(src, 0, 0, w, h, mtx, false);
+        return transform(src, mtx);
+    }
+
+    /**
+     * Draws the source bitmap through the matrix into a new bitmap, which is taken from the
+     * {@link BitmapPool} when a suitable one is available.  The source is left untouched.
+     */
+    private static Bitmap transform(Bitmap src, Matrix mtx) {
+        RectF bounds = new RectF(0, 0, src.getWidth(), src.getHeight());
+        mtx.mapRect(bounds);
+        int w = Math.round(bounds.width());
+        int h = Math.round(bounds.height());
+        Bitmap.Config config = (src.getConfig() != null) ? src.getConfig() : Bitmap.Config.ARGB_8888;
+
+        Bitmap dst = BitmapPool.getInstance().get(w, h, config);
+        if (dst == null) {
+            dst = Bitmap.createBitmap(w, h, config);
+        } else {
+            dst.eraseColor(0);
+        }
+        mtx.postTranslate(-bounds.left, -bounds.top);
+        new Canvas(dst).drawBitmap(src, mtx, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return dst;
     }
 
     public static int getPhotoOrientaion(Context ctx, Uri uri) throws IOException {
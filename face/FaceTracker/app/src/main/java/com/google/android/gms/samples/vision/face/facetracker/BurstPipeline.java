@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pushes the shots of one burst through decode, composite and encode stages that run on their own
+ * threads, so that one shot is encoded while the next is composited and a third is decoded.<p>
+ *
+ * The stages are joined by bounded queues.  Shots wait for the decoder in an input queue sized
+ * for the whole burst, since the camera's JPEGs are small; after decoding, a shot is a full size
+ * bitmap, so the queues between the stages hold only a few and a slow stage holds the earlier ones
+ * back.  A shot that fails in one stage skips the rest and is reported as failed.  Per-stage
+ * latencies and the overall throughput are reported when the burst is done.<p>
+ *
+ * Plain Java; the stages are supplied by the caller, so the pipeline runs with stub codecs too.
+ * {@link #submit} and {@link #finish} may be called from any thread; the listener is called on the
+ * encode thread.
+ *
+ * @param <S> the captured data, e.g. a JPEG
+ * @param <D> the decoded picture, composited in place
+ * @param <R> the encoded result
+ */
+class BurstPipeline<S, D, R> {
+    /**
+     * One step of the pipeline.  Runs on the stage's own thread.
+     */
+    interface Stage<I, O> {
+        O process(I input) throws Exception;
+    }
+
+    /**
+     * Receives the outcome of every shot, in submission order, and then the statistics.
+     */
+    interface Listener<R> {
+        void onShotDone(int index, R result);
+
+        void onShotFailed(int index, Exception error);
+
+        void onBurstDone(Stats stats);
+    }
+
+    /**
+     * Latency figures of one stage.
+     */
+    static final class StageStats {
+        final String name;
+        int processed;
+        int failed;
+        long totalNanos;
+        long worstNanos;
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos) {
+            processed++;
+            totalNanos += nanos;
+            worstNanos = Math.max(worstNanos, nanos);
+        }
+
+        long getAverageMillis() {
+            return (processed == 0) ? 0 : totalNanos / processed / 1000000L;
+        }
+
+        long getWorstMillis() {
+            return worstNanos / 1000000L;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{processed=" + processed + ", failed=" + failed + ", averageMillis="
+                    + getAverageMillis() + ", worstMillis=" + getWorstMillis() + "}";
+        }
+    }
+
+    /**
+     * Figures of a finished burst.
+     */
+    static final class Stats {
+        final int shots;
+        final int failed;
+        final long elapsedNanos;
+        final StageStats[] stages;
+
+        Stats(int shots, int failed, long elapsedNanos, StageStats[] stages) {
+            this.shots = shots;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.stages = stages;
+        }
+
+        /**
+         * Returns the shots completed per second, from the start of the pipeline to the last shot.
+         */
+        float getShotsPerSecond() {
+            return (elapsedNanos == 0) ? 0 : (shots - failed) * 1e9f / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("Burst{shots=").append(shots)
+                    .append(", failed=").append(failed)
+                    .append(", elapsedMillis=").append(elapsedNanos / 1000000L)
+                    .append(", shotsPerSecond=").append(getShotsPerSecond());
+            for (StageStats stage : stages) {
+                builder.append(", ").append(stage);
+            }
+            return builder.append('}').toString();
+        }
+    }
+
+    /**
+     * A shot on its way through the stages.  Handed from thread to thread through the queues,
+     * which publish its fields.
+     */
+    private static final class Shot {
+        final int index;
+        Object value;
+        Exception error;
+
+        Shot(int index, Object value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    // Follows the last shot through the stages.
+    private static final Shot END = new Shot(-1, null);
+
+    private final Listener<R> mListener;
+    private final int mMaxShots;
+
+    private final BlockingQueue<Shot> mInput;
+    private final BlockingQueue<Shot> mDecoded;
+    private final BlockingQueue<Shot> mComposited;
+    private final StageStats[] mStageStats = {
+            new StageStats("decode"), new StageStats("composite"), new StageStats("encode")
+    };
+    private final Thread[] mWorkers;
+
+    private int mSubmitted;
+    private boolean mFinished;
+    private long mStartNanos;
+    private int mFailed;
+
+    /**
+     * @param maxShots number of shots the burst may submit
+     * @param queueCapacity number of decoded pictures that may wait between two stages
+     */
+    BurstPipeline(Stage<S, D> decode, Stage<D, D> composite, Stage<D, R> encode,
+                  Listener<R> listener, int maxShots, int queueCapacity) {
+        mListener = listener;
+        mMaxShots = maxShots;
+        // One more slot, for the end marker.
+        mInput = new ArrayBlockingQueue<>(maxShots + 1);
+        mDecoded = new ArrayBlockingQueue<>(queueCapacity);
+        mComposited = new ArrayBlockingQueue<>(queueCapacity);
+        mWorkers = new Thread[] {
+                new Worker<>(decode, mInput, mDecoded, mStageStats[0]),
+                new Worker<>(composite, mDecoded, mComposited, mStageStats[1]),
+                new Worker<>(encode, mComposited, null, mStageStats[2])
+        };
+    }
+
+    /**
+     * Starts the stage threads.
+     */
+    synchronized void start() {
+        mStartNanos = System.nanoTime();
+        for (Thread worker : mWorkers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues the next shot and returns its index, or -1 if the burst is finished or already has
+     * all its shots.  Never blocks.
+     */
+    synchronized int submit(S data) {
+        if (mFinished || mSubmitted >= mMaxShots) {
+            return -1;
+        }
+        Shot shot = new Shot(mSubmitted, data);
+        mInput.add(shot);
+        return mSubmitted++;
+    }
+
+    /**
+     * Ends the burst; the listener is told once the shots submitted so far are through.
+     */
+    synchronized void finish() {
+        if (!mFinished) {
+            mFinished = true;
+            mInput.add(END);
+        }
+    }
+
+    /**
+     * Stops all stages right away.  Shots still in the pipeline are dropped without being
+     * reported.
+     */
+    synchronized void cancel() {
+        mFinished = true;
+        for (Thread worker : mWorkers) {
+            worker.interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(Shot shot) {
+        if (shot == END) {
+            long elapsed = System.nanoTime() - mStartNanos;
+            mListener.onBurstDone(new Stats(mStageStats[0].processed + mStageStats[0].failed,
+                    mFailed, elapsed, mStageStats));
+        } else if (shot.error != null) {
+            mFailed++;
+            mListener.onShotFailed(shot.index, shot.error);
+        } else {
+            mListener.onShotDone(shot.index, (R) shot.value);
+        }
+    }
+
+    /**
+     * Runs one stage: takes shots from {@code in}, processes them and passes them to {@code out},
+     * or to the listener for the last stage, until the end marker comes through.
+     */
+    private final class Worker<I, O> extends Thread {
+        private final Stage<I, O> mStage;
+        private final BlockingQueue<Shot> mIn;
+        private final BlockingQueue<Shot> mOut;
+        private final StageStats mStats;
+
+        Worker(Stage<I, O> stage, BlockingQueue<Shot> in, BlockingQueue<Shot> out,
+               StageStats stats) {
+            super("burst-" + stats.name);
+            mStage = stage;
+            mIn = in;
+            mOut = out;
+            mStats = stats;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            try {
+                while (true) {
+                    Shot shot = mIn.take();
+                    if (shot != END && shot.error == null) {
+                        long start = System.nanoTime();
+                        try {
+                            shot.value = mStage.process((I) shot.value);
+                            mStats.record(System.nanoTime() - start);
+                        } catch (Exception e) {
+                            shot.value = null;
+                            shot.error = e;
+                            mStats.failed++;
+                        }
+                    }
+                    if (mOut != null) {
+                        mOut.put(shot);
+                    } else {
+                        deliver(shot);
+                    }
+                    if (shot == END) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Cancelled.
+            }
+        }
+    }
+}
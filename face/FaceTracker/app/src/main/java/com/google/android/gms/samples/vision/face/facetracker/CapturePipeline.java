@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import com.google.android.gms.samples.vision.face.common.BitmapPool;
+import com.google.android.gms.samples.vision.face.facetracker.ui.camera.GraphicOverlay;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Turns a JPEG from the camera into the shared photo with the overlay graphics drawn on top.  The
+ * graphics come from a {@link GraphicOverlay.CaptureSnapshot} taken when the shutter fired, so the
+ * pipeline never touches the live overlay.<p>
+ *
+ * The JPEG is decoded once into a pooled bitmap in sensor orientation.  Only the front camera in
+ * portrait is supported; its picture has to be rotated by 90 degrees and mirrored to match the
+ * preview, so it is drawn upright into a second pooled bitmap through that transform, the overlay
+ * is drawn on top and the result is encoded once.  The pixels themselves are upright, so viewers and share targets that ignore EXIF
+ * orientation show the picture the right way round.  The file is then registered with the media
+ * store as is, without the decode and second encode that
+ * {@link MediaStore.Images.Media#insertImage} would do.<p>
+ *
+ * For a quick share, {@link #captureFrame} takes a preview frame instead of the JPEG: the NV21 data
+ * is converted to pixels directly, skipping the still capture and the JPEG decode.  Preview frames
+ * come in the same sensor orientation as the still, so they are composited and encoded the same
+ * way.
+ */
+class CapturePipeline {
+    private static final String TAG = "CapturePipeline";
+    private static final int JPEG_QUALITY = 90;
+
+    private final ContentResolver mResolver;
+    private final BitmapPool mPool = BitmapPool.getInstance();
+    // Converted preview pixels, reused from one fast capture to the next.
+    private int[] mArgb;
+
+    /**
+     * Outcome of one capture.
+     */
+    static class Result {
+        final File file;
+        final Uri contentUri;
+        final long peakBytes;
+        final long elapsedMillis;
+
+        Result(File file, Uri contentUri, long peakBytes, long elapsedMillis) {
+            this.file = file;
+            this.contentUri = contentUri;
+            this.peakBytes = peakBytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    /**
+     * One picture on its way through the steps: the camera JPEG, the overlay as it was when the
+     * shutter fired and, once decoded, the bitmap.
+     */
+    static class Shot {
+        final byte[] jpeg;
+        final GraphicOverlay.CaptureSnapshot overlay;
+        Bitmap bitmap;
+
+        Shot(byte[] jpeg, GraphicOverlay.CaptureSnapshot overlay) {
+            this.jpeg = jpeg;
+            this.overlay = overlay;
+        }
+    }
+
+    CapturePipeline(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Runs the whole pipeline for one picture and writes the result to {@code output}.
+     */
+    Result capture(byte[] jpeg, GraphicOverlay.CaptureSnapshot overlay, File output)
+            throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        long baseline = usedMemory();
+        return finish(decode(jpeg), overlay, output, start, baseline);
+    }
+
+    /**
+     * Runs the pipeline for a preview frame instead of a JPEG and writes the result to
+     * {@code output}.
+     */
+    Result captureFrame(PreviewFrame frame, GraphicOverlay.CaptureSnapshot overlay, File output)
+            throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        long baseline = usedMemory();
+        return finish(convert(frame), overlay, output, start, baseline);
+    }
+
+    /**
+     * Composites, encodes and registers a decoded picture and returns the bitmaps to the pool.
+     */
+    private Result finish(Bitmap bitmap, GraphicOverlay.CaptureSnapshot overlay, File output,
+                          long start, long baseline) throws IOException {
+        long peak = Math.max(baseline, usedMemory());
+        Bitmap upright = composite(bitmap, overlay);
+        try {
+            peak = Math.max(peak, usedMemory());
+            encode(upright, output);
+        } finally {
+            // The next capture draws into the same buffer.
+            release(upright);
+        }
+        Uri uri = register(output);
+
+        Result result = new Result(output, uri, peak - baseline,
+                SystemClock.elapsedRealtime() - start);
+        Log.d(TAG, "Captured " + output.getName() + " in " + result.elapsedMillis + " ms, peak "
+                + (result.peakBytes / 1024) + " KB, " + mPool);
+        return result;
+    }
+
+    /**
+     * Decodes the camera JPEG into a mutable bitmap, in sensor orientation.
+     */
+    Bitmap decode(byte[] jpeg) throws IOException {
+        Bitmap bitmap = mPool.decodeByteArray(jpeg, new BitmapFactory.Options());
+        if (bitmap == null) {
+            throw new IOException("Unable to decode picture");
+        }
+        if (!bitmap.isMutable()) {
+            // Only happens before Honeycomb, which can't decode into a mutable bitmap.
+            Bitmap copy = bitmap.copy(Bitmap.Config.ARGB_8888, true);
+            bitmap.recycle();
+            bitmap = copy;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Converts a preview frame into a mutable bitmap, in sensor orientation.
+     */
+    synchronized Bitmap convert(PreviewFrame frame) {
+        int width = frame.width;
+        int height = frame.height;
+        if (mArgb == null || mArgb.length < width * height) {
+            mArgb = new int[width * height];
+        }
+        YuvKernels.toArgb(frame.nv21, width, height, mArgb);
+
+        Bitmap bitmap = mPool.get(width, height, Bitmap.Config.ARGB_8888);
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        bitmap.setPixels(mArgb, 0, width, 0, 0, width, height);
+        return bitmap;
+    }
+
+    /**
+     * Draws the sensor oriented bitmap upright and mirrored into a pooled bitmap of the transposed
+     * size, with the overlay snapshot on top, and returns it.  The graphics scale overlay
+     * coordinates to the size of the upright picture themselves.  The sensor oriented bitmap goes
+     * back to the pool either way.
+     */
+    Bitmap composite(Bitmap bitmap, GraphicOverlay.CaptureSnapshot overlay) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        Bitmap upright = null;
+        try {
+            // The upright picture is height x width.
+            upright = mPool.get(height, width, Bitmap.Config.ARGB_8888);
+            if (upright == null) {
+                upright = Bitmap.createBitmap(height, width, Bitmap.Config.ARGB_8888);
+            }
+            Canvas canvas = new Canvas(upright);
+            canvas.save();
+            canvas.concat(sensorToUpright(width, height));
+            // Opaque, so it covers whatever a pooled bitmap held before.
+            canvas.drawBitmap(bitmap, 0, 0, null);
+            canvas.restore();
+            overlay.draw(canvas, height, width);
+            return upright;
+        } catch (RuntimeException e) {
+            release(upright);
+            throw e;
+        } finally {
+            release(bitmap);
+        }
+    }
+
+    /**
+     * Encodes the upright bitmap to the given file.
+     */
+    void encode(Bitmap bitmap, File output) throws IOException {
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, stream)) {
+                throw new IOException("Unable to encode " + output);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns a decoded bitmap to the pool once the caller is done with it, so that the next
+     * decode can reuse it.
+     */
+    void release(Bitmap bitmap) {
+        mPool.put(bitmap);
+    }
+
+    /**
+     * Adds the file to the media store and returns its content uri, or null if that failed.
+     */
+    Uri register(File file) {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.DATA, file.getAbsolutePath());
+        values.put(MediaStore.Images.Media.TITLE, file.getName());
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, file.getName());
+        values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+        values.put(MediaStore.Images.Media.DATE_TAKEN, System.currentTimeMillis());
+        try {
+            return mResolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to add " + file + " to the media store", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the transform from the sensor oriented bitmap (width x height) to the upright,
+     * mirrored picture (height x width): a 90 degree rotation followed by a vertical flip, i.e. a
+     * reflection about the anti-diagonal.  (x, y) maps to (height - y, width - x).
+     */
+    static Matrix sensorToUpright(int width, int height) {
+        Matrix matrix = new Matrix();
+        matrix.setValues(sensorToUprightValues(width, height));
+        return matrix;
+    }
+
+    /**
+     * Returns the row major 3x3 values of {@link #sensorToUpright}.
+     */
+    static float[] sensorToUprightValues(int width, int height) {
+        return new float[] {
+                0, -1, height,
+                -1, 0, width,
+                0, 0, 1
+        };
+    }
+
+    /**
+     * Returns the bytes currently in use on the Java and native heaps; bitmap pixels live on one or
+     * the other depending on the platform version.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+/**
+ * Decides how often and at which resolution detection runs, in order to hold a per-frame latency
+ * budget.  It is fed the measured latency of every processed frame and the number of camera frames
+ * dropped in between:
+ * <ul>
+ * <li>Latency over budget steps the detection resolution down.</li>
+ * <li>Dropped frames (the detector can't keep up with the camera) raise the frame stride, so that
+ * only every n-th frame is processed.</li>
+ * <li>Sustained headroom first lowers the stride again, then steps the resolution back up.</li>
+ * </ul>
+ * After a resolution change the controller waits for {@link #RESOLUTION_DWELL_SAMPLES} processed
+ * frames before it judges the new resolution, so that the frames around the camera restart don't
+ * immediately step it back.  The {@link Profile#LOW_POWER} profile pins the lowest resolution and
+ * the largest stride.<p>
+ *
+ * Plain Java, not thread safe; all calls except {@link #setProfile} are expected from the detector
+ * thread.
+ */
+class DetectionCadenceController {
+    enum Profile {
+        ADAPTIVE,
+        LOW_POWER
+    }
+
+    /**
+     * Notified when the detection resolution changes.
+     */
+    interface Listener {
+        void onResolutionChanged(int width, int height);
+    }
+
+    private static final float LATENCY_SMOOTHING = 0.2f;
+    private static final float HEADROOM_RATIO = 0.5f;
+    private static final int OVERLOAD_SAMPLES = 3;
+    private static final int UNDERLOAD_SAMPLES = 30;
+
+    /**
+     * Number of processed frames ignored after a resolution change.
+     */
+    static final int RESOLUTION_DWELL_SAMPLES = 15;
+
+    private final long mTargetLatencyMillis;
+    private final int mMaxStride;
+    private final int[][] mResolutions;
+    private Listener mListener;
+
+    private Profile mProfile = Profile.ADAPTIVE;
+    private volatile Profile mRequestedProfile = Profile.ADAPTIVE;
+    private int mLevel;
+    private int mStride = 1;
+    private int mFrameCount;
+    private int mPendingDrops;
+
+    private float mAverageLatency = -1;
+    private int mOverloadedSamples;
+    private int mUnderloadedSamples;
+    private int mDwellSamples;
+
+    /**
+     * @param targetLatencyMillis per-frame detection latency to hold
+     * @param maxStride largest frame stride; at that stride only one frame in {@code maxStride} is
+     *                  sent to detection
+     * @param resolutions {width, height} pairs ordered from highest to lowest resolution
+     */
+    DetectionCadenceController(long targetLatencyMillis, int maxStride, int[][] resolutions) {
+        if (maxStride < 1 || resolutions.length == 0) {
+            throw new IllegalArgumentException("Need a positive stride and at least one resolution");
+        }
+        mTargetLatencyMillis = targetLatencyMillis;
+        mMaxStride = maxStride;
+        mResolutions = resolutions;
+    }
+
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Switches the profile, e.g. when the device enters or leaves power save mode.  May be called
+     * from any thread; the profile takes effect with the next frame.
+     */
+    void setProfile(Profile profile) {
+        mRequestedProfile = profile;
+    }
+
+    Profile getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * Called for every camera frame.  Returns true if the frame should be sent to detection.
+     *
+     * @param droppedFrames number of camera frames that never reached the detector since the
+     *                      previous call
+     */
+    boolean onFrame(int droppedFrames) {
+        Profile requested = mRequestedProfile;
+        if (requested != mProfile) {
+            applyProfile(requested);
+        }
+        mPendingDrops += droppedFrames;
+        return (mFrameCount++ % mStride) == 0;
+    }
+
+    /**
+     * Records the latency of a frame that was sent to detection.
+     */
+    void onFrameProcessed(long latencyMillis) {
+        int drops = mPendingDrops;
+        mPendingDrops = 0;
+        if (mProfile != Profile.ADAPTIVE) {
+            return;
+        }
+        if (mDwellSamples > 0) {
+            mDwellSamples--;
+            return;
+        }
+
+        if (mAverageLatency < 0) {
+            mAverageLatency = latencyMillis;
+        } else {
+            mAverageLatency += LATENCY_SMOOTHING * (latencyMillis - mAverageLatency);
+        }
+
+        boolean overBudget = mAverageLatency > mTargetLatencyMillis;
+        if (overBudget || drops > 0) {
+            mUnderloadedSamples = 0;
+            if (++mOverloadedSamples >= OVERLOAD_SAMPLES) {
+                if (overBudget && mLevel < mResolutions.length - 1) {
+                    setLevel(mLevel + 1);
+                } else if (mStride < mMaxStride) {
+                    mStride++;
+                } else if (mLevel < mResolutions.length - 1) {
+                    setLevel(mLevel + 1);
+                }
+                resetSamples();
+            }
+        } else if (mAverageLatency < mTargetLatencyMillis * HEADROOM_RATIO) {
+            mOverloadedSamples = 0;
+            if (++mUnderloadedSamples >= UNDERLOAD_SAMPLES) {
+                if (mStride > 1) {
+                    mStride--;
+                } else if (mLevel > 0) {
+                    setLevel(mLevel - 1);
+                }
+                resetSamples();
+            }
+        } else {
+            mOverloadedSamples = 0;
+            mUnderloadedSamples = 0;
+        }
+    }
+
+    int getStride() {
+        return mStride;
+    }
+
+    int getResolutionLevel() {
+        return mLevel;
+    }
+
+    int getWidth() {
+        return mResolutions[mLevel][0];
+    }
+
+    int getHeight() {
+        return mResolutions[mLevel][1];
+    }
+
+    float getAverageLatencyMillis() {
+        return Math.max(mAverageLatency, 0);
+    }
+
+    private void applyProfile(Profile profile) {
+        mProfile = profile;
+        resetSamples();
+        if (profile == Profile.LOW_POWER) {
+            mStride = mMaxStride;
+            setLevel(mResolutions.length - 1);
+        }
+    }
+
+    private void setLevel(int level) {
+        if (level == mLevel) {
+            return;
+        }
+        mLevel = level;
+        mDwellSamples = RESOLUTION_DWELL_SAMPLES;
+        if (mListener != null) {
+            mListener.onResolutionChanged(getWidth(), getHeight());
+        }
+    }
+
+    private void resetSamples() {
+        mAverageLatency = -1;
+        mOverloadedSamples = 0;
+        mUnderloadedSamples = 0;
+    }
+}
@@ -18,12 +18,20 @@ package com.google.android.gms.samples.vision.face.facetracker;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.SystemClock;
 
 import com.google.android.gms.vision.face.Face;
 import com.google.android.gms.samples.vision.face.facetracker.ui.camera.GraphicOverlay;
 import com.google.android.gms.vision.face.Landmark;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import bolts.Task;
+
 /**
  * Graphic instance for rendering face position, orientation, and landmarks within an associated
  * graphic overlay view.
@@ -34,6 +42,14 @@ public class FaceGraphic extends GraphicOverlay.Graphic {
     private static final float ID_Y_OFFSET = 50.0f;
     private static final float ID_X_OFFSET = -50.0f;
     private static final float BOX_STROKE_WIDTH = 5.0f;
+    // Head tilt, in degrees, beyond which the shoulder on that side is shown.
+    private static final float SHOULDER_TILT = 10;
+    // Smiling probability beyond which the feed picture is shown.
+    private static final float SMILE_THRESHOLD = 0.2f;
+    // What the static layers show, in the low bits of their keys.
+    private static final int LAYER_LEFT_SHOULDER = 1;
+    private static final int LAYER_RIGHT_SHOULDER = 2;
+    private static final int LAYER_FEED = 3;
 
     private static final int COLOR_CHOICES[] = {
         Color.BLUE,
@@ -49,14 +65,26 @@ public class FaceGraphic extends GraphicOverlay.Graphic {
     private Paint mFacePositionPaint;
     private Paint mIdPaint;
     private Paint mBoxPaint;
+    private Paint mLandmarkPaint;
+    private final Paint mShoulderPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
     private volatile Face mFace;
     private int mFaceId;
     private Bitmap mHandBitmap;
-    private float mRotation;
+    private final FacePoseFilter mPose = new FacePoseFilter();
+    private final Scratch mDrawScratch = new Scratch();
     private Bitmap mFeedBitmap;
-    private Bitmap mLeftShoulder;
-    private Bitmap mRightShoulder;
+    private StickerCache mStickers;
+    private String mLeftShoulder;
+    private String mRightShoulder;
+    // Bumped whenever a sticker is replaced, so that the static layers are rendered again.
+    private volatile int mStickerVersion;
+    private final GraphicOverlay.StaticLayer mShoulderLayer;
+    private final GraphicOverlay.StaticLayer mFeedLayer;
+    // Shoulder stickers scaled to the overlay height.  Both sides are looked up in the background
+    // as soon as the overlay is drawn at a new height, so the UI thread never scales a sticker.
+    private volatile int mVariantHeight;
+    private volatile ShoulderVariants mVariants;
 
     FaceGraphic(GraphicOverlay overlay) {
         super(overlay);
@@ -75,6 +103,32 @@ public class FaceGraphic extends GraphicOverlay.Graphic {
         mBoxPaint.setColor(selectedColor);
         mBoxPaint.setStyle(Paint.Style.STROKE);
         mBoxPaint.setStrokeWidth(BOX_STROKE_WIDTH);
+
+        mLandmarkPaint = new Paint();
+        mLandmarkPaint.setColor(Color.GREEN);
+        mLandmarkPaint.setStyle(Paint.Style.STROKE);
+        mLandmarkPaint.setStrokeWidth(5);
+
+        mShoulderLayer = createStaticLayer(new GraphicOverlay.StaticLayer.Renderer() {
+            @Override
+            public void render(Canvas canvas, long key, int width, int height) {
+                ShoulderVariants variants = mVariants;
+                Bitmap shoulder = (variants == null) ? null
+                        : ((key & 3) == LAYER_LEFT_SHOULDER) ? variants.left : variants.right;
+                if (shoulder != null) {
+                    canvas.drawBitmap(shoulder, 0, 0, null);
+                }
+            }
+        });
+        mFeedLayer = createStaticLayer(new GraphicOverlay.StaticLayer.Renderer() {
+            @Override
+            public void render(Canvas canvas, long key, int width, int height) {
+                Bitmap feed = mFeedBitmap;
+                if (feed != null) {
+                    canvas.drawBitmap(feed, 0, 0, null);
+                }
+            }
+        });
     }
 
     void setId(int id) {
@@ -84,31 +138,124 @@ public class FaceGraphic extends GraphicOverlay.Graphic {
     /**
      * Updates the face instance from the detection of the most recent frame.  Invalidates the
      * relevant portions of the overlay to trigger a redraw.
+     *
+     * @param frameMillis timestamp of the frame the face was detected in
      */
-    void updateFace(Face face) {
+    void updateFace(Face face, long frameMillis) {
+        mPose.update(face.getPosition().x + face.getWidth() / 2,
+                face.getPosition().y + face.getHeight() / 2,
+                face.getWidth(), face.getHeight(), face.getEulerZ(), frameMillis,
+                SystemClock.uptimeMillis());
         mFace = face;
         postInvalidate();
     }
+
+    /**
+     * Forgets the face once it is lost, so that a face showing up again isn't smoothed towards or
+     * extrapolated from where this one was last seen.
+     */
+    void clearFace() {
+        mFace = null;
+        mPose.reset();
+    }
     public void addHand(Bitmap bitmap) {
         mHandBitmap = bitmap;
     }
 
     /**
-     * Draws the face annotations for position on the supplied canvas.
+     * Draws the face annotations for position on the supplied canvas.  The shoulder and feed
+     * stickers are drawn from this graphic's static layers, which are only rendered again when the
+     * side or the sticker shown changes.
      */
     @Override
     public void draw(Canvas canvas) {
-        drawInCanvas(canvas);
+        long now = SystemClock.uptimeMillis();
+        Scratch scratch = mDrawScratch;
+        Placement placement = scratch.placement;
+        if (place(now, scratch.pose, placement)) {
+            int height = canvas.getHeight();
+            Bitmap shoulder = shoulderVariant(placement.rotation, height);
+            if (shoulder != null) {
+                int side = (placement.rotation < 0) ? LAYER_LEFT_SHOULDER : LAYER_RIGHT_SHOULDER;
+                shoulder = mShoulderLayer.get(layerKey(side), shoulder.getWidth(),
+                        shoulder.getHeight());
+            }
+            Bitmap feed = mFeedBitmap;
+            feed = (feed != null && showsFeed(placement, 1, height))
+                    ? mFeedLayer.get(layerKey(LAYER_FEED), feed.getWidth(), feed.getHeight())
+                    : null;
+            drawPlacement(canvas, placement, scratch.bounds, scratch.matrix, mHandBitmap, feed, 1,
+                    1, canvas.getWidth(), height, shoulder, mShoulderPaint);
+        }
+        if (mPose.isExtrapolating(now)) {
+            // Keep animating the predicted pose at display rate until the next detection.
+            postInvalidate();
+        }
     }
-    public void drawInCanvas(Canvas canvas) {
+
+    /**
+     * Copies the face's current placement and stickers, so that a captured picture can be
+     * composited at its own resolution without touching this graphic again.
+     */
+    @Override
+    public GraphicOverlay.CaptureGraphic snapshot() {
+        Placement placement = new Placement();
+        if (!place(SystemClock.uptimeMillis(), new float[FacePoseFilter.SIZE], placement)) {
+            return null;
+        }
+        return new Snapshot(placement, mHandBitmap, mFeedBitmap, mStickers,
+                shoulderAsset(placement.rotation));
+    }
+
+    /**
+     * Maps the face's pose predicted for the given time to overlay view coordinates.  Returns false
+     * if there is no face to show.
+     */
+    private boolean place(long timeMillis, float[] pose, Placement out) {
         Face face = mFace;
-        if (face == null) {
-            return;
+        if (face == null || !mPose.predict(timeMillis, pose)) {
+            return false;
         }
+        out.x = translateX(pose[FacePoseFilter.CENTER_X]);
+        out.y = translateY(pose[FacePoseFilter.CENTER_Y]);
+        out.halfWidth = scaleX(pose[FacePoseFilter.WIDTH] / 2.0f);
+        out.halfHeight = scaleY(pose[FacePoseFilter.HEIGHT] / 2.0f);
+        out.rotation = pose[FacePoseFilter.EULER_Z];
+        out.smiling = face.getIsSmilingProbability() > SMILE_THRESHOLD;
+        return true;
+    }
+
+    /**
+     * Returns the static layer key for the given content of the current stickers.
+     */
+    private long layerKey(int content) {
+        return ((long) mStickerVersion << 2) | content;
+    }
+
+    /**
+     * Returns whether the feed picture is shown below a face placed in overlay view coordinates,
+     * drawn into a picture of the given height with the given vertical scale.
+     */
+    private static boolean showsFeed(Placement placement, float scaleY, int height) {
+        return placement.smiling && (placement.y + placement.halfHeight) * scaleY >= height / 2;
+    }
+
+    /**
+     * Draws a face placed in overlay view coordinates into a picture of the given upright size,
+     * without scaling the canvas: positions are mapped with the given factors.  The shoulder
+     * sticker for the head tilt, if any, is scaled to the picture height with {@code matrix}, which
+     * is a plain blit for a variant made for that height.  {@code bounds} and {@code matrix} are
+     * passed in so that the draw loop doesn't allocate.
+     */
+    private static void drawPlacement(Canvas canvas, Placement placement, RectF bounds,
+                                      Matrix matrix, Bitmap hand, Bitmap feed, float scaleX,
+                                      float scaleY, int width, int height, Bitmap shoulder,
+                                      Paint shoulderPaint) {
+        float rotation = placement.rotation;
 
         // Draws a circle at the position of the detected face, with the face's track id below.
-        float x = translateX(face.getPosition().x + face.getWidth() / 2);
-        float y = translateY(face.getPosition().y + face.getHeight() / 2);
+        float x = placement.x * scaleX;
+        float y = placement.y * scaleY;
 //        canvas.drawCircle(x, y, FACE_POSITION_RADIUS, mFacePositionPaint);
 //        float TH = 0.9f;
 //        boolean isSmile = face.getIsSmilingProbability() > TH;
@@ -117,11 +264,11 @@ public class FaceGraphic extends GraphicOverlay.Graphic {
 //        canvas.drawText("id: " + mFaceId + "\nSmile:" +  (isSmile ? "yes" : "no"), x + ID_X_OFFSET, y + ID_Y_OFFSET, mIdPaint);
 //        canvas.drawText("Left Eye:" + (isLeftEyeOpen ? "open" : "close"), x + ID_X_OFFSET, y + ID_Y_OFFSET + 30, mIdPaint);
 //        canvas.drawText("Right Eye:" + (isRightEyeOpen ? "open" : "close"), x + ID_X_OFFSET, y + ID_Y_OFFSET + 60, mIdPaint);
-//        canvas.drawText("rotation:" + mRotation, x + ID_X_OFFSET, y + ID_Y_OFFSET + 90, mIdPaint);
+//        canvas.drawText("rotation:" + rotation, x + ID_X_OFFSET, y + ID_Y_OFFSET + 90, mIdPaint);
 //
 //        // Draws a bounding box around the face.
-        float xOffset = scaleX(face.getWidth() / 2.0f);
-        float yOffset = scaleY(face.getHeight() / 2.0f);
+        float xOffset = placement.halfWidth * scaleX;
+        float yOffset = placement.halfHeight * scaleY;
         float left = x - xOffset;
         float top = y - yOffset;
         float right = x + xOffset;
@@ -129,30 +276,92 @@ public class FaceGraphic extends GraphicOverlay.Graphic {
 
 //        canvas.drawRect(left, top, right, bottom, mBoxPaint);
 //        drawFaceAnnotations(canvas, 1f);
-        if (mHandBitmap != null) {
-            int handLeft = (int) Math.min(0, left - 610);
-            int handTop = (int) top - 30;
-            canvas.drawBitmap(mHandBitmap, handLeft, handTop, null);
+        if (hand != null) {
+            float handLeft = Math.min(0, left - 610 * scaleX);
+            float handTop = top - 30 * scaleY;
+            bounds.set(handLeft, handTop, handLeft + hand.getWidth() * scaleX,
+                    handTop + hand.getHeight() * scaleY);
+            canvas.drawBitmap(hand, null, bounds, null);
+        }
+        if (feed != null && showsFeed(placement, scaleY, height)) {
+            float feedHeight = feed.getHeight() * scaleY;
+            float feedLeft = (left + right) / 2;
+            float feedTop = Math.max(bottom, height - feedHeight);
+            bounds.set(feedLeft, feedTop, feedLeft + feed.getWidth() * scaleX,
+                    feedTop + feedHeight);
+            canvas.drawBitmap(feed, null, bounds, null);
+        }
+        if (shoulder != null && Math.abs(rotation) > SHOULDER_TILT) {
+            float shoulderScale = (float) height / shoulder.getHeight();
+            matrix.setScale(shoulderScale, shoulderScale);
+            if (rotation > 0) {
+                // The right shoulder is aligned to the right edge.
+                matrix.postTranslate(width - shoulder.getWidth() * shoulderScale, 0);
+            }
+            canvas.drawBitmap(shoulder, matrix, shoulderPaint);
+        }
+    }
+
+    /**
+     * Returns the asset name of the shoulder sticker shown at the given head tilt, or null.
+     */
+    private String shoulderAsset(float rotation) {
+        if (rotation < -SHOULDER_TILT) {
+            return mLeftShoulder;
+        } else if (rotation > SHOULDER_TILT) {
+            return mRightShoulder;
         }
-        if (mFeedBitmap != null && bottom >= canvas.getHeight() / 2 && face.getIsSmilingProbability() > 0.2f) {
-            int feedLeft = (int) (left + right) / 2;
-            int feedTop = Math.max((int) bottom, canvas.getHeight() - mFeedBitmap.getHeight());
-            canvas.drawBitmap(mFeedBitmap, feedLeft, feedTop, null);
+        return null;
+    }
+
+    /**
+     * Returns the shoulder sticker shown at the given head tilt scaled to the overlay height, or
+     * null.  The first draw at a new height starts looking up both sides in the background, and
+     * until they are ready no shoulder is drawn.
+     */
+    private Bitmap shoulderVariant(float rotation, int height) {
+        if (height != mVariantHeight) {
+            // Only when the overlay size changes; otherwise the looked up variants are reused.
+            mVariantHeight = height;
+            loadVariants(height);
         }
-        if (mLeftShoulder != null && mRotation < -10) {
-            float shoulderScale = canvas.getHeight() / mLeftShoulder.getHeight();
-            canvas.save();
-            canvas.scale(shoulderScale, shoulderScale);
-            canvas.drawBitmap(mLeftShoulder, 0, 0, null);
-            canvas.restore();
+        ShoulderVariants variants = mVariants;
+        if (variants == null || variants.height != height) {
+            return null;
         }
-        if (mRightShoulder != null && mRotation > 10) {
-            float shoulderScale = canvas.getHeight() / mRightShoulder.getHeight();
-            canvas.save();
-            canvas.scale(shoulderScale, shoulderScale);
-            canvas.drawBitmap(mRightShoulder, canvas.getWidth() - mRightShoulder.getWidth(), 0, null);
-            canvas.restore();
+        if (rotation < -SHOULDER_TILT) {
+            return variants.left;
+        } else if (rotation > SHOULDER_TILT) {
+            return variants.right;
         }
+        return null;
+    }
+
+    /**
+     * Looks up both shoulder variants for the given overlay height in the background, scaling
+     * them if the sticker cache doesn't have them yet, and redraws once they are ready.
+     */
+    private void loadVariants(final int height) {
+        final StickerCache stickers = mStickers;
+        if (stickers == null) {
+            return;
+        }
+        final String left = mLeftShoulder;
+        final String right = mRightShoulder;
+        Task.callInBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                ShoulderVariants variants = new ShoulderVariants(height,
+                        (left == null) ? null : stickers.getVariant(left, height),
+                        (right == null) ? null : stickers.getVariant(right, height));
+                // A later height change has its own lookup running.
+                if (height == mVariantHeight) {
+                    mVariants = variants;
+                    postInvalidate();
+                }
+                return null;
+            }
+        });
     }
 
     /**
@@ -164,29 +373,99 @@ public class FaceGraphic extends GraphicOverlay.Graphic {
      * pupil position.
      */
     private void drawFaceAnnotations(Canvas canvas, double scale) {
-        Paint paint = new Paint();
-        paint.setColor(Color.GREEN);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(5);
-
         Face face = mFace;
-        for (Landmark landmark : face.getLandmarks()) {
-
+        List<Landmark> landmarks = face.getLandmarks();
+        // Indexed rather than for-each, which would allocate an iterator on every frame.
+        for (int i = 0; i < landmarks.size(); ++i) {
+            Landmark landmark = landmarks.get(i);
             int cx = (int) (landmark.getPosition().x * scale);
             int cy = (int) (landmark.getPosition().y * scale);
-            canvas.drawCircle(cx, cy, 10, paint);
+            canvas.drawCircle(cx, cy, 10, mLandmarkPaint);
         }
     }
 
-    public void setRotation(float rotation) {
-        this.mRotation = rotation;
+    /**
+     * Working storage for the draw loop.
+     */
+    private static class Scratch {
+        final float[] pose = new float[FacePoseFilter.SIZE];
+        final RectF bounds = new RectF();
+        final Matrix matrix = new Matrix();
+        final Placement placement = new Placement();
+    }
+
+    /**
+     * Where the face is shown, in overlay view coordinates.  Reused by the draw loop; a snapshot
+     * holds its own, which is never changed after it is filled.
+     */
+    private static class Placement {
+        float x;
+        float y;
+        float halfWidth;
+        float halfHeight;
+        float rotation;
+        boolean smiling;
+    }
+
+    /**
+     * Both shoulder stickers scaled to one overlay height.
+     */
+    private static final class ShoulderVariants {
+        final int height;
+        final Bitmap left;
+        final Bitmap right;
+
+        ShoulderVariants(int height, Bitmap left, Bitmap right) {
+            this.height = height;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    /**
+     * The face as it was when a picture was taken: its placement and the stickers to draw, with
+     * the shoulder sticker by asset name so that it is drawn from a variant made for the picture.
+     */
+    private static final class Snapshot implements GraphicOverlay.CaptureGraphic {
+        private final Placement mPlacement;
+        private final Bitmap mHand;
+        private final Bitmap mFeed;
+        private final StickerCache mStickers;
+        private final String mShoulder;
+
+        Snapshot(Placement placement, Bitmap hand, Bitmap feed, StickerCache stickers,
+                 String shoulder) {
+            mPlacement = placement;
+            mHand = hand;
+            mFeed = feed;
+            mStickers = stickers;
+            mShoulder = shoulder;
+        }
+
+        @Override
+        public void draw(Canvas canvas, float scaleX, float scaleY, int width, int height) {
+            // Scaled on the capture thread on the first capture at this resolution.
+            Bitmap shoulder = (mStickers == null || mShoulder == null)
+                    ? null : mStickers.getCaptureVariant(mShoulder, height);
+            drawPlacement(canvas, mPlacement, new RectF(), new Matrix(), mHand, mFeed, scaleX,
+                    scaleY, width, height, shoulder, null);
+        }
     }
 
     public void setFeedPicture(Bitmap bitmap) {
         mFeedBitmap = bitmap;
+        mStickerVersion++;
     }
-    public void setShoulderPicture(Bitmap left, Bitmap right) {
+    /**
+     * Sets the shoulder stickers, by asset name, drawn when the head is tilted to either side.
+     */
+    public void setShoulderStickers(StickerCache stickers, String left, String right) {
+        mStickers = stickers;
         mLeftShoulder = left;
         mRightShoulder = right;
+        // Looked up again on the next draw.
+        mVariants = null;
+        mVariantHeight = 0;
+        mStickerVersion++;
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+/**
+ * Smooths the pose of one tracked face and predicts it at render time.  Detections are fed in
+ * from the detector thread with {@link #update}; the overlay reads a prediction for the current
+ * time with {@link #predict}, extrapolating along the filtered velocity for a short horizon so that
+ * the graphic keeps moving smoothly between (or across skipped) detector frames.<p>
+ *
+ * {@link #update} must be called from a single thread.  {@link #predict} may be called from any
+ * thread and doesn't allocate.
+ */
+class FacePoseFilter {
+    static final int CENTER_X = 0;
+    static final int CENTER_Y = 1;
+    static final int WIDTH = 2;
+    static final int HEIGHT = 3;
+    static final int EULER_Z = 4;
+    static final int SIZE = 5;
+
+    /**
+     * Longest time past the last detection that the pose is extrapolated for.
+     */
+    static final long MAX_PREDICTION_MILLIS = 100;
+
+    private final OneEuroFilter[] mFilters = new OneEuroFilter[SIZE];
+    private volatile Pose mPose;
+
+    /**
+     * Filtered pose at the time of the last detection, published as a whole so that readers never
+     * see half of an update.
+     */
+    private static final class Pose {
+        final float[] values = new float[SIZE];
+        final float[] velocities = new float[SIZE];
+        long timeMillis;
+    }
+
+    FacePoseFilter() {
+        mFilters[CENTER_X] = new OneEuroFilter(1.0f, 0.007f, 1.0f);
+        mFilters[CENTER_Y] = new OneEuroFilter(1.0f, 0.007f, 1.0f);
+        mFilters[WIDTH] = new OneEuroFilter(0.5f, 0.001f, 1.0f);
+        mFilters[HEIGHT] = new OneEuroFilter(0.5f, 0.001f, 1.0f);
+        mFilters[EULER_Z] = new OneEuroFilter(0.5f, 0.01f, 1.0f);
+    }
+
+    /**
+     * Adds a detection, in preview coordinates.
+     *
+     * @param frameMillis timestamp of the camera frame the detection was made in, which spaces the
+     *     samples as the camera took them rather than as the detector happened to deliver them
+     * @param nowMillis time the detection arrived, on the clock later passed to {@link #predict}
+     */
+    void update(float centerX, float centerY, float width, float height, float eulerZ,
+                long frameMillis, long nowMillis) {
+        Pose pose = new Pose();
+        pose.values[CENTER_X] = mFilters[CENTER_X].filter(centerX, frameMillis);
+        pose.values[CENTER_Y] = mFilters[CENTER_Y].filter(centerY, frameMillis);
+        pose.values[WIDTH] = mFilters[WIDTH].filter(width, frameMillis);
+        pose.values[HEIGHT] = mFilters[HEIGHT].filter(height, frameMillis);
+        pose.values[EULER_Z] = mFilters[EULER_Z].filter(eulerZ, frameMillis);
+        for (int i = 0; i < SIZE; ++i) {
+            pose.velocities[i] = mFilters[i].getDerivative();
+        }
+        pose.timeMillis = nowMillis;
+        mPose = pose;
+    }
+
+    /**
+     * Writes the predicted pose at the given time into {@code out}, indexed by the constants of
+     * this class.  Returns false, leaving {@code out} untouched, if no detection was seen yet.
+     */
+    boolean predict(long timeMillis, float[] out) {
+        Pose pose = mPose;
+        if (pose == null) {
+            return false;
+        }
+        long ahead = Math.min(Math.max(timeMillis - pose.timeMillis, 0), MAX_PREDICTION_MILLIS);
+        float seconds = ahead / 1000f;
+        for (int i = 0; i < SIZE; ++i) {
+            out[i] = pose.values[i] + pose.velocities[i] * seconds;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true while the prediction still changes over time, i.e. the pose is moving and the
+     * prediction horizon hasn't run out yet.
+     */
+    boolean isExtrapolating(long timeMillis) {
+        Pose pose = mPose;
+        if (pose == null || timeMillis - pose.timeMillis >= MAX_PREDICTION_MILLIS) {
+            return false;
+        }
+        for (int i = 0; i < SIZE; ++i) {
+            if (pose.velocities[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the current track, e.g. after the face was lost for good.
+     */
+    void reset() {
+        for (OneEuroFilter filter : mFilters) {
+            filter.reset();
+        }
+        mPose = null;
+    }
+}
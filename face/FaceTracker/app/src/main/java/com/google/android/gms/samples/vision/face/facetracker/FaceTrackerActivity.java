@@ -16,32 +16,35 @@
 package com.google.android.gms.samples.vision.face.facetracker;
 
 import android.app.Activity;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ImageFormat;
-import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
 import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
-import android.provider.MediaStore;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.renderscript.Allocation;
 import android.renderscript.Element;
 import android.renderscript.RenderScript;
 import android.renderscript.ScriptIntrinsicYuvToRGB;
 import android.renderscript.Type;
-import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
+import android.widget.CheckBox;
 
+import com.google.android.gms.samples.vision.face.common.CaptureScheduler;
+import com.google.android.gms.samples.vision.face.common.VisibilityHysteresis;
 import com.google.android.gms.vision.CameraSource;
 import com.google.android.gms.vision.MultiProcessor;
 import com.google.android.gms.vision.Tracker;
@@ -52,7 +55,6 @@ import com.google.android.gms.samples.vision.face.facetracker.ui.camera.GraphicO
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -71,30 +73,81 @@ public final class FaceTrackerActivity extends Activity {
     private CameraSource mCameraSource;
     private CameraSourcePreview mPreview;
     private GraphicOverlay mGraphicOverlay;
+    private StickerCache mStickers;
+    private CapturePipeline mCapturePipeline;
+    // Every capture writes the same file, so captures run one at a time and the newest one wins.
+    private final CaptureScheduler mCaptureScheduler = new CaptureScheduler("capture", 1, 1,
+            CaptureScheduler.OverflowPolicy.DROP_OLDEST);
+    private DetectionCadenceController mCadence;
+    private boolean mResumed;
+
+    // Detection runs at the highest of these preview sizes that holds the latency budget.
+    private static final int[][] DETECTION_RESOLUTIONS = {
+            {640 * 2, 480 * 2},
+            {960, 720},
+            {640, 480}
+    };
+    private static final long TARGET_DETECTION_LATENCY_MS = 33;
+    private static final int MAX_FRAME_STRIDE = 3;
+
+    // Detection switches to the low power profile below this battery level, unless charging, and
+    // in power save mode.
+    private static final int LOW_BATTERY_PERCENT = 15;
+    private boolean mBatteryLow;
+    private final BroadcastReceiver mPowerReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+                int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+                boolean plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+                mBatteryLow = !plugged && level >= 0 && scale > 0
+                        && level * 100 < LOW_BATTERY_PERCENT * scale;
+            }
+            updatePowerProfile();
+        }
+    };
+
+    // A long press takes this many pictures back to back; decoded pictures are full size bitmaps,
+    // so only one waits between two burst stages.
+    private static final int BURST_SHOTS = 5;
+    private static final int BURST_QUEUE_CAPACITY = 1;
+    private BurstPipeline<CapturePipeline.Shot, CapturePipeline.Shot, File> mBurst;
+    // Shares a preview frame instead of taking a still when checked.
+    private CheckBox mFastCapture;
+    private AdaptiveDetector<Face> mDetector;
+
+    /**
+     * Receives a picture together with the overlay as it was when the shutter fired.
+     */
+    private interface SnapshotPictureCallback {
+        void onPictureTaken(byte[] jpeg, GraphicOverlay.CaptureSnapshot overlay);
+    }
 
     public static final String INSTAGRAM_PACKAGE_NAME = "com.instagram.android";
     //==============================================================================================
     // Activity Methods
     //==============================================================================================
 
-    private void shareToInstagram(File file) throws FileNotFoundException {
-        Intent intent = prepareShareFileIntent(getInstagramServiceInfo(), file);
+    private void shareToInstagram(CapturePipeline.Result capture) throws FileNotFoundException {
+        Intent intent = prepareShareFileIntent(getInstagramServiceInfo(), capture.file,
+                capture.contentUri);
 //        intent.putExtra(Intent.EXTRA_TEXT, bodyBuilder.toString());
         startActivityForResult(intent, AR_SHARE_TO_INSTAGRAM);
     }
 
-    public Intent prepareShareFileIntent(ActivityInfo activityInfo, File file) throws FileNotFoundException {
+    /**
+     * Builds the share intent for the file.  {@code contentUri} is the media store uri of the file,
+     * if it has been registered there, and is shared in place of the file uri.
+     */
+    public Intent prepareShareFileIntent(ActivityInfo activityInfo, File file, Uri contentUri) throws FileNotFoundException {
         final Intent intent = new Intent(Intent.ACTION_SEND);
         String path = file.getAbsolutePath();
         if (path.endsWith("mp4")) {
             intent.setType("video/*").putExtra(Intent.EXTRA_STREAM, Uri.fromFile(file));
         } else {
-            String imageUrl = null;
-            try {
-                imageUrl = MediaStore.Images.Media.insertImage(getContentResolver(), file.getAbsolutePath(), file.getName(), null);
-            } catch(OutOfMemoryError ignored) {}
-            intent.setType("image/jpg").putExtra(Intent.EXTRA_STREAM, TextUtils.isEmpty(imageUrl) ?
-                    Uri.fromFile(file) : Uri.parse(imageUrl));
+            intent.setType("image/jpg").putExtra(Intent.EXTRA_STREAM, contentUri == null ?
+                    Uri.fromFile(file) : contentUri);
         }
         if (activityInfo != null) {
             intent.setClassName(activityInfo.packageName, activityInfo.name);
@@ -129,59 +182,287 @@ public final class FaceTrackerActivity extends Activity {
         setContentView(R.layout.main);
         mPreview = (CameraSourcePreview) findViewById(R.id.preview);
         mGraphicOverlay = (GraphicOverlay) findViewById(R.id.faceOverlay);
-        findViewById(R.id.btn_take_photo).setOnClickListener(new View.OnClickListener() {
+        mCapturePipeline = new CapturePipeline(getContentResolver());
+        mFastCapture = (CheckBox) findViewById(R.id.chk_fast_capture);
+        View takePhoto = findViewById(R.id.btn_take_photo);
+        takePhoto.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                startBurst();
+                return true;
+            }
+        });
+        takePhoto.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                mPreview.takePicture(new CameraSource.PictureCallback() {
+                if (mBurst != null) {
+                    // The camera is busy with the burst.
+                    return;
+                }
+                if (mFastCapture.isChecked() && mDetector != null) {
+                    fastCapture(mDetector);
+                    return;
+                }
+                takePicture(new SnapshotPictureCallback() {
                     @Override
-                    public void onPictureTaken(final byte[] bytes) {
+                    public void onPictureTaken(final byte[] bytes,
+                                               final GraphicOverlay.CaptureSnapshot overlay) {
                         // background thread
-                        Task.callInBackground(new Callable<File>() {
+                        shareCapture(new Callable<CapturePipeline.Result>() {
                             @Override
-                            public File call() throws Exception {
-                                Bitmap bm = BitmapUtils.rotateBitmap(BitmapFactory
-                                        .decodeByteArray(bytes, 0, bytes.length), 90, true);
-                                Canvas canvas = new Canvas(bm);
-                                Matrix m = canvas.getMatrix();
-//                                float scale = Math.min((float) bm.getWidth() / mGraphicOverlay.getWidth(),
-//                                        (float)bm.getHeight() / mGraphicOverlay.getHeight());
-//                                m.setScale(scale, scale);
-                                m.setScale((float) bm.getWidth() / mGraphicOverlay.getWidth(),
-                                        (float) bm.getHeight() / mGraphicOverlay.getHeight());
-                                canvas.concat(m);
-                                mGraphicOverlay.testDraw(canvas);
-                                File file = new File(Environment
-                                        .getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM), "bf1.jpg");
-                                bm.compress(Bitmap.CompressFormat.JPEG, 90, new FileOutputStream(file));
-                                return file;
-                            }
-                        }).onSuccess(new Continuation<File, Void>() {
-                            @Override
-                            public Void then(Task<File> task) throws Exception {
-                                shareToInstagram(task.getResult());
-                                return null;
-                            }
-                        }, Task.UI_THREAD_EXECUTOR).continueWith(new Continuation<Void, Void>() {
-                            @Override
-                            public Void then(Task<Void> task) throws Exception {
-                                if (task.isFaulted()) {
-                                    task.getError().printStackTrace();
-                                }
-                                return null;
+                            public CapturePipeline.Result call() throws Exception {
+                                return mCapturePipeline.capture(bytes, overlay, captureFile());
                             }
                         });
+                    }
+                });
+            }
+        });
+
+        Context context = getApplicationContext();
+
+        // Decode the stickers once, off the UI thread, so that trackers only ever hit the cache.
+        mStickers = StickerCache.getInstance(context);
+        Task.callInBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mStickers.preload(StickerCache.SHOULDER_LEFT, StickerCache.SHOULDER_RIGHT);
+                return null;
+            }
+        });
 
+        mCadence = new DetectionCadenceController(TARGET_DETECTION_LATENCY_MS, MAX_FRAME_STRIDE,
+                DETECTION_RESOLUTIONS);
+        mCadence.setListener(new DetectionCadenceController.Listener() {
+            @Override
+            public void onResolutionChanged(int width, int height) {
+                // Called on the detector thread; the camera has to be rebuilt on the UI thread.
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        restartCameraSource();
+                    }
+                });
+            }
+        });
+        createCameraSource();
+    }
 
+    /**
+     * Runs a capture on the capture scheduler and shares the result.
+     */
+    private void shareCapture(Callable<CapturePipeline.Result> capture) {
+        Task<CapturePipeline.Result> result = mCaptureScheduler.submit(capture);
+        result.onSuccess(new Continuation<CapturePipeline.Result, Void>() {
+            @Override
+            public Void then(Task<CapturePipeline.Result> task) throws Exception {
+                shareToInstagram(task.getResult());
+                return null;
+            }
+        }, Task.UI_THREAD_EXECUTOR).continueWith(new Continuation<Void, Void>() {
+            @Override
+            public Void then(Task<Void> task) throws Exception {
+                if (task.isFaulted()) {
+                    task.getError().printStackTrace();
+                } else if (task.isCancelled()) {
+                    Log.d(TAG, "Capture dropped, " + mCaptureScheduler);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns the file a single capture is written to.
+     */
+    private static File captureFile() {
+        return new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM),
+                "bf1.jpg");
+    }
+
+    /**
+     * Shares the next preview frame with the overlay as it is now, skipping the still capture and
+     * the JPEG decode.  The picture has the preview resolution, which is plenty for sharing.
+     */
+    private void fastCapture(AdaptiveDetector<Face> detector) {
+        final GraphicOverlay.CaptureSnapshot overlay = mGraphicOverlay.captureSnapshot();
+        detector.requestFrame(new AdaptiveDetector.FrameListener() {
+            @Override
+            public void onFrame(final PreviewFrame frame) {
+                // detector thread
+                if (frame == null) {
+                    Log.w(TAG, "Preview frame has no NV21 data, nothing captured");
+                    return;
+                }
+                shareCapture(new Callable<CapturePipeline.Result>() {
+                    @Override
+                    public CapturePipeline.Result call() throws Exception {
+                        return mCapturePipeline.captureFrame(frame, overlay, captureFile());
                     }
                 });
             }
         });
+    }
+
+    /**
+     * Takes {@link #BURST_SHOTS} pictures back to back and saves each one to its own file, running
+     * them through a {@link BurstPipeline} made of the {@link CapturePipeline} steps.
+     */
+    private void startBurst() {
+        if (mBurst != null) {
+            return;
+        }
+        final File directory =
+                Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM);
+        final String prefix = "burst_" + System.currentTimeMillis() + "_";
+        final CapturePipeline pipeline = mCapturePipeline;
 
+        final BurstPipeline<CapturePipeline.Shot, CapturePipeline.Shot, File> burst =
+                new BurstPipeline<>(
+                new BurstPipeline.Stage<CapturePipeline.Shot, CapturePipeline.Shot>() {
+                    @Override
+                    public CapturePipeline.Shot process(CapturePipeline.Shot shot)
+                            throws Exception {
+                        shot.bitmap = pipeline.decode(shot.jpeg);
+                        return shot;
+                    }
+                },
+                new BurstPipeline.Stage<CapturePipeline.Shot, CapturePipeline.Shot>() {
+                    @Override
+                    public CapturePipeline.Shot process(CapturePipeline.Shot shot)
+                            throws Exception {
+                        // Returns the decoded bitmap to the pool, also on failure.
+                        shot.bitmap = pipeline.composite(shot.bitmap, shot.overlay);
+                        return shot;
+                    }
+                },
+                new BurstPipeline.Stage<CapturePipeline.Shot, File>() {
+                    private int mCount;
+
+                    @Override
+                    public File process(CapturePipeline.Shot shot) throws Exception {
+                        File file = new File(directory, prefix + (++mCount) + ".jpg");
+                        try {
+                            pipeline.encode(shot.bitmap, file);
+                        } finally {
+                            pipeline.release(shot.bitmap);
+                        }
+                        pipeline.register(file);
+                        return file;
+                    }
+                },
+                new BurstPipeline.Listener<File>() {
+                    @Override
+                    public void onShotDone(int index, File file) {
+                        Log.d(TAG, "Burst shot " + index + " saved to " + file);
+                    }
+
+                    @Override
+                    public void onShotFailed(int index, Exception error) {
+                        Log.w(TAG, "Burst shot " + index + " failed", error);
+                    }
+
+                    @Override
+                    public void onBurstDone(BurstPipeline.Stats stats) {
+                        Log.d(TAG, stats.toString());
+                    }
+                },
+                BURST_SHOTS, BURST_QUEUE_CAPACITY);
+        mBurst = burst;
+        burst.start();
+        takeBurstShot(burst, BURST_SHOTS);
+    }
+
+    /**
+     * Takes the next picture of the burst and hands it to the pipeline.  The camera only takes a
+     * picture once the previous one is done and the preview runs again, so the next one is
+     * requested from the UI thread after the callback has returned.
+     */
+    private void takeBurstShot(
+            final BurstPipeline<CapturePipeline.Shot, CapturePipeline.Shot, File> burst,
+            final int remaining) {
+        try {
+            takePicture(new SnapshotPictureCallback() {
+                @Override
+                public void onPictureTaken(byte[] bytes, GraphicOverlay.CaptureSnapshot overlay) {
+                    burst.submit(new CapturePipeline.Shot(bytes, overlay));
+                    // Posted even from the UI thread, so that it runs after the camera restarted
+                    // the preview.
+                    mPreview.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (burst != mBurst) {
+                                // Ended by onPause.
+                                return;
+                            }
+                            if (remaining > 1) {
+                                takeBurstShot(burst, remaining - 1);
+                            } else {
+                                endBurst();
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Burst ended early", e);
+            endBurst();
+        }
+    }
+
+    /**
+     * Takes a picture and snapshots the overlay when the shutter fires, so that the picture is
+     * composited with the graphics shown at that instant.  Camera callbacks arrive on the UI
+     * thread, which the snapshot needs; devices that skip the shutter callback get a snapshot when
+     * the picture arrives.
+     */
+    private void takePicture(final SnapshotPictureCallback callback) {
+        final GraphicOverlay.CaptureSnapshot[] shutterSnapshot =
+                new GraphicOverlay.CaptureSnapshot[1];
+        mPreview.takePicture(new CameraSource.ShutterCallback() {
+            @Override
+            public void onShutter() {
+                shutterSnapshot[0] = mGraphicOverlay.captureSnapshot();
+            }
+        }, new CameraSource.PictureCallback() {
+            @Override
+            public void onPictureTaken(byte[] bytes) {
+                GraphicOverlay.CaptureSnapshot overlay = shutterSnapshot[0];
+                if (overlay == null) {
+                    overlay = mGraphicOverlay.captureSnapshot();
+                }
+                callback.onPictureTaken(bytes, overlay);
+            }
+        });
+    }
+
+    /**
+     * Stops taking pictures; the pictures already taken still go through the pipeline.
+     */
+    private void endBurst() {
+        if (mBurst != null) {
+            mBurst.finish();
+            mBurst = null;
+        }
+    }
+
+    /**
+     * Creates the face detector and the camera source at the resolution currently chosen by the
+     * cadence controller.
+     */
+    private void createCameraSource() {
         Context context = getApplicationContext();
-        FaceDetector detector = new FaceDetector.Builder(context)
+        FaceDetector faceDetector = new FaceDetector.Builder(context)
                 .setClassificationType(FaceDetector.ALL_CLASSIFICATIONS)
 //                .setLandmarkType(FaceDetector.ALL_LANDMARKS)
                 .build();
+        // Between full frame scans, only the regions around the tracked faces are searched.
+        FaceDetector regionDetector = new FaceDetector.Builder(context)
+                .setClassificationType(FaceDetector.ALL_CLASSIFICATIONS)
+                .setTrackingEnabled(false)
+                .build();
+        AdaptiveDetector<Face> detector = new AdaptiveDetector<>(
+                new RoiFaceDetector(faceDetector, regionDetector), mCadence);
         detector.setProcessor(
                 new MultiProcessor.Builder<>(new GraphicFaceTrackerFactory()).build());
 
@@ -196,8 +477,9 @@ public final class FaceTrackerActivity extends Activity {
             // download completes on device.
             Log.w(TAG, "Face detector dependencies are not yet available.");
         }
+        mDetector = detector;
         mCameraSource = new CameraSource.Builder(context, detector)
-                .setRequestedPreviewSize(640*2, 480*2)
+                .setRequestedPreviewSize(mCadence.getWidth(), mCadence.getHeight())
                 .setFacing(CameraSource.CAMERA_FACING_FRONT)
                 .setRequestedFps(30.0f)
                 .build();
@@ -209,6 +491,13 @@ public final class FaceTrackerActivity extends Activity {
     @Override
     protected void onResume() {
         super.onResume();
+        mResumed = true;
+        // The battery broadcast is sticky, so the current level arrives right away.
+        IntentFilter power = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            power.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        }
+        registerReceiver(mPowerReceiver, power);
         startCameraSource();
     }
 
@@ -218,7 +507,22 @@ public final class FaceTrackerActivity extends Activity {
     @Override
     protected void onPause() {
         super.onPause();
+        mResumed = false;
+        unregisterReceiver(mPowerReceiver);
+        endBurst();
         mPreview.stop();
+        mCaptureScheduler.cancelAll();
+    }
+
+    /**
+     * Runs detection at the lowest cost while the battery is low or the device saves power.
+     */
+    private void updatePowerProfile() {
+        boolean powerSave = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && ((PowerManager) getSystemService(POWER_SERVICE)).isPowerSaveMode();
+        mCadence.setProfile((mBatteryLow || powerSave)
+                ? DetectionCadenceController.Profile.LOW_POWER
+                : DetectionCadenceController.Profile.ADAPTIVE);
     }
 
     /**
@@ -229,6 +533,7 @@ public final class FaceTrackerActivity extends Activity {
     protected void onDestroy() {
         super.onDestroy();
         mCameraSource.release();
+        mCaptureScheduler.shutdown();
     }
 
     //==============================================================================================
@@ -251,6 +556,21 @@ public final class FaceTrackerActivity extends Activity {
         }
     }
 
+    /**
+     * Rebuilds the camera source after the cadence controller picked a new detection resolution.
+     * Releasing the old camera source also releases its detector.
+     */
+    private void restartCameraSource() {
+        if (mCameraSource == null || isFinishing()) {
+            return;
+        }
+        mPreview.release();
+        createCameraSource();
+        if (mResumed) {
+            startCameraSource();
+        }
+    }
+
     //==============================================================================================
     // Graphic Face Tracker
     //==============================================================================================
@@ -273,10 +593,13 @@ public final class FaceTrackerActivity extends Activity {
     private class GraphicFaceTracker extends Tracker<Face> {
         private GraphicOverlay mOverlay;
         private FaceGraphic mFaceGraphic;
+        private VisibilityHysteresis mVisibility = new VisibilityHysteresis();
 
         GraphicFaceTracker(GraphicOverlay overlay) {
             mOverlay = overlay;
             mFaceGraphic = new FaceGraphic(overlay);
+            mFaceGraphic.setShoulderStickers(mStickers, StickerCache.SHOULDER_LEFT,
+                    StickerCache.SHOULDER_RIGHT);
         }
 
         /**
@@ -302,25 +625,24 @@ public final class FaceTrackerActivity extends Activity {
 //            } catch (IOException e) {
 //                e.printStackTrace();
 //            }
-            try {
-                mFaceGraphic.setShoulderPicture(BitmapFactory.decodeStream(getAssets().open("shoulder.png")), BitmapFactory.decodeStream(getAssets().open("shoulder2.png")));
-            } catch (IOException e) {
-                e.printStackTrace();
+            mFaceGraphic.updateFace(face,
+                    detectionResults.getFrameMetadata().getTimestampMillis());
+            if (mVisibility.onHit()) {
+                mOverlay.add(mFaceGraphic);
             }
-
-            mFaceGraphic.setRotation(face.getEulerZ());
-            mOverlay.add(mFaceGraphic);
-            mFaceGraphic.updateFace(face);
         }
 
         /**
          * Hide the graphic when the corresponding face was not detected.  This can happen for
          * intermediate frames temporarily (e.g., if the face was momentarily blocked from
-         * view).
+         * view), so the graphic is kept for a short grace period before it is removed.
          */
         @Override
         public void onMissing(FaceDetector.Detections<Face> detectionResults) {
-            mOverlay.remove(mFaceGraphic);
+            if (mVisibility.onMiss(SystemClock.elapsedRealtime())) {
+                mOverlay.remove(mFaceGraphic);
+                mFaceGraphic.clearFace();
+            }
         }
 
         /**
@@ -329,7 +651,10 @@ public final class FaceTrackerActivity extends Activity {
          */
         @Override
         public void onDone() {
-            mOverlay.remove(mFaceGraphic);
+            if (mVisibility.onDone()) {
+                mOverlay.remove(mFaceGraphic);
+            }
+            mFaceGraphic.clearFace();
         }
     }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+/**
+ * One Euro filter (Casiez et al.) for a single noisy signal.  It is a low pass filter whose cutoff
+ * frequency rises with the speed of the signal: slow movements are smoothed heavily to remove
+ * jitter, fast movements are followed closely to keep lag low.  The filtered derivative is kept
+ * as well so that callers can extrapolate between samples.<p>
+ *
+ * Not thread safe.
+ */
+class OneEuroFilter {
+    private final float mMinCutoff;
+    private final float mBeta;
+    private final float mDerivativeCutoff;
+
+    private boolean mInitialized;
+    private float mValue;
+    private float mDerivative;
+    private long mLastMillis;
+
+    /**
+     * @param minCutoff cutoff frequency in Hz used when the signal is still
+     * @param beta how much the cutoff frequency grows with the speed of the signal
+     * @param derivativeCutoff cutoff frequency in Hz for the derivative estimate
+     */
+    OneEuroFilter(float minCutoff, float beta, float derivativeCutoff) {
+        mMinCutoff = minCutoff;
+        mBeta = beta;
+        mDerivativeCutoff = derivativeCutoff;
+    }
+
+    /**
+     * Adds a sample and returns the filtered value.  A sample that isn't newer than the previous
+     * one, e.g. a second detection from the same frame, is ignored and the previous output held.
+     */
+    float filter(float value, long timeMillis) {
+        if (!mInitialized) {
+            mInitialized = true;
+            mDerivative = 0;
+            mValue = value;
+            mLastMillis = timeMillis;
+            return mValue;
+        }
+        if (timeMillis <= mLastMillis) {
+            return mValue;
+        }
+
+        float dt = (timeMillis - mLastMillis) / 1000f;
+        float rawDerivative = (value - mValue) / dt;
+        mDerivative += alpha(mDerivativeCutoff, dt) * (rawDerivative - mDerivative);
+
+        float cutoff = mMinCutoff + mBeta * Math.abs(mDerivative);
+        mValue += alpha(cutoff, dt) * (value - mValue);
+        mLastMillis = timeMillis;
+        return mValue;
+    }
+
+    float getValue() {
+        return mValue;
+    }
+
+    /**
+     * Returns the filtered rate of change of the signal, in units per second.
+     */
+    float getDerivative() {
+        return mDerivative;
+    }
+
+    void reset() {
+        mInitialized = false;
+    }
+
+    private static float alpha(float cutoff, float dt) {
+        float tau = 1.0f / (2 * (float) Math.PI * cutoff);
+        return 1.0f / (1.0f + tau / dt);
+    }
+}
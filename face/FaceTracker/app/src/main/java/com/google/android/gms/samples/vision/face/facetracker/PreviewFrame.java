@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import com.google.android.gms.vision.Frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A copy of one camera preview frame in NV21, in sensor orientation.  The camera reuses its frame
+ * buffers, so the data is copied out while the detector still holds the frame.<p>
+ *
+ * The frame's rotation isn't kept: the app only runs the front camera in portrait, whose frames
+ * {@link CapturePipeline} always turns upright with the same transform.
+ */
+class PreviewFrame {
+    final byte[] nv21;
+    final int width;
+    final int height;
+
+    PreviewFrame(byte[] nv21, int width, int height) {
+        this.nv21 = nv21;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Copies the frame's NV21 data, or returns null if the frame doesn't carry any.
+     */
+    static PreviewFrame copyOf(Frame frame) {
+        Frame.Metadata metadata = frame.getMetadata();
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        int size = YuvKernels.nv21Size(width, height);
+        ByteBuffer data = frame.getGrayscaleImageData();
+        if (data == null || data.capacity() < size) {
+            return null;
+        }
+        byte[] nv21 = new byte[size];
+        ByteBuffer source = data.duplicate();
+        source.rewind();
+        source.get(nv21);
+        return new PreviewFrame(nv21, width, height);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import android.graphics.ImageFormat;
+import android.graphics.PointF;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Face detector which, once faces are being tracked, only looks at padded regions around them
+ * instead of the whole frame.  Regions are planned by {@link RoiPlanner}, which also schedules the
+ * periodic full frame scans that pick up new faces.<p>
+ *
+ * Full frames go to a tracking detector, which assigns the face ids.  Regions are cut out of the
+ * NV21 frame data and sent to a second, non-tracking detector; the faces found there are moved
+ * back to frame coordinates and matched to the known tracks by overlap.  Faces in regions that
+ * don't match a track are left for the next full scan.
+ */
+class RoiFaceDetector extends Detector<Face> {
+    private static final float PADDING = 0.5f;
+    private static final int FULL_SCAN_INTERVAL = 10;
+    private static final float MAX_COVERAGE = 0.6f;
+    private static final float MIN_MATCH_IOU = 0.2f;
+
+    private final Detector<Face> mFullDetector;
+    private final Detector<Face> mRegionDetector;
+    private final RoiPlanner mPlanner = new RoiPlanner(PADDING, FULL_SCAN_INTERVAL, MAX_COVERAGE);
+
+    private final List<float[]> mTrackBoxes = new ArrayList<>();
+    private final List<Integer> mTrackIds = new ArrayList<>();
+    private byte[] mCropBuffer;
+
+    /**
+     * @param fullDetector tracking detector used for full frame scans
+     * @param regionDetector detector with tracking disabled, used for the cropped regions
+     */
+    RoiFaceDetector(Detector<Face> fullDetector, Detector<Face> regionDetector) {
+        mFullDetector = fullDetector;
+        mRegionDetector = regionDetector;
+    }
+
+    @Override
+    public SparseArray<Face> detect(Frame frame) {
+        Frame.Metadata metadata = frame.getMetadata();
+        int rotation = metadata.getRotation();
+        int rawWidth = metadata.getWidth();
+        int rawHeight = metadata.getHeight();
+        boolean swap = (rotation & 1) != 0;
+        int width = swap ? rawHeight : rawWidth;
+        int height = swap ? rawWidth : rawHeight;
+
+        ByteBuffer data = frame.getGrayscaleImageData();
+        List<int[]> regions = null;
+        if (data != null && data.hasArray()
+                && data.capacity() >= YuvKernels.nv21Size(rawWidth, rawHeight)) {
+            regions = mPlanner.plan(mTrackBoxes, width, height);
+        }
+
+        SparseArray<Face> faces;
+        if (regions == null) {
+            faces = mFullDetector.detect(frame);
+        } else {
+            faces = detectInRegions(frame, data, regions, rotation, rawWidth, rawHeight);
+        }
+
+        mTrackBoxes.clear();
+        mTrackIds.clear();
+        for (int i = 0; i < faces.size(); ++i) {
+            mTrackBoxes.add(boxOf(faces.valueAt(i)));
+            mTrackIds.add(faces.keyAt(i));
+        }
+        return faces;
+    }
+
+    private SparseArray<Face> detectInRegions(Frame frame, ByteBuffer data, List<int[]> regions,
+                                              int rotation, int rawWidth, int rawHeight) {
+        List<Face> found = new ArrayList<>();
+        List<float[]> foundBoxes = new ArrayList<>();
+        for (int[] region : regions) {
+            int[] raw = RoiPlanner.toRawRect(region, rotation, rawWidth, rawHeight);
+            int cropWidth = raw[2] - raw[0];
+            int cropHeight = raw[3] - raw[1];
+            int size = YuvKernels.nv21Size(cropWidth, cropHeight);
+            if (mCropBuffer == null || mCropBuffer.length < size) {
+                mCropBuffer = new byte[size];
+            }
+            YuvKernels.crop(data.array(), data.arrayOffset(), rawWidth, rawHeight, raw,
+                    mCropBuffer);
+
+            Frame crop = new Frame.Builder()
+                    .setImageData(ByteBuffer.wrap(mCropBuffer, 0, size), cropWidth, cropHeight,
+                            ImageFormat.NV21)
+                    .setId(frame.getMetadata().getId())
+                    .setTimestampMillis(frame.getMetadata().getTimestampMillis())
+                    .setRotation(rotation)
+                    .build();
+            SparseArray<Face> faces = mRegionDetector.detect(crop);
+            for (int i = 0; i < faces.size(); ++i) {
+                Face face = faces.valueAt(i);
+                found.add(face);
+                float[] box = boxOf(face);
+                box[0] += region[0];
+                box[1] += region[1];
+                box[2] += region[0];
+                box[3] += region[1];
+                foundBoxes.add(box);
+            }
+        }
+
+        int[] matches = RoiPlanner.associate(foundBoxes, mTrackBoxes, MIN_MATCH_IOU);
+        SparseArray<Face> results = new SparseArray<>(matches.length);
+        for (int i = 0; i < matches.length; ++i) {
+            if (matches[i] >= 0) {
+                int id = mTrackIds.get(matches[i]);
+                float[] box = foundBoxes.get(i);
+                results.put(id, translate(found.get(i), id, box[0], box[1]));
+            }
+        }
+        return results;
+    }
+
+    private static float[] boxOf(Face face) {
+        PointF position = face.getPosition();
+        return new float[] {position.x, position.y, position.x + face.getWidth(),
+                position.y + face.getHeight()};
+    }
+
+    /**
+     * Returns a copy of the face with the given id, moved to the given top left corner.
+     */
+    private static Face translate(Face face, int id, float left, float top) {
+        PointF position = face.getPosition();
+        float dx = left - position.x;
+        float dy = top - position.y;
+        List<Landmark> landmarks = face.getLandmarks();
+        Landmark[] moved = new Landmark[landmarks.size()];
+        for (int i = 0; i < moved.length; ++i) {
+            Landmark landmark = landmarks.get(i);
+            PointF p = landmark.getPosition();
+            moved[i] = new Landmark(new PointF(p.x + dx, p.y + dy), landmark.getType());
+        }
+        return new Face(id, new PointF(left, top), face.getWidth(), face.getHeight(),
+                face.getEulerY(), face.getEulerZ(), moved, face.getIsLeftEyeOpenProbability(),
+                face.getIsRightEyeOpenProbability(), face.getIsSmilingProbability());
+    }
+
+    @Override
+    public boolean isOperational() {
+        return mFullDetector.isOperational() && mRegionDetector.isOperational();
+    }
+
+    @Override
+    public boolean setFocus(int id) {
+        return mFullDetector.setFocus(id);
+    }
+
+    @Override
+    public void release() {
+        mFullDetector.release();
+        mRegionDetector.release();
+        super.release();
+    }
+}
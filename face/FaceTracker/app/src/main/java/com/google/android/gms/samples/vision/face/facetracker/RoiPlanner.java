@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plans which parts of a frame are sent to detection.  Around every live track a padded region is
+ * cut out; overlapping regions are merged.  A full frame scan is requested periodically, when there
+ * are no tracks, or when the regions would cover most of the frame anyway, so that new faces are
+ * still picked up.<p>
+ *
+ * Boxes and regions are {left, top, right, bottom} in upright frame coordinates, with right and
+ * bottom exclusive.  Region edges are aligned to even pixels so that they can be cut out of NV21
+ * data, whose chroma is subsampled by two.<p>
+ *
+ * Plain Java, not thread safe.
+ */
+class RoiPlanner {
+    private final float mPadding;
+    private final int mFullScanInterval;
+    private final float mMaxCoverage;
+    private int mFramesSinceFullScan;
+
+    /**
+     * @param padding fraction of a box's size added on every side of it
+     * @param fullScanInterval a full frame scan is done at least once every this many frames
+     * @param maxCoverage if the regions cover more than this fraction of the frame, a full scan
+     *                    is done instead
+     */
+    RoiPlanner(float padding, int fullScanInterval, float maxCoverage) {
+        mPadding = padding;
+        mFullScanInterval = fullScanInterval;
+        mMaxCoverage = maxCoverage;
+        // Start with a full scan.
+        mFramesSinceFullScan = fullScanInterval;
+    }
+
+    /**
+     * Plans the next frame.  Returns the regions to detect in, or null if the whole frame should
+     * be scanned.
+     */
+    List<int[]> plan(List<float[]> trackBoxes, int frameWidth, int frameHeight) {
+        if (trackBoxes.isEmpty() || mFramesSinceFullScan >= mFullScanInterval) {
+            mFramesSinceFullScan = 0;
+            return null;
+        }
+
+        List<int[]> regions = new ArrayList<>(trackBoxes.size());
+        for (float[] box : trackBoxes) {
+            int[] region = pad(box, frameWidth, frameHeight);
+            if (region != null) {
+                regions.add(region);
+            }
+        }
+        merge(regions);
+
+        long area = 0;
+        for (int[] region : regions) {
+            area += (long) (region[2] - region[0]) * (region[3] - region[1]);
+        }
+        if (regions.isEmpty() || area > mMaxCoverage * frameWidth * frameHeight) {
+            mFramesSinceFullScan = 0;
+            return null;
+        }
+        mFramesSinceFullScan++;
+        return regions;
+    }
+
+    /**
+     * Returns the box grown by the padding, clamped to the frame and aligned to even pixels, or
+     * null if nothing of it is left inside the frame.
+     */
+    int[] pad(float[] box, int frameWidth, int frameHeight) {
+        float padX = (box[2] - box[0]) * mPadding;
+        float padY = (box[3] - box[1]) * mPadding;
+        int left = Math.max((int) Math.floor(box[0] - padX), 0) & ~1;
+        int top = Math.max((int) Math.floor(box[1] - padY), 0) & ~1;
+        int right = Math.min(((int) Math.ceil(box[2] + padX) + 1) & ~1, frameWidth & ~1);
+        int bottom = Math.min(((int) Math.ceil(box[3] + padY) + 1) & ~1, frameHeight & ~1);
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        return new int[] {left, top, right, bottom};
+    }
+
+    /**
+     * Merges overlapping regions in place until no two regions overlap.
+     */
+    static void merge(List<int[]> regions) {
+        boolean merged;
+        do {
+            merged = false;
+            for (int i = 0; i < regions.size() && !merged; ++i) {
+                int[] a = regions.get(i);
+                for (int j = i + 1; j < regions.size(); ++j) {
+                    int[] b = regions.get(j);
+                    if (a[0] < b[2] && b[0] < a[2] && a[1] < b[3] && b[1] < a[3]) {
+                        a[0] = Math.min(a[0], b[0]);
+                        a[1] = Math.min(a[1], b[1]);
+                        a[2] = Math.max(a[2], b[2]);
+                        a[3] = Math.max(a[3], b[3]);
+                        regions.remove(j);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        } while (merged);
+    }
+
+    /**
+     * Maps a region in upright coordinates to the raw (unrotated) image data.  {@code rotation} is
+     * the frame rotation in quarter turns clockwise that takes the raw data upright.
+     */
+    static int[] toRawRect(int[] upright, int rotation, int rawWidth, int rawHeight) {
+        int left = upright[0];
+        int top = upright[1];
+        int right = upright[2];
+        int bottom = upright[3];
+        switch (rotation & 3) {
+            case 1:
+                return new int[] {top, rawHeight - right, bottom, rawHeight - left};
+            case 2:
+                return new int[] {rawWidth - right, rawHeight - bottom, rawWidth - left,
+                        rawHeight - top};
+            case 3:
+                return new int[] {rawWidth - bottom, left, rawWidth - top, right};
+            default:
+                return new int[] {left, top, right, bottom};
+        }
+    }
+
+    /**
+     * Returns the intersection over union of two boxes.
+     */
+    static float iou(float[] a, float[] b) {
+        float width = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+        float height = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        float intersection = width * height;
+        float union = (a[2] - a[0]) * (a[3] - a[1]) + (b[2] - b[0]) * (b[3] - b[1]) - intersection;
+        return intersection / union;
+    }
+
+    /**
+     * Greedily matches detections to known tracks by overlap.  Returns, for every detection, the
+     * index of the matched track or -1.
+     */
+    static int[] associate(List<float[]> detections, List<float[]> tracks, float minIou) {
+        int[] matches = new int[detections.size()];
+        boolean[] taken = new boolean[tracks.size()];
+        for (int i = 0; i < matches.length; ++i) {
+            int best = -1;
+            float bestIou = minIou;
+            for (int j = 0; j < taken.length; ++j) {
+                if (taken[j]) {
+                    continue;
+                }
+                float overlap = iou(detections.get(i), tracks.get(j));
+                if (overlap > bestIou) {
+                    bestIou = overlap;
+                    best = j;
+                }
+            }
+            matches[i] = best;
+            if (best >= 0) {
+                taken[best] = true;
+            }
+        }
+        return matches;
+    }
+}
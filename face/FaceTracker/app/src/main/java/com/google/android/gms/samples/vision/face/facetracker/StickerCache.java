@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of decoded sticker bitmaps.  Stickers are keyed by asset name and the height
+ * they are scaled to, decoded on first use and then shared by every {@link FaceGraphic}.  The cache
+ * is an LRU bounded by the total number of bitmap bytes it holds.<p>
+ *
+ * Next to the decoded stickers the cache holds variants scaled to the exact height they are drawn
+ * at, so that drawing one is a plain blit.  A variant for a size that is no longer drawn at simply
+ * ages out of the LRU.  Concurrent misses for the same sticker decode it only once.<p>
+ *
+ * Variants for captured pictures are kept apart from the LRU, one per sticker at the height of the
+ * last capture.  They are picture sized, a few MB each, and in the LRU they would push out every
+ * sticker the overlay draws.  Pictures are all taken at the same resolution, so after the first
+ * capture they are blitted too; they cost their memory for as long as the cache lives.
+ */
+public class StickerCache {
+    private static final String TAG = "StickerCache";
+    private static final int MAX_BYTES = 16 * 1024 * 1024;
+
+    public static final String SHOULDER_LEFT = "shoulder.png";
+    public static final String SHOULDER_RIGHT = "shoulder2.png";
+
+    private static StickerCache sInstance;
+
+    private final AssetManager mAssets;
+    private final Store<Bitmap> mStore;
+
+    private StickerCache(Context context, int maxBytes) {
+        mAssets = context.getAssets();
+        mStore = new Store<Bitmap>(maxBytes) {
+            @Override
+            protected Bitmap decode(String assetName) {
+                return decodeAsset(assetName);
+            }
+
+            @Override
+            protected Bitmap scale(Bitmap sticker, int height) {
+                int width = Math.max(1,
+                        Math.round((float) sticker.getWidth() * height / sticker.getHeight()));
+                return Bitmap.createScaledBitmap(sticker, width, height, true);
+            }
+
+            @Override
+            protected int getHeight(Bitmap sticker) {
+                return sticker.getHeight();
+            }
+
+            @Override
+            protected int sizeOf(Bitmap sticker) {
+                return sticker.getRowBytes() * sticker.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Returns the shared cache, creating it on first use.
+     */
+    public static synchronized StickerCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StickerCache(context.getApplicationContext(), MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the decoded sticker for the given asset, decoding it if it is not cached yet.  Returns
+     * null if the asset could not be decoded.
+     */
+    public Bitmap get(String assetName) {
+        return mStore.get(assetName, Store.ORIGINAL);
+    }
+
+    /**
+     * Returns the sticker for the given asset scaled to the given height, keeping its aspect ratio.
+     * The first call for a size scales the decoded sticker, so it is best made once per size change
+     * rather than on every draw.  Returns null if the asset could not be decoded.
+     */
+    public Bitmap getVariant(String assetName, int height) {
+        if (height <= 0) {
+            return null;
+        }
+        return mStore.get(assetName, height);
+    }
+
+    /**
+     * Returns the sticker for the given asset scaled to the height of a captured picture.  The
+     * variant is kept outside the LRU until a capture at another height replaces it.  The first
+     * call for a height scales the decoded sticker, so it should be made on a capture thread.
+     * Returns null if the asset could not be decoded.
+     */
+    public Bitmap getCaptureVariant(String assetName, int height) {
+        if (height <= 0) {
+            return null;
+        }
+        return mStore.getCaptureVariant(assetName, height);
+    }
+
+    /**
+     * Decodes the given assets into the cache.  This should be called off the UI and detector
+     * threads so that the first tracker update doesn't pay for the decode.
+     */
+    public void preload(String... assetNames) {
+        for (String name : assetNames) {
+            get(name);
+        }
+    }
+
+    public int hitCount() {
+        return mStore.hitCount();
+    }
+
+    public int missCount() {
+        return mStore.missCount();
+    }
+
+    /**
+     * Returns the number of times an asset was actually decoded.
+     */
+    public int decodeCount() {
+        return mStore.decodeCount();
+    }
+
+    private Bitmap decodeAsset(String assetName) {
+        InputStream stream = null;
+        try {
+            stream = mAssets.open(assetName);
+            return BitmapFactory.decodeStream(stream, null, null);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to decode sticker " + assetName, e);
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * The LRU behind the cache, in plain Java so that its keys and byte accounting don't depend on
+     * bitmaps.  Entries are keyed by the parameters that change the decoded pixels: the asset and
+     * the height it is scaled to.<p>
+     *
+     * Hits only take the LRU's own lock.  Misses are decoded under the store's lock, so two threads
+     * missing the same entry decode it once; the second one finds it in the LRU.  A variant that
+     * would have the height of the decoded sticker is the decoded sticker, and is not stored (and
+     * counted) a second time.
+     *
+     * @param <V> the decoded image
+     */
+    abstract static class Store<V> {
+        /**
+         * Height that stands for the sticker as decoded, without scaling.
+         */
+        static final int ORIGINAL = 0;
+
+        private final LruCache<String, V> mCache;
+        private int mDecodes;
+        // Capture variants by asset, guarded by their own lock so that scaling one doesn't hold
+        // up a miss on the UI thread.
+        private final Map<String, V> mCaptureVariants = new HashMap<>();
+        private int mCaptureScales;
+
+        Store(int maxBytes) {
+            mCache = new LruCache<String, V>(maxBytes) {
+                @Override
+                protected int sizeOf(String key, V value) {
+                    return Store.this.sizeOf(value);
+                }
+            };
+        }
+
+        static String key(String assetName, int height) {
+            return assetName + '#' + height;
+        }
+
+        /**
+         * Returns the entry for the asset at the given height, or {@link #ORIGINAL}, decoding or
+         * scaling it on a miss.  Returns null if the asset could not be decoded.
+         */
+        V get(String assetName, int height) {
+            String key = key(assetName, height);
+            V value = mCache.get(key);
+            if (value != null) {
+                return value;
+            }
+            synchronized (this) {
+                // Another thread may have decoded it while this one waited.
+                value = mCache.snapshot().get(key);
+                if (value != null) {
+                    return value;
+                }
+                if (height == ORIGINAL) {
+                    value = decode(assetName);
+                    mDecodes++;
+                } else {
+                    V original = get(assetName, ORIGINAL);
+                    if (original == null || getHeight(original) == height) {
+                        return original;
+                    }
+                    value = scale(original, height);
+                }
+                if (value != null) {
+                    mCache.put(key, value);
+                }
+                return value;
+            }
+        }
+
+        /**
+         * Returns the capture variant of the asset at the given height, scaling it from the
+         * decoded sticker if the one kept for the asset has another height.  Returns null if the
+         * asset could not be decoded.
+         */
+        V getCaptureVariant(String assetName, int height) {
+            synchronized (mCaptureVariants) {
+                V value = mCaptureVariants.get(assetName);
+                if (value != null && getHeight(value) == height) {
+                    return value;
+                }
+                V original = get(assetName, ORIGINAL);
+                if (original == null) {
+                    return null;
+                }
+                if (getHeight(original) == height) {
+                    value = original;
+                } else {
+                    value = scale(original, height);
+                    mCaptureScales++;
+                }
+                mCaptureVariants.put(assetName, value);
+                return value;
+            }
+        }
+
+        int size() {
+            return mCache.size();
+        }
+
+        int captureScaleCount() {
+            synchronized (mCaptureVariants) {
+                return mCaptureScales;
+            }
+        }
+
+        int hitCount() {
+            return mCache.hitCount();
+        }
+
+        int missCount() {
+            return mCache.missCount();
+        }
+
+        synchronized int decodeCount() {
+            return mDecodes;
+        }
+
+        protected abstract V decode(String assetName);
+
+        protected abstract V scale(V original, int height);
+
+        protected abstract int getHeight(V value);
+
+        protected abstract int sizeOf(V value);
+    }
+}
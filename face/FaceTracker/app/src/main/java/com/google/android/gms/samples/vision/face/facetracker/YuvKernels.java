@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+/**
+ * Kernels for NV21 camera frames: conversion to ARGB, cropping, box downscaling and rotation by a
+ * quarter turn with optional mirroring.<p>
+ *
+ * NV21 is a full resolution luma plane followed by a half resolution plane of interleaved V/U
+ * pairs, so widths, heights and crop edges have to be even.  All kernels are plain Java, work on
+ * arrays supplied by the caller and allocate nothing, so they can run on every frame.
+ */
+final class YuvKernels {
+    // BT.601 video range coefficients times 1024, for the integer only conversion loop.
+    private static final int Y_SCALE = 1192;   // 1.164
+    private static final int V_TO_R = 1634;    // 1.596
+    private static final int V_TO_G = 833;     // 0.813
+    private static final int U_TO_G = 400;     // 0.391
+    private static final int U_TO_B = 2066;    // 2.018
+    private static final int MAX_CHANNEL = 255 << 10;
+    // Half of the 1024 scale, added before the shift so that channels round to nearest.
+    private static final int ROUNDING = 1 << 9;
+
+    private YuvKernels() {
+    }
+
+    /**
+     * Returns the size in bytes of a {@code width} x {@code height} NV21 image.
+     */
+    static int nv21Size(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * Converts a {@code width} x {@code height} NV21 image to opaque ARGB, row by row into
+     * {@code argb}, which must hold at least {@code width * height} pixels.  Each pair of pixels
+     * shares one V/U sample, which is read once per pair.
+     */
+    static void toArgb(byte[] nv21, int width, int height, int[] argb) {
+        int frameSize = width * height;
+        if (nv21.length < nv21Size(width, height) || argb.length < frameSize) {
+            throw new IllegalArgumentException("Buffers too small for " + width + "x" + height);
+        }
+        for (int row = 0; row < height; ++row) {
+            int yIndex = row * width;
+            int chromaIndex = frameSize + (row >> 1) * width;
+            for (int column = 0; column < width; column += 2) {
+                int v = (nv21[chromaIndex++] & 0xff) - 128;
+                int u = (nv21[chromaIndex++] & 0xff) - 128;
+                int red = V_TO_R * v;
+                int green = -V_TO_G * v - U_TO_G * u;
+                int blue = U_TO_B * u;
+
+                argb[yIndex] = pixel(nv21[yIndex], red, green, blue);
+                yIndex++;
+                argb[yIndex] = pixel(nv21[yIndex], red, green, blue);
+                yIndex++;
+            }
+        }
+    }
+
+    /**
+     * Copies the rectangle {left, top, right, bottom} out of NV21 data starting at {@code offset}
+     * into {@code dst}.  The rectangle edges must be even.
+     */
+    static void crop(byte[] src, int offset, int width, int height, int[] rect, byte[] dst) {
+        int cropWidth = rect[2] - rect[0];
+        int cropHeight = rect[3] - rect[1];
+        int out = 0;
+        for (int y = rect[1]; y < rect[3]; ++y) {
+            System.arraycopy(src, offset + y * width + rect[0], dst, out, cropWidth);
+            out += cropWidth;
+        }
+        int chroma = offset + width * height;
+        for (int y = rect[1] / 2; y < rect[1] / 2 + cropHeight / 2; ++y) {
+            System.arraycopy(src, chroma + y * width + rect[0], dst, out, cropWidth);
+            out += cropWidth;
+        }
+    }
+
+    /**
+     * Shrinks NV21 data by an integer factor, averaging each {@code factor} x {@code factor} box of
+     * luma samples and of V/U pairs.  The width and height must be multiples of
+     * {@code 2 * factor}; the result is {@code width / factor} x {@code height / factor}.
+     */
+    static void downscale(byte[] src, int width, int height, int factor, byte[] dst) {
+        if (factor < 1 || width % (2 * factor) != 0 || height % (2 * factor) != 0) {
+            throw new IllegalArgumentException(
+                    "Can't downscale " + width + "x" + height + " by " + factor);
+        }
+        int outWidth = width / factor;
+        int outHeight = height / factor;
+        int area = factor * factor;
+        int half = area / 2;
+
+        int out = 0;
+        for (int y = 0; y < outHeight; ++y) {
+            int rowStart = y * factor * width;
+            for (int x = 0; x < outWidth; ++x) {
+                int sum = 0;
+                int boxStart = rowStart + x * factor;
+                for (int by = 0; by < factor; ++by) {
+                    int index = boxStart + by * width;
+                    for (int bx = 0; bx < factor; ++bx) {
+                        sum += src[index + bx] & 0xff;
+                    }
+                }
+                dst[out++] = (byte) ((sum + half) / area);
+            }
+        }
+
+        // The chroma plane has width / 2 pairs per row and height / 2 rows.
+        int chroma = width * height;
+        for (int y = 0; y < outHeight / 2; ++y) {
+            int rowStart = chroma + y * factor * width;
+            for (int x = 0; x < outWidth / 2; ++x) {
+                int sumV = 0;
+                int sumU = 0;
+                int boxStart = rowStart + x * factor * 2;
+                for (int by = 0; by < factor; ++by) {
+                    int index = boxStart + by * width;
+                    for (int bx = 0; bx < factor; ++bx) {
+                        sumV += src[index + 2 * bx] & 0xff;
+                        sumU += src[index + 2 * bx + 1] & 0xff;
+                    }
+                }
+                dst[out++] = (byte) ((sumV + half) / area);
+                dst[out++] = (byte) ((sumU + half) / area);
+            }
+        }
+    }
+
+    /**
+     * Rotates NV21 data clockwise by 90 or 270 degrees, optionally mirroring the result
+     * horizontally, as needed to turn a sensor oriented frame upright.  The result is
+     * {@code height} x {@code width}.
+     */
+    static void rotate(byte[] src, int width, int height, int degrees, boolean mirror,
+                       byte[] dst) {
+        if (degrees != 90 && degrees != 270) {
+            throw new IllegalArgumentException("Can only rotate by 90 or 270 degrees: " + degrees);
+        }
+        rotatePlane(src, 0, width, height, 1, degrees, mirror, dst, 0);
+        int chroma = width * height;
+        rotatePlane(src, chroma, width / 2, height / 2, 2, degrees, mirror, dst, chroma);
+    }
+
+    /**
+     * Rotates a plane of {@code width} x {@code height} elements of {@code elementSize} bytes each.
+     * Walks the destination in order, so the writes are sequential.
+     */
+    private static void rotatePlane(byte[] src, int srcOffset, int width, int height,
+                                    int elementSize, int degrees, boolean mirror, byte[] dst,
+                                    int dstOffset) {
+        // The destination is height x width.
+        int out = dstOffset;
+        for (int dy = 0; dy < width; ++dy) {
+            for (int dx = 0; dx < height; ++dx) {
+                int x = mirror ? height - 1 - dx : dx;
+                int sx;
+                int sy;
+                if (degrees == 90) {
+                    sx = dy;
+                    sy = height - 1 - x;
+                } else {
+                    sx = width - 1 - dy;
+                    sy = x;
+                }
+                int index = srcOffset + (sy * width + sx) * elementSize;
+                dst[out++] = src[index];
+                if (elementSize == 2) {
+                    dst[out++] = src[index + 1];
+                }
+            }
+        }
+    }
+
+    private static int pixel(byte luma, int red, int green, int blue) {
+        int y = Math.max((luma & 0xff) - 16, 0) * Y_SCALE + ROUNDING;
+        int r = clamp(y + red);
+        int g = clamp(y + green);
+        int b = clamp(y + blue);
+        return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | (b >> 10);
+    }
+
+    private static int clamp(int value) {
+        return (value < 0) ? 0 : (value > MAX_CHANNEL ? MAX_CHANNEL : value);
+    }
+}
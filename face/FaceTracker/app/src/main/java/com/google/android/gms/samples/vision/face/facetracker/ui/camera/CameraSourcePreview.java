@@ -53,6 +53,11 @@ public class CameraSourcePreview extends ViewGroup {
         mCameraSource.takePicture(null, callback);
     }
 
+    public void takePicture(CameraSource.ShutterCallback shutter,
+                            CameraSource.PictureCallback callback) {
+        mCameraSource.takePicture(shutter, callback);
+    }
+
     public void start(CameraSource cameraSource) throws IOException {
         if (cameraSource == null) {
             stop();
@@ -16,15 +16,18 @@
 package com.google.android.gms.samples.vision.face.facetracker.ui.camera;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.view.View;
 
-import com.google.android.gms.samples.vision.face.facetracker.FaceGraphic;
 import com.google.android.gms.vision.CameraSource;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -43,21 +46,32 @@ import java.util.Set;
  * <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the coordinate
  * from the preview's coordinate system to the view coordinate system.</li>
  * </ol>
+ *
+ * The set of graphics is kept as an immutable {@link Snapshot} which is replaced atomically on every
+ * change, so drawing never blocks the detector threads that add and remove graphics.  All changes
+ * made within one display frame are folded into a single invalidate, posted for the next vsync.<p>
+ *
+ * Graphics may keep content that only changes with some state of theirs, such as a sticker that is
+ * shown or not, in {@link StaticLayer}s of their own.  A layer is only redrawn when that state
+ * changes; on other frames the graphic just moves it to where it is shown.<p>
+ *
+ * Captured pictures are composited from a {@link CaptureSnapshot}, an immutable copy of what every
+ * graphic shows at one instant, so that the capture threads never touch live graphics.
  */
 public class GraphicOverlay extends View {
-    private final Object mLock = new Object();
-    private int mPreviewWidth;
+    private volatile int mPreviewWidth;
     private float mWidthScaleFactor = 1.0f;
-    private int mPreviewHeight;
+    private volatile int mPreviewHeight;
     private float mHeightScaleFactor = 1.0f;
-    private int mFacing = CameraSource.CAMERA_FACING_BACK;
-    private Set<Graphic> mGraphics = new HashSet<>();
+    private volatile int mFacing = CameraSource.CAMERA_FACING_BACK;
+    private final AtomicReference<Snapshot> mGraphics = new AtomicReference<>(Snapshot.EMPTY);
+    private final AtomicBoolean mRedrawPending = new AtomicBoolean();
+    private final AtomicLong mRequestedRedraws = new AtomicLong();
+    private final AtomicLong mPerformedRedraws = new AtomicLong();
+    // Static layer metrics, only touched on the UI thread.
+    private long mStaticRenders;
+    private long mStaticReuses;
 
-    public void testDraw(Canvas canvas) {
-        for (Graphic g : mGraphics) {
-            ((FaceGraphic)g).drawInCanvas(canvas);
-        }
-    }
     /**
      * Base class for a custom graphics object to be rendered within the graphic overlay.  Subclass
      * this and implement the {@link Graphic#draw(Canvas)} method to define the
@@ -84,6 +98,22 @@ public class GraphicOverlay extends View {
          */
         public abstract void draw(Canvas canvas);
 
+        /**
+         * Returns an immutable copy of what the graphic shows right now, for drawing into a
+         * captured picture, or null if it shows nothing.  Called on the UI thread.
+         */
+        public CaptureGraphic snapshot() {
+            return null;
+        }
+
+        /**
+         * Returns a new layer for caching a piece of this graphic's static content, drawn by the
+         * given renderer.
+         */
+        protected StaticLayer createStaticLayer(StaticLayer.Renderer renderer) {
+            return new StaticLayer(mOverlay, renderer);
+        }
+
         /**
          * Adjusts a horizontal value of the supplied value from the preview scale to the view
          * scale.
@@ -120,7 +150,164 @@ public class GraphicOverlay extends View {
         }
 
         public void postInvalidate() {
-            mOverlay.postInvalidate();
+            mOverlay.requestRedraw();
+        }
+    }
+
+    /**
+     * Immutable view of the graphics in the overlay.  Graphics are kept in the order in which they
+     * were added, which is also the order in which they are drawn.  The version is bumped on every
+     * change.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new Graphic[0], 0);
+
+        public final Graphic[] graphics;
+        public final long version;
+
+        private Snapshot(Graphic[] graphics, long version) {
+            this.graphics = graphics;
+            this.version = version;
+        }
+
+        private int indexOf(Graphic graphic) {
+            for (int i = 0; i < graphics.length; ++i) {
+                if (graphics[i] == graphic) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Snapshot with(Graphic graphic) {
+            if (indexOf(graphic) >= 0) {
+                return this;
+            }
+            Graphic[] next = new Graphic[graphics.length + 1];
+            System.arraycopy(graphics, 0, next, 0, graphics.length);
+            next[graphics.length] = graphic;
+            return new Snapshot(next, version + 1);
+        }
+
+        private Snapshot without(Graphic graphic) {
+            int index = indexOf(graphic);
+            if (index < 0) {
+                return this;
+            }
+            Graphic[] next = new Graphic[graphics.length - 1];
+            System.arraycopy(graphics, 0, next, 0, index);
+            System.arraycopy(graphics, index + 1, next, index, next.length - index);
+            return new Snapshot(next, version + 1);
+        }
+    }
+
+    /**
+     * A bitmap caching a piece of a graphic's static content.  On every draw the graphic passes a
+     * key for the state the content should show; the layer is only drawn again, by its
+     * {@link Renderer}, when the key or the size changes, and is otherwise returned as is.  Since
+     * the bitmap is then unchanged, the hardware renderer doesn't upload it again and the work per
+     * frame is drawing it where the graphic is.  The graphic draws its layers from
+     * {@link Graphic#draw(Canvas)} itself, so they keep the graphic's place in the draw order.
+     * Only used on the UI thread.
+     */
+    public static final class StaticLayer {
+        /**
+         * Key for a state that shows nothing.
+         */
+        public static final long NO_CONTENT = 0;
+
+        /**
+         * Draws the content of a layer.
+         */
+        public interface Renderer {
+            /**
+             * Draws the content for the given key into a cleared layer of the given size.
+             */
+            void render(Canvas canvas, long key, int width, int height);
+        }
+
+        private final GraphicOverlay mOverlay;
+        private final Renderer mRenderer;
+        private final Canvas mCanvas = new Canvas();
+        private Bitmap mBitmap;
+        private long mKey = NO_CONTENT;
+
+        private StaticLayer(GraphicOverlay overlay, Renderer renderer) {
+            mOverlay = overlay;
+            mRenderer = renderer;
+        }
+
+        /**
+         * Returns the layer showing the content for the given key at the given size, rendering it
+         * first if the layer shows anything else.  Returns null for {@link #NO_CONTENT} or an
+         * empty size; the layer keeps what it showed last, so going back to it is free.
+         */
+        public Bitmap get(long key, int width, int height) {
+            if (key == NO_CONTENT || width <= 0 || height <= 0) {
+                return null;
+            }
+            if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+                mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mCanvas.setBitmap(mBitmap);
+            } else if (key == mKey) {
+                mOverlay.mStaticReuses++;
+                return mBitmap;
+            } else {
+                mBitmap.eraseColor(Color.TRANSPARENT);
+            }
+            mOverlay.mStaticRenders++;
+            mKey = key;
+            mRenderer.render(mCanvas, key, width, height);
+            return mBitmap;
+        }
+    }
+
+    /**
+     * What a graphic showed when a picture was taken, in overlay view coordinates.  Must be
+     * immutable, since it is drawn on a capture thread while the graphic keeps changing.
+     */
+    public interface CaptureGraphic {
+        /**
+         * Draws into an upright picture of the given size, mapping view coordinates with the given
+         * factors.
+         */
+        void draw(Canvas canvas, float scaleX, float scaleY, int width, int height);
+    }
+
+    /**
+     * Immutable copy of the overlay at one instant: the view size and what every graphic showed.
+     * Safe to draw from any thread.
+     */
+    public static final class CaptureSnapshot {
+        public final int width;
+        public final int height;
+        private final CaptureGraphic[] mGraphics;
+
+        private CaptureSnapshot(int width, int height, CaptureGraphic[] graphics) {
+            this.width = width;
+            this.height = height;
+            mGraphics = graphics;
+        }
+
+        /**
+         * Returns what the graphics showed, in draw order.  For tests; the array is not copied.
+         */
+        CaptureGraphic[] getGraphics() {
+            return mGraphics;
+        }
+
+        /**
+         * Draws the graphics into an upright picture of the given size, scaled from the view size.
+         */
+        public void draw(Canvas canvas, int pictureWidth, int pictureHeight) {
+            if (width == 0 || height == 0) {
+                return;
+            }
+            float scaleX = (float) pictureWidth / width;
+            float scaleY = (float) pictureHeight / height;
+            for (CaptureGraphic graphic : mGraphics) {
+                graphic.draw(canvas, scaleX, scaleY, pictureWidth, pictureHeight);
+            }
         }
     }
 
@@ -128,34 +315,75 @@ public class GraphicOverlay extends View {
         super(context, attrs);
     }
 
+    /**
+     * Returns the current set of graphics.  The returned snapshot never changes, later additions
+     * and removals publish a new one.
+     */
+    public Snapshot getSnapshot() {
+        return mGraphics.get();
+    }
+
+    /**
+     * Copies what the graphics show right now, for compositing a picture taken at this instant.
+     * Call on the UI thread, e.g. from the shutter callback.
+     */
+    public CaptureSnapshot captureSnapshot() {
+        Graphic[] graphics = mGraphics.get().graphics;
+        CaptureGraphic[] captured = new CaptureGraphic[graphics.length];
+        int count = 0;
+        for (Graphic graphic : graphics) {
+            CaptureGraphic snapshot = graphic.snapshot();
+            if (snapshot != null) {
+                captured[count++] = snapshot;
+            }
+        }
+        if (count < captured.length) {
+            CaptureGraphic[] trimmed = new CaptureGraphic[count];
+            System.arraycopy(captured, 0, trimmed, 0, count);
+            captured = trimmed;
+        }
+        return new CaptureSnapshot(getWidth(), getHeight(), captured);
+    }
+
     /**
      * Removes all graphics from the overlay.
      */
     public void clear() {
-        synchronized (mLock) {
-            mGraphics.clear();
-        }
-        postInvalidate();
+        Snapshot current;
+        do {
+            current = mGraphics.get();
+            if (current.graphics.length == 0) {
+                break;
+            }
+        } while (!mGraphics.compareAndSet(current,
+                new Snapshot(Snapshot.EMPTY.graphics, current.version + 1)));
+        requestRedraw();
     }
 
     /**
      * Adds a graphic to the overlay.
      */
     public void add(Graphic graphic) {
-        synchronized (mLock) {
-            mGraphics.add(graphic);
-        }
-        postInvalidate();
+        Snapshot current;
+        Snapshot next;
+        do {
+            current = mGraphics.get();
+            next = current.with(graphic);
+        } while (next != current && !mGraphics.compareAndSet(current, next));
+        requestRedraw();
     }
 
     /**
      * Removes a graphic from the overlay.
      */
     public void remove(Graphic graphic) {
-        synchronized (mLock) {
-            mGraphics.remove(graphic);
-        }
-        postInvalidate();
+        Snapshot current;
+        Snapshot next;
+        do {
+            current = mGraphics.get();
+            next = current.without(graphic);
+        } while (next != current && !mGraphics.compareAndSet(current, next));
+        requestRedraw();
     }
 
     /**
@@ -163,12 +391,57 @@ public class GraphicOverlay extends View {
      * image coordinates later.
      */
     public void setCameraInfo(int previewWidth, int previewHeight, int facing) {
-        synchronized (mLock) {
-            mPreviewWidth = previewWidth;
-            mPreviewHeight = previewHeight;
-            mFacing = facing;
+        mPreviewWidth = previewWidth;
+        mPreviewHeight = previewHeight;
+        mFacing = facing;
+        requestRedraw();
+    }
+
+    /**
+     * Marks the overlay as dirty.  Only the first request since the last draw posts an invalidate,
+     * aligned to the next display frame; later requests in the same frame are folded into it.  Safe
+     * to call from any thread.
+     */
+    public void requestRedraw() {
+        mRequestedRedraws.incrementAndGet();
+        if (mRedrawPending.compareAndSet(false, true)) {
+            ViewCompat.postInvalidateOnAnimation(this);
         }
-        postInvalidate();
+    }
+
+    /**
+     * Returns the number of redraws requested through {@link #requestRedraw()}.
+     */
+    public long getRequestedRedrawCount() {
+        return mRequestedRedraws.get();
+    }
+
+    /**
+     * Returns the number of times the overlay has actually been drawn.
+     */
+    public long getPerformedRedrawCount() {
+        return mPerformedRedraws.get();
+    }
+
+    /**
+     * Returns the number of times a graphic's static layer had to be rendered.
+     */
+    public long getStaticLayerRenderCount() {
+        return mStaticRenders;
+    }
+
+    /**
+     * Returns the number of times a graphic's static layer was drawn as it was.
+     */
+    public long getStaticLayerReuseCount() {
+        return mStaticReuses;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // Invalidates posted while detached are dropped, so don't keep waiting on one.
+        mRedrawPending.set(false);
     }
 
     /**
@@ -177,16 +450,19 @@ public class GraphicOverlay extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        // Cleared before drawing so that changes published while drawing schedule another frame.
+        mRedrawPending.set(false);
+        mPerformedRedraws.incrementAndGet();
 
-        synchronized (mLock) {
-            if ((mPreviewWidth != 0) && (mPreviewHeight != 0)) {
-                mWidthScaleFactor = (float) canvas.getWidth() / (float) mPreviewWidth;
-                mHeightScaleFactor = (float) canvas.getHeight() / (float) mPreviewHeight;
-            }
+        int previewWidth = mPreviewWidth;
+        int previewHeight = mPreviewHeight;
+        if ((previewWidth != 0) && (previewHeight != 0)) {
+            mWidthScaleFactor = (float) canvas.getWidth() / (float) previewWidth;
+            mHeightScaleFactor = (float) canvas.getHeight() / (float) previewHeight;
+        }
 
-            for (Graphic graphic : mGraphics) {
-                graphic.draw(canvas);
-            }
+        for (Graphic graphic : mGraphics.get().graphics) {
+            graphic.draw(canvas);
         }
     }
 }
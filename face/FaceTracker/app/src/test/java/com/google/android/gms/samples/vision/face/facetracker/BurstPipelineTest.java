@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link BurstPipeline} with string stages in place of the codecs.
+ */
+public class BurstPipelineTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /**
+     * Appends a tag to the shot, remembering the thread it ran on.
+     */
+    private static class TagStage implements BurstPipeline.Stage<String, String> {
+        final String mTag;
+        final List<String> mThreads = Collections.synchronizedList(new ArrayList<String>());
+
+        TagStage(String tag) {
+            mTag = tag;
+        }
+
+        @Override
+        public String process(String input) throws Exception {
+            mThreads.add(Thread.currentThread().getName());
+            return input + mTag;
+        }
+    }
+
+    private static class RecordingListener implements BurstPipeline.Listener<String> {
+        final List<String> mDone = Collections.synchronizedList(new ArrayList<String>());
+        final List<Integer> mFailed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch mFinished = new CountDownLatch(1);
+        volatile BurstPipeline.Stats mStats;
+
+        @Override
+        public void onShotDone(int index, String result) {
+            mDone.add(index + ":" + result);
+        }
+
+        @Override
+        public void onShotFailed(int index, Exception error) {
+            mFailed.add(index);
+        }
+
+        @Override
+        public void onBurstDone(BurstPipeline.Stats stats) {
+            mStats = stats;
+            mFinished.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Burst didn't finish", mFinished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void shotsPassAllStagesInOrder() throws InterruptedException {
+        TagStage decode = new TagStage("d");
+        TagStage composite = new TagStage("c");
+        TagStage encode = new TagStage("e");
+        RecordingListener listener = new RecordingListener();
+        BurstPipeline<String, String, String> pipeline =
+                new BurstPipeline<>(decode, composite, encode, listener, 4, 1);
+        pipeline.start();
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(i, pipeline.submit("s" + i));
+        }
+        pipeline.finish();
+        listener.await();
+
+        assertEquals(Arrays.asList("0:s0dce", "1:s1dce", "2:s2dce", "3:s3dce"), listener.mDone);
+        assertEquals(4, listener.mStats.shots);
+        assertEquals(0, listener.mStats.failed);
+        for (BurstPipeline.StageStats stage : listener.mStats.stages) {
+            assertEquals(4, stage.processed);
+        }
+    }
+
+    @Test
+    public void eachStageRunsOnItsOwnThread() throws InterruptedException {
+        TagStage decode = new TagStage("d");
+        TagStage composite = new TagStage("c");
+        TagStage encode = new TagStage("e");
+        RecordingListener listener = new RecordingListener();
+        BurstPipeline<String, String, String> pipeline =
+                new BurstPipeline<>(decode, composite, encode, listener, 2, 1);
+        pipeline.start();
+        pipeline.submit("a");
+        pipeline.submit("b");
+        pipeline.finish();
+        listener.await();
+
+        assertEquals(Arrays.asList("burst-decode", "burst-decode"), decode.mThreads);
+        assertEquals(Arrays.asList("burst-composite", "burst-composite"), composite.mThreads);
+        assertEquals(Arrays.asList("burst-encode", "burst-encode"), encode.mThreads);
+    }
+
+    @Test
+    public void submitRefusesExtraShots() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        BurstPipeline<String, String, String> pipeline = new BurstPipeline<>(
+                new TagStage("d"), new TagStage("c"), new TagStage("e"), listener, 2, 1);
+        pipeline.start();
+
+        assertEquals(0, pipeline.submit("a"));
+        assertEquals(1, pipeline.submit("b"));
+        assertEquals(-1, pipeline.submit("c"));
+        pipeline.finish();
+        listener.await();
+        assertEquals(2, listener.mStats.shots);
+    }
+
+    @Test
+    public void submitAfterFinishIsRefused() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        BurstPipeline<String, String, String> pipeline = new BurstPipeline<>(
+                new TagStage("d"), new TagStage("c"), new TagStage("e"), listener, 4, 1);
+        pipeline.start();
+        pipeline.submit("a");
+        pipeline.finish();
+
+        assertEquals(-1, pipeline.submit("b"));
+        listener.await();
+        assertEquals(1, listener.mStats.shots);
+    }
+
+    @Test
+    public void failedShotSkipsLaterStages() throws InterruptedException {
+        BurstPipeline.Stage<String, String> decode = new BurstPipeline.Stage<String, String>() {
+            @Override
+            public String process(String input) throws Exception {
+                if (input.equals("bad")) {
+                    throw new Exception("Corrupt JPEG");
+                }
+                return input + "d";
+            }
+        };
+        TagStage composite = new TagStage("c");
+        TagStage encode = new TagStage("e");
+        RecordingListener listener = new RecordingListener();
+        BurstPipeline<String, String, String> pipeline =
+                new BurstPipeline<>(decode, composite, encode, listener, 3, 1);
+        pipeline.start();
+        pipeline.submit("a");
+        pipeline.submit("bad");
+        pipeline.submit("c");
+        pipeline.finish();
+        listener.await();
+
+        assertEquals(Arrays.asList("0:adce", "2:cdce"), listener.mDone);
+        assertEquals(Arrays.asList(1), listener.mFailed);
+        assertEquals(2, composite.mThreads.size());
+        assertEquals(3, listener.mStats.shots);
+        assertEquals(1, listener.mStats.failed);
+        assertEquals(1, listener.mStats.stages[0].failed);
+        assertEquals(2, listener.mStats.stages[0].processed);
+    }
+
+    @Test
+    public void slowStageHoldsEarlierStagesBack() throws InterruptedException {
+        final AtomicInteger decodes = new AtomicInteger();
+        BurstPipeline.Stage<String, String> decode = new BurstPipeline.Stage<String, String>() {
+            @Override
+            public String process(String input) throws Exception {
+                decodes.incrementAndGet();
+                return input;
+            }
+        };
+        final CountDownLatch encoderReleased = new CountDownLatch(1);
+        BurstPipeline.Stage<String, String> encode = new BurstPipeline.Stage<String, String>() {
+            @Override
+            public String process(String input) throws Exception {
+                encoderReleased.await();
+                return input;
+            }
+        };
+        RecordingListener listener = new RecordingListener();
+        BurstPipeline<String, String, String> pipeline =
+                new BurstPipeline<>(decode, new TagStage(""), encode, listener, 6, 1);
+        pipeline.start();
+        for (int i = 0; i < 6; ++i) {
+            pipeline.submit("s" + i);
+        }
+        pipeline.finish();
+
+        // With single slot queues, the stuck encoder holds one shot, the composited queue one,
+        // the compositor one, the decoded queue one and the decoder one; the sixth waits.
+        long deadline = System.currentTimeMillis() + TIMEOUT_SECONDS * 1000;
+        while (decodes.get() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(5, decodes.get());
+        assertTrue(listener.mDone.isEmpty());
+
+        encoderReleased.countDown();
+        listener.await();
+        assertEquals(6, decodes.get());
+        assertEquals(6, listener.mDone.size());
+    }
+}
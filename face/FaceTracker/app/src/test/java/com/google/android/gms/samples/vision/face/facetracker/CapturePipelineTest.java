@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sensor to upright transform of {@link CapturePipeline} through its matrix values, as
+ * {@link android.graphics.Matrix} itself isn't available off the device.
+ */
+public class CapturePipelineTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static float[] map(float[] m, float x, float y) {
+        float w = m[6] * x + m[7] * y + m[8];
+        return new float[] {
+                (m[0] * x + m[1] * y + m[2]) / w,
+                (m[3] * x + m[4] * y + m[5]) / w
+        };
+    }
+
+    private static float[] multiply(float[] a, float[] b) {
+        float[] result = new float[9];
+        for (int row = 0; row < 3; ++row) {
+            for (int column = 0; column < 3; ++column) {
+                for (int i = 0; i < 3; ++i) {
+                    result[row * 3 + column] += a[row * 3 + i] * b[i * 3 + column];
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void cornersMapOntoUprightPicture() {
+        float[] m = CapturePipeline.sensorToUprightValues(WIDTH, HEIGHT);
+
+        // The upright picture is HEIGHT x WIDTH; each sensor corner lands on the mirrored
+        // corner across the anti-diagonal.
+        assertArrayEquals(new float[] {HEIGHT, WIDTH}, map(m, 0, 0), 0f);
+        assertArrayEquals(new float[] {HEIGHT, 0}, map(m, WIDTH, 0), 0f);
+        assertArrayEquals(new float[] {0, WIDTH}, map(m, 0, HEIGHT), 0f);
+        assertArrayEquals(new float[] {0, 0}, map(m, WIDTH, HEIGHT), 0f);
+    }
+
+    @Test
+    public void pointsMapAcrossAntiDiagonal() {
+        float[] m = CapturePipeline.sensorToUprightValues(WIDTH, HEIGHT);
+
+        assertArrayEquals(new float[] {HEIGHT - 100, WIDTH - 10}, map(m, 10, 100), 0f);
+        assertArrayEquals(new float[] {HEIGHT / 2, WIDTH / 2}, map(m, WIDTH / 2, HEIGHT / 2), 0f);
+    }
+
+    @Test
+    public void transformMirrors() {
+        float[] m = CapturePipeline.sensorToUprightValues(WIDTH, HEIGHT);
+
+        // A rotation alone has a determinant of 1; the mirror flips its sign.
+        assertEquals(-1f, m[0] * m[4] - m[1] * m[3], 0f);
+    }
+
+    @Test
+    public void transformOfTransposedSizeUndoesIt() {
+        float[] forward = CapturePipeline.sensorToUprightValues(WIDTH, HEIGHT);
+        float[] back = CapturePipeline.sensorToUprightValues(HEIGHT, WIDTH);
+
+        assertArrayEquals(new float[] {1, 0, 0, 0, 1, 0, 0, 0, 1}, multiply(back, forward), 0f);
+    }
+}
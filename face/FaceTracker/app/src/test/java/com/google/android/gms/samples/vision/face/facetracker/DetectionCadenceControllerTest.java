@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DetectionCadenceControllerTest {
+    private static final long TARGET_MILLIS = 30;
+    private static final long SLOW_MILLIS = 50;
+    private static final long FAST_MILLIS = 10;
+    private static final int MAX_STRIDE = 3;
+
+    private DetectionCadenceController mController;
+    private final List<Integer> mWidths = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mController = new DetectionCadenceController(TARGET_MILLIS, MAX_STRIDE,
+                new int[][] {{640, 480}, {320, 240}});
+        mController.setListener(new DetectionCadenceController.Listener() {
+            @Override
+            public void onResolutionChanged(int width, int height) {
+                mWidths.add(width);
+            }
+        });
+    }
+
+    /**
+     * Feeds {@code count} processed frames of the given latency, with the given drops before each.
+     */
+    private void feed(long latencyMillis, int droppedFrames, int count) {
+        for (int i = 0; i < count; ++i) {
+            mController.onFrame(droppedFrames);
+            mController.onFrameProcessed(latencyMillis);
+        }
+    }
+
+    private int countDetected(int frames) {
+        int detected = 0;
+        for (int i = 0; i < frames; ++i) {
+            if (mController.onFrame(0)) {
+                detected++;
+            }
+        }
+        return detected;
+    }
+
+    @Test
+    public void startsAtFullResolutionEveryFrame() {
+        assertEquals(640, mController.getWidth());
+        assertEquals(1, mController.getStride());
+        assertEquals(10, countDetected(10));
+    }
+
+    @Test
+    public void overBudgetStepsResolutionDown() {
+        feed(SLOW_MILLIS, 0, 2);
+        assertEquals(0, mController.getResolutionLevel());
+
+        feed(SLOW_MILLIS, 0, 1);
+        assertEquals(1, mController.getResolutionLevel());
+        assertEquals(240, mController.getHeight());
+        assertEquals(1, mController.getStride());
+        assertEquals(1, mWidths.size());
+        assertEquals(320, (int) mWidths.get(0));
+    }
+
+    @Test
+    public void dwellsAfterResolutionChange() {
+        feed(SLOW_MILLIS, 0, 3);
+        feed(SLOW_MILLIS, 0, DetectionCadenceController.RESOLUTION_DWELL_SAMPLES);
+        assertEquals(1, mController.getStride());
+
+        // Already at the lowest resolution, so the stride goes up instead.
+        feed(SLOW_MILLIS, 0, 3);
+        assertEquals(1, mController.getResolutionLevel());
+        assertEquals(2, mController.getStride());
+        assertEquals(5, countDetected(10));
+    }
+
+    @Test
+    public void droppedFramesRaiseStride() {
+        feed(FAST_MILLIS, 1, 3);
+
+        assertEquals(0, mController.getResolutionLevel());
+        assertEquals(2, mController.getStride());
+
+        feed(FAST_MILLIS, 1, 6);
+        assertEquals(MAX_STRIDE, mController.getStride());
+        feed(FAST_MILLIS, 1, 3);
+        // Out of stride, so the resolution gives way.
+        assertEquals(1, mController.getResolutionLevel());
+    }
+
+    @Test
+    public void headroomLowersStrideBeforeRaisingResolution() {
+        feed(SLOW_MILLIS, 0, 3);
+        feed(FAST_MILLIS, 0, DetectionCadenceController.RESOLUTION_DWELL_SAMPLES);
+        feed(FAST_MILLIS, 1, 3);
+        assertEquals(1, mController.getResolutionLevel());
+        assertEquals(2, mController.getStride());
+
+        feed(FAST_MILLIS, 0, 29);
+        assertEquals(2, mController.getStride());
+        feed(FAST_MILLIS, 0, 1);
+        assertEquals(1, mController.getStride());
+        assertEquals(1, mController.getResolutionLevel());
+
+        feed(FAST_MILLIS, 0, 30);
+        assertEquals(0, mController.getResolutionLevel());
+        assertEquals(640, (int) mWidths.get(mWidths.size() - 1));
+    }
+
+    @Test
+    public void latencyWithinBandHoldsCadence() {
+        feed(20, 0, 100);
+
+        assertEquals(0, mController.getResolutionLevel());
+        assertEquals(1, mController.getStride());
+    }
+
+    @Test
+    public void lowPowerAppliesOnNextFrameAndPins() {
+        mController.setProfile(DetectionCadenceController.Profile.LOW_POWER);
+        assertEquals(DetectionCadenceController.Profile.ADAPTIVE, mController.getProfile());
+
+        mController.onFrame(0);
+        assertEquals(DetectionCadenceController.Profile.LOW_POWER, mController.getProfile());
+        assertEquals(MAX_STRIDE, mController.getStride());
+        assertEquals(1, mController.getResolutionLevel());
+
+        feed(FAST_MILLIS, 0, 100);
+        assertEquals(MAX_STRIDE, mController.getStride());
+        assertEquals(1, mController.getResolutionLevel());
+        assertEquals(2, countDetected(6));
+    }
+
+    @Test
+    public void adaptiveResumesFromLowPower() {
+        mController.setProfile(DetectionCadenceController.Profile.LOW_POWER);
+        mController.onFrame(0);
+        mController.setProfile(DetectionCadenceController.Profile.ADAPTIVE);
+        feed(FAST_MILLIS, 0, DetectionCadenceController.RESOLUTION_DWELL_SAMPLES + 30);
+
+        assertEquals(DetectionCadenceController.Profile.ADAPTIVE, mController.getProfile());
+        assertTrue(mController.getStride() < MAX_STRIDE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsResolutions() {
+        new DetectionCadenceController(TARGET_MILLIS, MAX_STRIDE, new int[0][]);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import android.graphics.Canvas;
+import android.graphics.PointF;
+
+import com.google.android.gms.samples.vision.face.facetracker.ui.camera.GraphicOverlay;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Draws a tracked {@link FaceGraphic} over and over after a warm-up and checks that the draws
+ * allocate nothing.  The canvas calls are unit test stubs that do nothing, so what is counted is
+ * the graphic's own work: the pose prediction, the placement and the sticker bookkeeping.
+ */
+public class FaceGraphicAllocationTest {
+    private static final int WARM_UP_DRAWS = 50;
+    private static final int DRAWS = 1000;
+
+    /**
+     * A canvas of a typical overlay size.
+     */
+    private static final class SizedCanvas extends Canvas {
+        @Override
+        public int getWidth() {
+            return 1080;
+        }
+
+        @Override
+        public int getHeight() {
+            return 1920;
+        }
+    }
+
+    private static Face face(float x, float eulerZ) {
+        return new Face(1, new PointF(x, 300), 200, 260, 0, eulerZ, new Landmark[0], 1, 1, 0.9f);
+    }
+
+    @Test
+    public void drawDoesNotAllocate() {
+        Assume.assumeTrue(Allocations.isSupported());
+        final FaceGraphic graphic = new FaceGraphic(new GraphicOverlay(null, null));
+        // A face moving and tilted past the shoulder threshold, so that the pose is extrapolated.
+        for (int i = 0; i < 5; ++i) {
+            graphic.updateFace(face(200 + 10 * i, 25), 66 * i);
+        }
+
+        final Canvas canvas = new SizedCanvas();
+        Runnable draws = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < DRAWS; ++i) {
+                    graphic.draw(canvas);
+                }
+            }
+        };
+        for (int i = 0; i < WARM_UP_DRAWS; ++i) {
+            graphic.draw(canvas);
+        }
+        assertEquals("Bytes allocated by " + DRAWS + " draws", 0, Allocations.count(draws));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays {@link FaceTrackFixture} through {@link FacePoseFilter} the way the overlay does: each
+ * detection is fed in when it arrives and the pose is predicted at every display frame.  The
+ * replay reports how much the drawn x position jitters while the face holds still and how far it
+ * lags behind the face while it pans, next to the same figures for drawing the latest detection
+ * as is, and fails if the filter gets worse than the limits below.
+ */
+public class FacePoseFilterReplayTest {
+    private static final Logger LOG = Logger.getLogger("FacePoseFilterReplayTest");
+
+    private static final long DISPLAY_FRAME_MILLIS = 16;
+
+    /**
+     * The filter settles on the new speed within this time after the pan starts.
+     */
+    private static final long SETTLE_MILLIS = 300;
+
+    /**
+     * Limits on the filtered track: jitter in pixels per display frame, and lag in milliseconds,
+     * which includes the 40 to 75 milliseconds the detector takes.  Drawing the latest detection
+     * as is jitters by about 1.7 pixels and lags by about 70 milliseconds on this track.
+     */
+    private static final double MAX_JITTER_PX = 0.5;
+    private static final double MAX_LAG_MILLIS = 80;
+
+    /**
+     * Drawn x position at each display frame, for the filter and for the latest detection.
+     */
+    private static final class Replay {
+        final long[] times;
+        final float[] filtered;
+        final float[] raw;
+
+        Replay(int frames) {
+            times = new long[frames];
+            filtered = new float[frames];
+            raw = new float[frames];
+        }
+    }
+
+    private static Replay replay() {
+        float[][] samples = FaceTrackFixture.SAMPLES;
+        long end = (long) samples[samples.length - 1][FaceTrackFixture.ARRIVAL_MILLIS];
+        long start = (long) samples[0][FaceTrackFixture.ARRIVAL_MILLIS];
+        Replay replay = new Replay((int) ((end - start) / DISPLAY_FRAME_MILLIS) + 1);
+
+        FacePoseFilter filter = new FacePoseFilter();
+        float[] pose = new float[FacePoseFilter.SIZE];
+        float latest = 0;
+        int next = 0;
+        for (int i = 0; i < replay.times.length; ++i) {
+            long now = start + i * DISPLAY_FRAME_MILLIS;
+            while (next < samples.length
+                    && samples[next][FaceTrackFixture.ARRIVAL_MILLIS] <= now) {
+                float[] sample = samples[next++];
+                filter.update(sample[FaceTrackFixture.CENTER_X], sample[FaceTrackFixture.CENTER_Y],
+                        sample[FaceTrackFixture.WIDTH], sample[FaceTrackFixture.HEIGHT],
+                        sample[FaceTrackFixture.EULER_Z],
+                        (long) sample[FaceTrackFixture.FRAME_MILLIS],
+                        (long) sample[FaceTrackFixture.ARRIVAL_MILLIS]);
+                latest = sample[FaceTrackFixture.CENTER_X];
+            }
+            filter.predict(now, pose);
+            replay.times[i] = now;
+            replay.filtered[i] = pose[FacePoseFilter.CENTER_X];
+            replay.raw[i] = latest;
+        }
+        return replay;
+    }
+
+    private static boolean isStill(long timeMillis) {
+        // Leaves the filter a second to settle after the start and after the pan.
+        return (timeMillis >= 1000 && timeMillis < FaceTrackFixture.MOVE_START_MILLIS)
+                || timeMillis >= FaceTrackFixture.MOVE_END_MILLIS + 1000;
+    }
+
+    private static boolean isPanning(long timeMillis) {
+        return timeMillis >= FaceTrackFixture.MOVE_START_MILLIS + SETTLE_MILLIS
+                && timeMillis < FaceTrackFixture.MOVE_END_MILLIS - 100;
+    }
+
+    /**
+     * Returns the root mean square of the change in x from one display frame to the next while
+     * the face holds still.
+     */
+    private static double jitter(long[] times, float[] x) {
+        double sum = 0;
+        int count = 0;
+        for (int i = 1; i < times.length; ++i) {
+            if (isStill(times[i - 1]) && isStill(times[i])) {
+                double delta = x[i] - x[i - 1];
+                sum += delta * delta;
+                count++;
+            }
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    /**
+     * Returns the mean time by which x trails the face while it pans at constant speed.  The
+     * face's own path is the least squares line through the detections, by frame time.
+     */
+    private static double lagMillis(long[] times, float[] x) {
+        double n = 0;
+        double st = 0;
+        double sx = 0;
+        double stt = 0;
+        double stx = 0;
+        for (float[] sample : FaceTrackFixture.SAMPLES) {
+            long t = (long) sample[FaceTrackFixture.FRAME_MILLIS];
+            if (isPanning(t)) {
+                double value = sample[FaceTrackFixture.CENTER_X];
+                n++;
+                st += t;
+                sx += value;
+                stt += (double) t * t;
+                stx += t * value;
+            }
+        }
+        double slope = (n * stx - st * sx) / (n * stt - st * st);
+        double intercept = (sx - slope * st) / n;
+
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < times.length; ++i) {
+            if (isPanning(times[i])) {
+                double face = intercept + slope * times[i];
+                sum += (face - x[i]) / slope;
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    @Test
+    public void filterSmoothsStillFaceAndKeepsUpWithPan() {
+        Replay replay = replay();
+        double rawJitter = jitter(replay.times, replay.raw);
+        double filteredJitter = jitter(replay.times, replay.filtered);
+        double rawLag = lagMillis(replay.times, replay.raw);
+        double filteredLag = lagMillis(replay.times, replay.filtered);
+        LOG.info(String.format(Locale.US, "jitter %.2f px raw, %.2f px filtered", rawJitter,
+                filteredJitter));
+        LOG.info(String.format(Locale.US, "lag %.1f ms raw, %.1f ms filtered", rawLag,
+                filteredLag));
+
+        assertTrue("Jitter " + filteredJitter, filteredJitter < MAX_JITTER_PX);
+        assertTrue("Jitter not reduced", filteredJitter < rawJitter / 2);
+        assertTrue("Lag " + filteredLag, filteredLag < MAX_LAG_MILLIS);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FacePoseFilterTest {
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void noPredictionBeforeFirstUpdate() {
+        FacePoseFilter filter = new FacePoseFilter();
+        float[] out = {1, 2, 3, 4, 5};
+
+        assertFalse(filter.predict(0, out));
+        assertEquals(1f, out[0], 0f);
+        assertFalse(filter.isExtrapolating(0));
+    }
+
+    @Test
+    public void firstUpdateIsPredictedAsIs() {
+        FacePoseFilter filter = new FacePoseFilter();
+        filter.update(100, 200, 50, 60, 10, 1000, 5000);
+        float[] out = new float[FacePoseFilter.SIZE];
+
+        assertTrue(filter.predict(5050, out));
+        assertEquals(100f, out[FacePoseFilter.CENTER_X], EPSILON);
+        assertEquals(200f, out[FacePoseFilter.CENTER_Y], EPSILON);
+        assertEquals(50f, out[FacePoseFilter.WIDTH], EPSILON);
+        assertEquals(60f, out[FacePoseFilter.HEIGHT], EPSILON);
+        assertEquals(10f, out[FacePoseFilter.EULER_Z], EPSILON);
+        // Nothing moves yet.
+        assertFalse(filter.isExtrapolating(5050));
+    }
+
+    @Test
+    public void movingFaceIsExtrapolatedFromArrivalTime() {
+        FacePoseFilter filter = new FacePoseFilter();
+        filter.update(100, 200, 50, 60, 0, 1000, 5000);
+        filter.update(110, 200, 50, 60, 0, 1033, 5040);
+        float[] atArrival = new float[FacePoseFilter.SIZE];
+        float[] later = new float[FacePoseFilter.SIZE];
+        filter.predict(5040, atArrival);
+        filter.predict(5090, later);
+
+        assertTrue(filter.isExtrapolating(5090));
+        assertTrue(later[FacePoseFilter.CENTER_X] > atArrival[FacePoseFilter.CENTER_X]);
+        assertEquals(atArrival[FacePoseFilter.CENTER_Y], later[FacePoseFilter.CENTER_Y], EPSILON);
+    }
+
+    @Test
+    public void predictionIsClampedToHorizon() {
+        FacePoseFilter filter = new FacePoseFilter();
+        filter.update(100, 200, 50, 60, 0, 1000, 5000);
+        filter.update(110, 200, 50, 60, 0, 1033, 5040);
+        float[] before = new float[FacePoseFilter.SIZE];
+        float[] atArrival = new float[FacePoseFilter.SIZE];
+        float[] atHorizon = new float[FacePoseFilter.SIZE];
+        float[] beyond = new float[FacePoseFilter.SIZE];
+        filter.predict(5000, before);
+        filter.predict(5040, atArrival);
+        filter.predict(5040 + FacePoseFilter.MAX_PREDICTION_MILLIS, atHorizon);
+        filter.predict(5040 + 10 * FacePoseFilter.MAX_PREDICTION_MILLIS, beyond);
+
+        assertEquals(atArrival[FacePoseFilter.CENTER_X], before[FacePoseFilter.CENTER_X], EPSILON);
+        assertEquals(atHorizon[FacePoseFilter.CENTER_X], beyond[FacePoseFilter.CENTER_X], EPSILON);
+        assertFalse(filter.isExtrapolating(5040 + FacePoseFilter.MAX_PREDICTION_MILLIS));
+    }
+
+    @Test
+    public void samplesAreSpacedByFrameTime() {
+        // The same two detections, delivered at different times, filter the same way.
+        FacePoseFilter prompt = new FacePoseFilter();
+        prompt.update(100, 0, 0, 0, 0, 1000, 5000);
+        prompt.update(110, 0, 0, 0, 0, 1033, 5033);
+        FacePoseFilter late = new FacePoseFilter();
+        late.update(100, 0, 0, 0, 0, 1000, 5000);
+        late.update(110, 0, 0, 0, 0, 1033, 5200);
+        float[] promptOut = new float[FacePoseFilter.SIZE];
+        float[] lateOut = new float[FacePoseFilter.SIZE];
+        prompt.predict(5033, promptOut);
+        late.predict(5200, lateOut);
+
+        assertEquals(promptOut[FacePoseFilter.CENTER_X], lateOut[FacePoseFilter.CENTER_X], EPSILON);
+    }
+
+    @Test
+    public void resetForgetsPose() {
+        FacePoseFilter filter = new FacePoseFilter();
+        filter.update(100, 200, 50, 60, 0, 1000, 5000);
+        filter.reset();
+
+        assertFalse(filter.predict(5000, new float[FacePoseFilter.SIZE]));
+        filter.update(300, 400, 50, 60, 0, 900, 6000);
+        float[] out = new float[FacePoseFilter.SIZE];
+        filter.predict(6000, out);
+        assertEquals(300f, out[FacePoseFilter.CENTER_X], EPSILON);
+    }
+}
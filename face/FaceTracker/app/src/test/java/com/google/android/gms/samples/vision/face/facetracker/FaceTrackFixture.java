@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+/**
+ * Five seconds of one face track at about 30 frames per second, in preview coordinates, laid out
+ * the way {@link FaceGraphic#updateFace} hands detections to {@link FacePoseFilter}.  The face
+ * holds still at x = 240 until {@link #MOVE_START_MILLIS}, pans right at
+ * {@link #MOVE_SPEED_PX_PER_SECOND} with a 100 ms ease at either end, and holds still at x = 600
+ * from {@link #MOVE_END_MILLIS} on.<p>
+ *
+ * The samples were generated once from a fixed seed rather than captured on a device, with the
+ * artifacts seen in real tracks: detector noise of about 1.5 pixels on the position, frame spacing
+ * that wanders by a few milliseconds, a detector latency of 40 to 75 milliseconds, a frame that was
+ * delivered twice (at 1500 ms) and a face that was lost for four frames (from 4000 ms).  Both
+ * timestamps count from the first frame.
+ */
+final class FaceTrackFixture {
+    static final int FRAME_MILLIS = 0;
+    static final int ARRIVAL_MILLIS = 1;
+    static final int CENTER_X = 2;
+    static final int CENTER_Y = 3;
+    static final int WIDTH = 4;
+    static final int HEIGHT = 5;
+    static final int EULER_Z = 6;
+
+    static final long MOVE_START_MILLIS = 2000;
+    static final long MOVE_END_MILLIS = 3300;
+    static final float MOVE_SPEED_PX_PER_SECOND = 300;
+
+    /**
+     * One row per detection: frame time, arrival time, center x and y, width, height and Euler z
+     * angle, indexed by the constants above.
+     */
+    static final float[][] SAMPLES = {
+            {0, 62, 239.9f, 319.8f, 181.0f, 220.3f, -0.5f},
+            {32, 72, 238.5f, 319.3f, 180.1f, 221.8f, 1.6f},
+            {66, 138, 241.3f, 320.0f, 179.3f, 219.2f, -0.6f},
+            {100, 172, 240.9f, 320.6f, 178.0f, 217.2f, 1.2f},
+            {131, 173, 241.4f, 320.5f, 180.4f, 221.3f, -0.7f},
+            {166, 239, 243.1f, 320.1f, 180.4f, 221.4f, 0.0f},
+            {201, 260, 241.9f, 321.3f, 177.7f, 219.3f, -0.4f},
+            {232, 302, 240.0f, 322.4f, 180.8f, 219.0f, 0.3f},
+            {264, 308, 239.2f, 319.7f, 180.1f, 219.8f, -0.8f},
+            {300, 344, 239.5f, 322.0f, 180.7f, 219.9f, 0.2f},
+            {335, 386, 239.0f, 320.1f, 180.3f, 219.6f, -0.7f},
+            {367, 405, 239.5f, 318.3f, 182.2f, 221.0f, 0.1f},
+            {401, 454, 245.0f, 317.9f, 179.6f, 220.4f, 1.2f},
+            {435, 493, 239.7f, 321.7f, 179.7f, 220.4f, -0.2f},
+            {466, 529, 239.8f, 316.4f, 179.9f, 218.8f, 0.2f},
+            {501, 560, 238.5f, 321.9f, 180.3f, 218.7f, 1.9f},
+            {532, 604, 239.0f, 317.9f, 180.5f, 218.2f, -0.8f},
+            {565, 603, 240.0f, 319.1f, 181.0f, 219.9f, 0.1f},
+            {598, 637, 242.2f, 318.9f, 181.5f, 219.9f, 0.3f},
+            {633, 678, 241.7f, 317.8f, 179.2f, 220.7f, -0.7f},
+            {666, 714, 239.5f, 318.6f, 181.0f, 219.3f, 0.1f},
+            {700, 750, 237.4f, 320.7f, 180.0f, 220.8f, -0.6f},
+            {736, 785, 241.5f, 318.4f, 180.4f, 218.9f, -0.9f},
+            {771, 822, 241.5f, 318.6f, 181.3f, 222.3f, 1.2f},
+            {803, 853, 240.5f, 322.3f, 179.9f, 219.1f, -0.6f},
+            {836, 887, 241.3f, 323.4f, 179.4f, 218.0f, -0.0f},
+            {871, 926, 239.7f, 320.8f, 178.2f, 218.3f, -0.4f},
+            {904, 950, 238.6f, 321.4f, 180.5f, 221.7f, -0.8f},
+            {935, 1009, 242.0f, 321.7f, 179.7f, 217.5f, 2.0f},
+            {967, 1007, 238.4f, 320.8f, 181.1f, 220.1f, -1.5f},
+            {999, 1041, 241.7f, 320.0f, 179.8f, 219.0f, 0.1f},
+            {1030, 1085, 241.4f, 321.0f, 179.4f, 221.1f, 0.0f},
+            {1063, 1122, 241.0f, 320.2f, 180.7f, 219.8f, -0.1f},
+            {1096, 1159, 240.4f, 318.8f, 180.9f, 221.8f, -1.3f},
+            {1129, 1186, 238.3f, 319.1f, 181.1f, 219.4f, 0.3f},
+            {1164, 1210, 237.4f, 320.7f, 179.6f, 221.0f, 0.1f},
+            {1200, 1265, 243.3f, 319.4f, 178.4f, 218.7f, 0.3f},
+            {1235, 1280, 239.5f, 320.0f, 180.0f, 221.1f, -0.3f},
+            {1267, 1308, 243.7f, 318.5f, 178.9f, 220.4f, -0.7f},
+            {1302, 1352, 242.0f, 320.8f, 179.4f, 217.8f, -0.8f},
+            {1334, 1386, 239.4f, 318.3f, 180.1f, 219.8f, 0.4f},
+            {1366, 1418, 236.0f, 320.8f, 180.5f, 219.4f, -0.7f},
+            {1397, 1442, 240.5f, 319.7f, 181.8f, 218.4f, 0.6f},
+            {1432, 1504, 240.4f, 319.8f, 180.8f, 221.1f, 0.6f},
+            {1465, 1522, 238.7f, 316.8f, 180.0f, 219.1f, 0.3f},
+            {1500, 1561, 241.0f, 319.4f, 181.2f, 220.1f, -0.9f},
+            {1500, 1570, 241.7f, 319.0f, 181.2f, 220.1f, -0.9f},
+            {1533, 1575, 243.7f, 322.1f, 179.1f, 217.1f, -1.7f},
+            {1564, 1602, 240.9f, 318.5f, 179.4f, 218.6f, -1.1f},
+            {1598, 1659, 243.1f, 318.4f, 181.2f, 220.0f, -0.4f},
+            {1631, 1695, 239.0f, 316.5f, 180.9f, 221.3f, -0.6f},
+            {1665, 1726, 238.6f, 322.9f, 179.7f, 218.8f, -0.6f},
+            {1699, 1756, 240.5f, 318.0f, 179.9f, 220.7f, 0.7f},
+            {1732, 1802, 242.0f, 319.6f, 177.8f, 219.1f, 0.1f},
+            {1764, 1813, 239.1f, 321.3f, 179.5f, 220.0f, 0.4f},
+            {1798, 1853, 240.9f, 320.1f, 180.1f, 216.6f, 1.4f},
+            {1832, 1896, 237.4f, 320.6f, 181.5f, 219.4f, 0.8f},
+            {1863, 1911, 240.1f, 319.4f, 179.1f, 218.9f, -0.4f},
+            {1897, 1951, 243.1f, 319.8f, 181.1f, 218.1f, -1.8f},
+            {1929, 1994, 238.3f, 322.7f, 182.2f, 220.2f, 0.9f},
+            {1960, 2021, 238.9f, 321.6f, 182.6f, 220.9f, -0.8f},
+            {1993, 2034, 237.3f, 320.7f, 180.8f, 219.6f, -0.9f},
+            {2026, 2069, 240.1f, 322.4f, 179.1f, 219.0f, 0.2f},
+            {2060, 2119, 246.7f, 321.9f, 181.7f, 220.1f, 0.1f},
+            {2093, 2131, 252.4f, 321.1f, 179.0f, 220.6f, -0.8f},
+            {2124, 2197, 261.0f, 320.4f, 182.0f, 221.0f, 0.2f},
+            {2156, 2209, 272.5f, 319.6f, 179.8f, 218.0f, -0.1f},
+            {2190, 2236, 281.4f, 319.1f, 179.1f, 221.5f, 1.9f},
+            {2225, 2271, 290.4f, 322.6f, 179.7f, 219.0f, -0.2f},
+            {2259, 2316, 304.4f, 320.2f, 178.1f, 218.8f, 0.4f},
+            {2293, 2355, 313.9f, 319.2f, 180.5f, 221.6f, 0.2f},
+            {2324, 2379, 322.6f, 320.9f, 180.3f, 218.4f, 1.1f},
+            {2356, 2402, 333.8f, 321.4f, 178.3f, 220.7f, -0.8f},
+            {2392, 2447, 344.0f, 317.5f, 180.0f, 221.7f, -0.6f},
+            {2423, 2488, 354.1f, 318.8f, 178.4f, 219.9f, 1.1f},
+            {2457, 2504, 359.0f, 320.6f, 181.2f, 218.4f, 0.4f},
+            {2489, 2527, 372.6f, 320.3f, 181.2f, 221.5f, -0.7f},
+            {2520, 2592, 381.7f, 318.1f, 180.3f, 220.1f, 1.0f},
+            {2552, 2598, 392.1f, 320.0f, 179.7f, 221.6f, -0.6f},
+            {2585, 2658, 401.0f, 320.5f, 178.5f, 218.0f, 1.5f},
+            {2616, 2669, 411.6f, 321.6f, 178.2f, 218.2f, 0.4f},
+            {2651, 2724, 420.4f, 316.3f, 179.4f, 219.9f, 0.3f},
+            {2685, 2740, 431.3f, 318.7f, 181.0f, 220.6f, -1.5f},
+            {2719, 2791, 441.4f, 321.8f, 180.1f, 220.5f, -0.5f},
+            {2752, 2804, 448.9f, 320.8f, 180.5f, 220.8f, -0.1f},
+            {2786, 2835, 460.2f, 318.3f, 179.9f, 219.3f, -0.3f},
+            {2819, 2863, 469.8f, 319.3f, 178.8f, 218.0f, -0.5f},
+            {2850, 2907, 479.8f, 318.6f, 180.8f, 222.2f, 0.6f},
+            {2883, 2923, 490.9f, 321.6f, 180.5f, 219.7f, 0.6f},
+            {2915, 2957, 499.8f, 321.1f, 178.8f, 219.1f, 1.3f},
+            {2948, 2989, 506.8f, 319.0f, 178.7f, 219.9f, 0.9f},
+            {2980, 3053, 518.6f, 317.2f, 180.6f, 218.5f, 0.0f},
+            {3011, 3075, 529.7f, 319.9f, 179.9f, 219.9f, -1.1f},
+            {3043, 3098, 538.4f, 323.3f, 179.7f, 219.0f, 1.7f},
+            {3077, 3129, 548.7f, 319.6f, 181.4f, 221.3f, -1.2f},
+            {3110, 3155, 554.0f, 319.1f, 178.0f, 219.2f, 0.3f},
+            {3142, 3191, 565.4f, 317.9f, 181.4f, 219.3f, -0.5f},
+            {3175, 3226, 575.3f, 317.2f, 177.7f, 220.7f, 1.1f},
+            {3206, 3245, 586.8f, 320.3f, 178.9f, 219.4f, -1.3f},
+            {3238, 3287, 593.5f, 319.4f, 179.2f, 217.3f, -0.1f},
+            {3273, 3321, 599.1f, 321.2f, 179.0f, 221.2f, 0.0f},
+            {3304, 3353, 601.3f, 317.9f, 179.7f, 218.8f, -0.7f},
+            {3337, 3386, 603.3f, 319.2f, 179.8f, 218.0f, -0.5f},
+            {3370, 3415, 599.5f, 319.2f, 178.5f, 218.4f, 0.3f},
+            {3405, 3450, 599.5f, 319.4f, 182.6f, 220.1f, -2.0f},
+            {3436, 3490, 599.7f, 321.8f, 180.4f, 221.3f, -0.6f},
+            {3469, 3524, 598.8f, 320.3f, 180.8f, 218.0f, 0.3f},
+            {3504, 3567, 601.7f, 320.1f, 178.5f, 221.2f, -0.1f},
+            {3538, 3586, 601.4f, 318.5f, 179.3f, 221.1f, -0.5f},
+            {3571, 3613, 599.6f, 320.9f, 180.3f, 221.5f, -0.8f},
+            {3604, 3678, 599.5f, 322.4f, 180.0f, 221.2f, 0.6f},
+            {3638, 3680, 599.5f, 318.9f, 180.5f, 219.6f, 0.1f},
+            {3670, 3719, 598.6f, 317.1f, 181.6f, 218.2f, 1.2f},
+            {3702, 3743, 599.2f, 317.2f, 180.3f, 224.2f, 0.6f},
+            {3736, 3810, 599.0f, 318.9f, 180.7f, 216.8f, -0.9f},
+            {3771, 3842, 601.9f, 322.1f, 180.7f, 220.9f, 1.6f},
+            {3803, 3849, 601.9f, 320.6f, 180.1f, 219.8f, 0.6f},
+            {3837, 3880, 600.4f, 319.6f, 180.1f, 218.1f, -0.2f},
+            {3872, 3946, 601.3f, 320.6f, 180.5f, 221.3f, -0.1f},
+            {3907, 3948, 598.7f, 318.8f, 180.9f, 219.0f, -1.0f},
+            {3939, 4013, 596.8f, 321.2f, 180.0f, 218.0f, -1.8f},
+            {3974, 4025, 598.1f, 320.7f, 180.4f, 217.4f, 0.2f},
+            {4144, 4188, 599.9f, 318.9f, 179.3f, 219.2f, 0.2f},
+            {4178, 4237, 599.9f, 317.6f, 178.3f, 221.2f, 0.1f},
+            {4211, 4282, 599.7f, 320.6f, 178.0f, 221.2f, 0.0f},
+            {4243, 4288, 599.0f, 320.7f, 178.9f, 219.1f, -1.0f},
+            {4277, 4319, 601.5f, 318.5f, 180.4f, 222.1f, -0.9f},
+            {4309, 4356, 598.0f, 320.7f, 179.3f, 220.9f, -0.0f},
+            {4342, 4414, 601.4f, 318.8f, 178.9f, 219.5f, 0.9f},
+            {4375, 4432, 601.1f, 322.1f, 179.3f, 222.3f, -1.3f},
+            {4409, 4459, 598.2f, 319.6f, 180.9f, 220.8f, -0.1f},
+            {4444, 4518, 599.9f, 318.6f, 179.8f, 218.9f, 1.6f},
+            {4475, 4546, 598.8f, 321.5f, 179.8f, 221.2f, -0.1f},
+            {4506, 4567, 598.7f, 319.2f, 182.6f, 222.5f, -0.1f},
+            {4539, 4585, 597.9f, 317.9f, 180.7f, 219.6f, 0.5f},
+            {4572, 4614, 600.5f, 317.4f, 179.9f, 219.3f, 0.7f},
+            {4603, 4645, 599.3f, 320.7f, 179.6f, 218.6f, 0.0f},
+            {4638, 4696, 598.8f, 319.9f, 179.2f, 218.0f, 0.3f},
+            {4673, 4745, 601.1f, 317.7f, 179.6f, 220.2f, 0.5f},
+            {4708, 4753, 598.1f, 318.8f, 178.5f, 219.1f, -0.4f},
+            {4739, 4813, 600.1f, 319.3f, 181.6f, 219.4f, -0.5f},
+            {4772, 4819, 599.1f, 320.8f, 181.3f, 219.7f, 0.2f},
+            {4808, 4854, 599.7f, 321.4f, 183.0f, 219.4f, -0.4f},
+            {4844, 4918, 600.9f, 321.6f, 180.1f, 218.1f, -1.6f},
+            {4878, 4925, 599.9f, 321.8f, 181.5f, 220.4f, 0.3f},
+            {4912, 4958, 601.3f, 317.6f, 180.6f, 220.6f, -0.2f},
+            {4943, 4985, 599.1f, 317.9f, 179.5f, 221.3f, 0.7f},
+            {4977, 5025, 601.8f, 319.7f, 181.6f, 222.3f, -0.0f}
+    };
+
+    private FaceTrackFixture() {
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OneEuroFilterTest {
+    private static final float EPSILON = 1e-4f;
+
+    @Test
+    public void firstSampleIsPassedThrough() {
+        OneEuroFilter filter = new OneEuroFilter(1.0f, 0.007f, 1.0f);
+
+        assertEquals(42f, filter.filter(42f, 1000), EPSILON);
+        assertEquals(0f, filter.getDerivative(), EPSILON);
+    }
+
+    @Test
+    public void constantSignalStaysPut() {
+        OneEuroFilter filter = new OneEuroFilter(1.0f, 0.007f, 1.0f);
+        for (int i = 0; i < 30; ++i) {
+            assertEquals(10f, filter.filter(10f, i * 33), EPSILON);
+        }
+        assertEquals(0f, filter.getDerivative(), EPSILON);
+    }
+
+    @Test
+    public void stepIsSmoothed() {
+        OneEuroFilter filter = new OneEuroFilter(1.0f, 0.0f, 1.0f);
+        filter.filter(0f, 0);
+        float value = filter.filter(100f, 33);
+
+        // With beta 0 the cutoff stays at 1 Hz: alpha = 1 / (1 + tau / dt).
+        float tau = 1f / (2 * (float) Math.PI);
+        float alpha = 1f / (1f + tau / 0.033f);
+        assertEquals(100f * alpha, value, EPSILON);
+        assertTrue(filter.getDerivative() > 0);
+    }
+
+    @Test
+    public void fastSignalIsFollowedMoreClosely() {
+        OneEuroFilter steady = new OneEuroFilter(1.0f, 0.0f, 1.0f);
+        OneEuroFilter adaptive = new OneEuroFilter(1.0f, 0.1f, 1.0f);
+        float steadyValue = 0;
+        float adaptiveValue = 0;
+        for (int i = 0; i < 10; ++i) {
+            steadyValue = steady.filter(i * 50f, i * 33);
+            adaptiveValue = adaptive.filter(i * 50f, i * 33);
+        }
+        assertTrue(adaptiveValue > steadyValue);
+        assertTrue(adaptiveValue < 9 * 50f);
+    }
+
+    @Test
+    public void staleSampleHoldsPreviousOutput() {
+        OneEuroFilter filter = new OneEuroFilter(1.0f, 0.007f, 1.0f);
+        filter.filter(0f, 0);
+        float value = filter.filter(10f, 33);
+        float derivative = filter.getDerivative();
+
+        assertEquals(value, filter.filter(500f, 33), EPSILON);
+        assertEquals(value, filter.filter(500f, 20), EPSILON);
+        assertEquals(derivative, filter.getDerivative(), EPSILON);
+    }
+
+    @Test
+    public void resetStartsOver() {
+        OneEuroFilter filter = new OneEuroFilter(1.0f, 0.007f, 1.0f);
+        filter.filter(0f, 0);
+        filter.filter(10f, 33);
+        filter.reset();
+
+        assertEquals(77f, filter.filter(77f, 10), EPSILON);
+        assertEquals(0f, filter.getDerivative(), EPSILON);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RoiPlannerTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static List<float[]> boxes(float[]... boxes) {
+        return Arrays.asList(boxes);
+    }
+
+    @Test
+    public void padGrowsBoxToEvenEdges() {
+        RoiPlanner planner = new RoiPlanner(0.25f, 10, 0.5f);
+
+        assertArrayEquals(new int[] {74, 74, 226, 226},
+                planner.pad(new float[] {100, 100, 200, 200}, WIDTH, HEIGHT));
+        // Fractional edges are rounded outwards, then to even.
+        assertArrayEquals(new int[] {98, 50, 112, 62},
+                new RoiPlanner(0, 10, 0.5f).pad(new float[] {99.5f, 51, 110.5f, 61}, WIDTH,
+                        HEIGHT));
+    }
+
+    @Test
+    public void padClampsToFrame() {
+        RoiPlanner planner = new RoiPlanner(0, 10, 0.5f);
+
+        assertArrayEquals(new int[] {0, 0, 20, 20},
+                planner.pad(new float[] {-10, -10, 20, 20}, WIDTH, HEIGHT));
+        // An odd frame size is cut back to the last even edge.
+        assertArrayEquals(new int[] {600, 400, 640, 480},
+                planner.pad(new float[] {600, 400, 700, 500}, 641, 481));
+        assertNull(planner.pad(new float[] {700, 10, 800, 50}, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void mergeJoinsOverlappingRegions() {
+        List<int[]> regions = new ArrayList<>(Arrays.asList(
+                new int[] {0, 0, 10, 10}, new int[] {5, 5, 20, 20}, new int[] {30, 30, 40, 40}));
+        RoiPlanner.merge(regions);
+
+        assertEquals(2, regions.size());
+        assertArrayEquals(new int[] {0, 0, 20, 20}, regions.get(0));
+        assertArrayEquals(new int[] {30, 30, 40, 40}, regions.get(1));
+    }
+
+    @Test
+    public void mergeFollowsChains() {
+        // The first two only overlap through the third.
+        List<int[]> regions = new ArrayList<>(Arrays.asList(
+                new int[] {0, 0, 10, 10}, new int[] {20, 0, 30, 10}, new int[] {8, 0, 22, 10}));
+        RoiPlanner.merge(regions);
+
+        assertEquals(1, regions.size());
+        assertArrayEquals(new int[] {0, 0, 30, 10}, regions.get(0));
+    }
+
+    @Test
+    public void mergeKeepsTouchingRegionsApart() {
+        List<int[]> regions = new ArrayList<>(Arrays.asList(
+                new int[] {0, 0, 10, 10}, new int[] {10, 0, 20, 10}));
+        RoiPlanner.merge(regions);
+
+        assertEquals(2, regions.size());
+    }
+
+    @Test
+    public void planScansFullFramePeriodically() {
+        RoiPlanner planner = new RoiPlanner(0.25f, 3, 0.5f);
+        List<float[]> tracks = boxes(new float[] {100, 100, 200, 200});
+
+        assertNull(planner.plan(tracks, WIDTH, HEIGHT));
+        for (int i = 0; i < 3; ++i) {
+            List<int[]> regions = planner.plan(tracks, WIDTH, HEIGHT);
+            assertNotNull(regions);
+            assertEquals(1, regions.size());
+            assertArrayEquals(new int[] {74, 74, 226, 226}, regions.get(0));
+        }
+        assertNull(planner.plan(tracks, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void planScansFullFrameWithoutTracks() {
+        RoiPlanner planner = new RoiPlanner(0.25f, 3, 0.5f);
+        planner.plan(boxes(new float[] {100, 100, 200, 200}), WIDTH, HEIGHT);
+
+        assertNull(planner.plan(Collections.<float[]>emptyList(), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void planScansFullFrameWhenRegionsCoverMostOfIt() {
+        RoiPlanner planner = new RoiPlanner(0.25f, 3, 0.5f);
+        planner.plan(boxes(new float[] {0, 0, 10, 10}), WIDTH, HEIGHT);
+
+        assertNull(planner.plan(boxes(new float[] {100, 50, 500, 400}), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void toRawRectUndoesEachRotation() {
+        int[] upright = {0, 0, 100, 50};
+
+        assertArrayEquals(new int[] {0, 0, 100, 50},
+                RoiPlanner.toRawRect(upright, 0, WIDTH, HEIGHT));
+        assertArrayEquals(new int[] {0, 380, 50, 480},
+                RoiPlanner.toRawRect(upright, 1, WIDTH, HEIGHT));
+        assertArrayEquals(new int[] {540, 430, 640, 480},
+                RoiPlanner.toRawRect(upright, 2, WIDTH, HEIGHT));
+        assertArrayEquals(new int[] {590, 0, 640, 100},
+                RoiPlanner.toRawRect(upright, 3, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void iouOfBoxes() {
+        float[] box = {0, 0, 10, 10};
+
+        assertEquals(1f, RoiPlanner.iou(box, box), 1e-6f);
+        assertEquals(1f / 3, RoiPlanner.iou(box, new float[] {5, 0, 15, 10}), 1e-6f);
+        assertEquals(0f, RoiPlanner.iou(box, new float[] {10, 0, 20, 10}), 0f);
+    }
+
+    @Test
+    public void associateMatchesGreedilyByOverlap() {
+        List<float[]> tracks = boxes(new float[] {0, 0, 10, 10}, new float[] {100, 0, 110, 10});
+        List<float[]> detections = boxes(new float[] {101, 0, 111, 10},
+                new float[] {1, 0, 11, 10}, new float[] {2, 0, 12, 10},
+                new float[] {300, 300, 310, 310});
+
+        assertArrayEquals(new int[] {1, 0, -1, -1},
+                RoiPlanner.associate(detections, tracks, 0.3f));
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the keys and byte accounting of {@link StickerCache.Store}, with fake images that only
+ * have a size.
+ */
+public class StickerCacheTest {
+    private static final String ASSET = "shoulder.png";
+
+    /**
+     * Stands in for a bitmap: four bytes per pixel.
+     */
+    private static final class Image {
+        final int width;
+        final int height;
+
+        Image(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static class FakeStore extends StickerCache.Store<Image> {
+        final AtomicInteger mScales = new AtomicInteger();
+
+        FakeStore(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        protected Image decode(String assetName) {
+            return ASSET.equals(assetName) ? new Image(100, 200) : null;
+        }
+
+        @Override
+        protected Image scale(Image original, int height) {
+            mScales.incrementAndGet();
+            return new Image(original.width * height / original.height, height);
+        }
+
+        @Override
+        protected int getHeight(Image value) {
+            return value.height;
+        }
+
+        @Override
+        protected int sizeOf(Image value) {
+            return value.width * value.height * 4;
+        }
+    }
+
+    @Test
+    public void keyCombinesAssetAndHeight() {
+        assertEquals("shoulder.png#0", StickerCache.Store.key(ASSET, StickerCache.Store.ORIGINAL));
+        assertEquals("shoulder.png#120", StickerCache.Store.key(ASSET, 120));
+    }
+
+    @Test
+    public void originalIsDecodedOnceAndCounted() {
+        FakeStore store = new FakeStore(1024 * 1024);
+        Image first = store.get(ASSET, StickerCache.Store.ORIGINAL);
+        Image second = store.get(ASSET, StickerCache.Store.ORIGINAL);
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1, store.decodeCount());
+        assertEquals(1, store.hitCount());
+        assertEquals(100 * 200 * 4, store.size());
+    }
+
+    @Test
+    public void variantIsScaledFromOriginalAndAddsItsBytes() {
+        FakeStore store = new FakeStore(1024 * 1024);
+        Image variant = store.get(ASSET, 100);
+
+        assertEquals(50, variant.width);
+        assertEquals(100, variant.height);
+        assertEquals(1, store.decodeCount());
+        assertEquals(100 * 200 * 4 + 50 * 100 * 4, store.size());
+
+        assertSame(variant, store.get(ASSET, 100));
+        assertEquals(1, store.mScales.get());
+    }
+
+    @Test
+    public void variantAtOriginalHeightIsNotStoredTwice() {
+        FakeStore store = new FakeStore(1024 * 1024);
+        Image original = store.get(ASSET, StickerCache.Store.ORIGINAL);
+
+        assertSame(original, store.get(ASSET, 200));
+        assertEquals(0, store.mScales.get());
+        assertEquals(100 * 200 * 4, store.size());
+    }
+
+    @Test
+    public void failedDecodeIsNotCached() {
+        FakeStore store = new FakeStore(1024 * 1024);
+
+        assertNull(store.get("missing.png", StickerCache.Store.ORIGINAL));
+        assertNull(store.get("missing.png", 50));
+        assertEquals(0, store.size());
+        assertEquals(0, store.mScales.get());
+    }
+
+    @Test
+    public void sizeStaysWithinMaxBytes() {
+        // Room for the original and one small variant.
+        int maxBytes = 100 * 200 * 4 + 25 * 50 * 4;
+        FakeStore store = new FakeStore(maxBytes);
+        store.get(ASSET, 50);
+        store.get(ASSET, 40);
+
+        assertEquals(100 * 200 * 4 + 20 * 40 * 4, store.size());
+    }
+
+    @Test
+    public void captureVariantIsKeptOutsideTheLru() {
+        // Room for the original only.
+        FakeStore store = new FakeStore(100 * 200 * 4);
+        Image variant = store.getCaptureVariant(ASSET, 400);
+
+        assertEquals(200, variant.width);
+        assertEquals(400, variant.height);
+        assertEquals(100 * 200 * 4, store.size());
+        assertSame(variant, store.getCaptureVariant(ASSET, 400));
+        assertEquals(1, store.captureScaleCount());
+        assertEquals(1, store.decodeCount());
+    }
+
+    @Test
+    public void captureVariantIsReplacedWhenHeightChanges() {
+        FakeStore store = new FakeStore(1024 * 1024);
+        Image first = store.getCaptureVariant(ASSET, 400);
+        Image second = store.getCaptureVariant(ASSET, 300);
+
+        assertNotSame(first, second);
+        assertEquals(300, second.height);
+        assertSame(second, store.getCaptureVariant(ASSET, 300));
+        assertEquals(2, store.captureScaleCount());
+    }
+
+    @Test
+    public void captureVariantAtOriginalHeightIsTheOriginal() {
+        FakeStore store = new FakeStore(1024 * 1024);
+
+        assertSame(store.get(ASSET, StickerCache.Store.ORIGINAL),
+                store.getCaptureVariant(ASSET, 200));
+        assertEquals(0, store.captureScaleCount());
+        assertNull(store.getCaptureVariant("missing.png", 200));
+    }
+
+    @Test
+    public void concurrentMissesDecodeOnce() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final FakeStore store = new FakeStore(1024 * 1024) {
+            @Override
+            protected Image decode(String assetName) {
+                try {
+                    // Keeps the first decoder busy while the others miss.
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.decode(assetName);
+            }
+        };
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    store.get(ASSET, StickerCache.Store.ORIGINAL);
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, store.decodeCount());
+    }
+}
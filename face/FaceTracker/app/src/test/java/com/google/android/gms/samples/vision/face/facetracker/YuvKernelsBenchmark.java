@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Measures the throughput of every {@link YuvKernels} kernel in megapixels per second on a
+ * 1280x960 frame, the largest preview size the app asks for, and logs it.  Runs on the JVM, so the
+ * figures are for comparing changes to the kernels rather than for predicting the time on a
+ * device.  A few untimed rounds come first so that the JIT has compiled the kernels.<p>
+ *
+ * Skipped by the normal unit test run; run it with {@code ./gradlew testDebugUnitTest -Pbenchmark}
+ * or, from the IDE, with the VM option {@code -Dbenchmark=true}.
+ */
+public class YuvKernelsBenchmark {
+    private static final Logger LOG = Logger.getLogger("YuvKernelsBenchmark");
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 960;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 30;
+
+    private byte[] mFrame;
+    private byte[] mOut;
+    private int[] mArgb;
+
+    /**
+     * One kernel call on the frame.
+     */
+    private interface Kernel {
+        void run();
+    }
+
+    @BeforeClass
+    public static void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Before
+    public void setUp() {
+        mFrame = new byte[YuvKernels.nv21Size(WIDTH, HEIGHT)];
+        new Random(42).nextBytes(mFrame);
+        mOut = new byte[mFrame.length];
+        mArgb = new int[WIDTH * HEIGHT];
+    }
+
+    /**
+     * Runs the kernel and logs its throughput, counted in pixels of the source frame.
+     */
+    private static void measure(String name, int pixels, Kernel kernel) {
+        for (int i = 0; i < WARMUP_ROUNDS; ++i) {
+            kernel.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            kernel.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        double millis = elapsed / 1e6 / ROUNDS;
+        double megapixelsPerSecond = (double) pixels * ROUNDS / (elapsed / 1e3);
+        LOG.info(String.format(Locale.US, "%-16s %8.2f ms  %8.1f MP/s", name, millis,
+                megapixelsPerSecond));
+    }
+
+    @Test
+    public void toArgb() {
+        measure("toArgb", WIDTH * HEIGHT, new Kernel() {
+            @Override
+            public void run() {
+                YuvKernels.toArgb(mFrame, WIDTH, HEIGHT, mArgb);
+            }
+        });
+    }
+
+    @Test
+    public void crop() {
+        final int[] rect = {WIDTH / 4, HEIGHT / 4, WIDTH * 3 / 4, HEIGHT * 3 / 4};
+        measure("crop (half)", WIDTH * HEIGHT / 4, new Kernel() {
+            @Override
+            public void run() {
+                YuvKernels.crop(mFrame, 0, WIDTH, HEIGHT, rect, mOut);
+            }
+        });
+    }
+
+    @Test
+    public void downscaleByTwo() {
+        measure("downscale x2", WIDTH * HEIGHT, new Kernel() {
+            @Override
+            public void run() {
+                YuvKernels.downscale(mFrame, WIDTH, HEIGHT, 2, mOut);
+            }
+        });
+    }
+
+    @Test
+    public void downscaleByFour() {
+        measure("downscale x4", WIDTH * HEIGHT, new Kernel() {
+            @Override
+            public void run() {
+                YuvKernels.downscale(mFrame, WIDTH, HEIGHT, 4, mOut);
+            }
+        });
+    }
+
+    @Test
+    public void rotate90() {
+        measure("rotate 90", WIDTH * HEIGHT, new Kernel() {
+            @Override
+            public void run() {
+                YuvKernels.rotate(mFrame, WIDTH, HEIGHT, 90, false, mOut);
+            }
+        });
+    }
+
+    @Test
+    public void rotate270Mirrored() {
+        measure("rotate 270 m", WIDTH * HEIGHT, new Kernel() {
+            @Override
+            public void run() {
+                YuvKernels.rotate(mFrame, WIDTH, HEIGHT, 270, true, mOut);
+            }
+        });
+    }
+}
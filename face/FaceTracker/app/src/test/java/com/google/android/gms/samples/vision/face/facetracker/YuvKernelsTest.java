@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the NV21 kernels on frames small enough to work out by hand.
+ */
+public class YuvKernelsTest {
+
+    /**
+     * Returns a {@code width} x {@code height} NV21 frame whose bytes count up from zero, so that
+     * every output byte shows where it came from.
+     */
+    private static byte[] counting(int width, int height) {
+        byte[] nv21 = new byte[YuvKernels.nv21Size(width, height)];
+        for (int i = 0; i < nv21.length; ++i) {
+            nv21[i] = (byte) i;
+        }
+        return nv21;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    @Test
+    public void nv21SizeAddsHalfForChroma() {
+        assertEquals(12, YuvKernels.nv21Size(4, 2));
+        assertEquals(1280 * 960 * 3 / 2, YuvKernels.nv21Size(1280, 960));
+    }
+
+    @Test
+    public void toArgbConvertsBt601VideoRange() {
+        // Left 2x2 block: video range white.  Middle block: red, whose red channel is 254.4 in
+        // exact arithmetic.  Right block: video range black.
+        byte[] nv21 = bytes(
+                235, 235, 81, 81, 16, 16,
+                235, 235, 81, 81, 16, 16,
+                128, 128, 240, 90, 128, 128);
+        int[] argb = new int[12];
+        YuvKernels.toArgb(nv21, 6, 2, argb);
+
+        assertArrayEquals(new int[] {
+                0xffffffff, 0xffffffff, 0xfffe0000, 0xfffe0000, 0xff000000, 0xff000000,
+                0xffffffff, 0xffffffff, 0xfffe0000, 0xfffe0000, 0xff000000, 0xff000000
+        }, argb);
+    }
+
+    @Test
+    public void toArgbClampsOutOfRangeValues() {
+        // Black luma with extreme chroma pushes red below zero and blue past full scale.
+        byte[] nv21 = bytes(16, 16, 16, 16, 0, 255);
+        int[] argb = new int[4];
+        YuvKernels.toArgb(nv21, 2, 2, argb);
+
+        assertArrayEquals(new int[] {0xff0037ff, 0xff0037ff, 0xff0037ff, 0xff0037ff}, argb);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toArgbRejectsShortBuffers() {
+        YuvKernels.toArgb(new byte[11], 4, 2, new int[8]);
+    }
+
+    @Test
+    public void cropCopiesLumaAndChromaRows() {
+        // 8x4: luma 0..31, chroma rows 32..39 and 40..47.
+        byte[] dst = new byte[YuvKernels.nv21Size(4, 2)];
+        YuvKernels.crop(counting(8, 4), 0, 8, 4, new int[] {2, 2, 6, 4}, dst);
+
+        assertArrayEquals(bytes(18, 19, 20, 21, 26, 27, 28, 29, 42, 43, 44, 45), dst);
+    }
+
+    @Test
+    public void cropHonoursOffset() {
+        byte[] frame = counting(8, 4);
+        byte[] padded = new byte[frame.length + 3];
+        System.arraycopy(frame, 0, padded, 3, frame.length);
+        byte[] dst = new byte[YuvKernels.nv21Size(2, 2)];
+        YuvKernels.crop(padded, 3, 8, 4, new int[] {0, 0, 2, 2}, dst);
+
+        assertArrayEquals(bytes(0, 1, 8, 9, 32, 33), dst);
+    }
+
+    @Test
+    public void downscaleAveragesBoxes() {
+        // 8x4, left half luma 10, right half 20, all chroma V 100 / U 50.
+        byte[] src = new byte[YuvKernels.nv21Size(8, 4)];
+        for (int y = 0; y < 4; ++y) {
+            for (int x = 0; x < 8; ++x) {
+                src[y * 8 + x] = (byte) (x < 4 ? 10 : 20);
+            }
+        }
+        for (int i = 32; i < src.length; i += 2) {
+            src[i] = 100;
+            src[i + 1] = 50;
+        }
+        byte[] dst = new byte[YuvKernels.nv21Size(4, 2)];
+        YuvKernels.downscale(src, 8, 4, 2, dst);
+
+        assertArrayEquals(bytes(10, 10, 20, 20, 10, 10, 20, 20, 100, 50, 100, 50), dst);
+    }
+
+    @Test
+    public void downscaleRoundsAverages() {
+        // Box sums 1, 3, 11 and 17 average to 0.25, 0.75, 2.75 and 4.25.
+        byte[] src = bytes(
+                0, 0, 1, 1,
+                0, 1, 1, 0,
+                2, 3, 4, 4,
+                3, 3, 4, 5,
+                100, 50, 101, 50,
+                100, 50, 101, 51);
+        byte[] dst = new byte[YuvKernels.nv21Size(2, 2)];
+        YuvKernels.downscale(src, 4, 4, 2, dst);
+
+        assertArrayEquals(bytes(0, 1, 3, 4, 101, 50), dst);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void downscaleRejectsUnevenFactor() {
+        YuvKernels.downscale(new byte[YuvKernels.nv21Size(6, 4)], 6, 4, 2, new byte[6]);
+    }
+
+    @Test
+    public void rotate90() {
+        // 4x2: luma rows {0, 1, 2, 3} and {4, 5, 6, 7}, V/U pairs (8, 9) and (10, 11).
+        byte[] dst = new byte[12];
+        YuvKernels.rotate(counting(4, 2), 4, 2, 90, false, dst);
+
+        assertArrayEquals(bytes(4, 0, 5, 1, 6, 2, 7, 3, 8, 9, 10, 11), dst);
+    }
+
+    @Test
+    public void rotate270() {
+        byte[] dst = new byte[12];
+        YuvKernels.rotate(counting(4, 2), 4, 2, 270, false, dst);
+
+        assertArrayEquals(bytes(3, 7, 2, 6, 1, 5, 0, 4, 10, 11, 8, 9), dst);
+    }
+
+    @Test
+    public void rotate90Mirrored() {
+        byte[] dst = new byte[12];
+        YuvKernels.rotate(counting(4, 2), 4, 2, 90, true, dst);
+
+        assertArrayEquals(bytes(0, 4, 1, 5, 2, 6, 3, 7, 8, 9, 10, 11), dst);
+    }
+
+    @Test
+    public void rotate270Mirrored() {
+        byte[] dst = new byte[12];
+        YuvKernels.rotate(counting(4, 2), 4, 2, 270, true, dst);
+
+        assertArrayEquals(bytes(7, 3, 6, 2, 5, 1, 4, 0, 10, 11, 8, 9), dst);
+    }
+
+    @Test
+    public void rotate270UndoesRotate90() {
+        byte[] src = counting(8, 4);
+        byte[] rotated = new byte[src.length];
+        byte[] back = new byte[src.length];
+        YuvKernels.rotate(src, 8, 4, 90, false, rotated);
+        YuvKernels.rotate(rotated, 4, 8, 270, false, back);
+
+        assertArrayEquals(src, back);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotateRejectsOtherAngles() {
+        YuvKernels.rotate(new byte[12], 4, 2, 180, false, new byte[12]);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.facetracker.ui.camera;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs tracker threads that add, remove and clear graphics against a draw loop that draws the
+ * overlay and takes capture snapshots, as the shutter does, and checks every snapshot it sees.
+ */
+public class GraphicOverlayStressTest {
+    private static final int TRACKERS = 4;
+    private static final int GRAPHICS_PER_TRACKER = 8;
+    private static final int OPERATIONS = 20000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final GraphicOverlay mOverlay = new GraphicOverlay(null, null);
+    private final ConcurrentLinkedQueue<Throwable> mErrors = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Draws nothing and captures itself.
+     */
+    private static final class TestGraphic extends GraphicOverlay.Graphic {
+        final int mTracker;
+
+        TestGraphic(GraphicOverlay overlay, int tracker) {
+            super(overlay);
+            mTracker = tracker;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+        }
+
+        @Override
+        public GraphicOverlay.CaptureGraphic snapshot() {
+            return new Capture(this);
+        }
+    }
+
+    private static final class Capture implements GraphicOverlay.CaptureGraphic {
+        final TestGraphic mGraphic;
+
+        Capture(TestGraphic graphic) {
+            mGraphic = graphic;
+        }
+
+        @Override
+        public void draw(Canvas canvas, float scaleX, float scaleY, int width, int height) {
+        }
+    }
+
+    /**
+     * Runs the body, recording anything it throws.
+     */
+    private abstract class Worker extends Thread {
+        @Override
+        public final void run() {
+            try {
+                work();
+            } catch (Throwable t) {
+                mErrors.add(t);
+            }
+        }
+
+        abstract void work() throws Exception;
+    }
+
+    /**
+     * Checks that the graphics are all there, and each only once.
+     */
+    private static void assertDistinct(Object[] graphics) {
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        for (Object graphic : graphics) {
+            assertNotNull(graphic);
+            assertTrue("Drawn twice", seen.put(graphic, Boolean.TRUE) == null);
+        }
+    }
+
+    @Test
+    public void snapshotsStayConsistentUnderConcurrentMutation() throws InterruptedException {
+        final AtomicBoolean mutating = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch mutated = new CountDownLatch(TRACKERS);
+        final List<TestGraphic> survivors =
+                Collections.synchronizedList(new ArrayList<TestGraphic>());
+
+        Worker[] trackers = new Worker[TRACKERS];
+        for (int i = 0; i < TRACKERS; ++i) {
+            final int tracker = i;
+            trackers[i] = new Worker() {
+                @Override
+                void work() throws Exception {
+                    TestGraphic[] graphics = new TestGraphic[GRAPHICS_PER_TRACKER];
+                    for (int j = 0; j < graphics.length; ++j) {
+                        graphics[j] = new TestGraphic(mOverlay, tracker);
+                    }
+                    Random random = new Random(tracker);
+                    start.await();
+                    for (int n = 0; n < OPERATIONS; ++n) {
+                        TestGraphic graphic = graphics[random.nextInt(graphics.length)];
+                        int operation = random.nextInt(100);
+                        if (operation < 50) {
+                            mOverlay.add(graphic);
+                        } else if (operation < 99) {
+                            mOverlay.remove(graphic);
+                        } else {
+                            mOverlay.clear();
+                        }
+                    }
+                    // Added once every tracker is done, with no clear to follow, so none of them
+                    // may go missing.
+                    mutated.countDown();
+                    mutated.await();
+                    TestGraphic survivor = new TestGraphic(mOverlay, tracker);
+                    mOverlay.add(survivor);
+                    survivors.add(survivor);
+                }
+            };
+            trackers[i].start();
+        }
+
+        final int[] checked = new int[1];
+        Worker drawLoop = new Worker() {
+            @Override
+            void work() {
+                Canvas canvas = new Canvas();
+                GraphicOverlay.Snapshot last = mOverlay.getSnapshot();
+                start.countDown();
+                while (mutating.get()) {
+                    GraphicOverlay.Snapshot snapshot = mOverlay.getSnapshot();
+                    assertDistinct(snapshot.graphics);
+                    assertTrue("Version went back", snapshot.version >= last.version);
+                    if (snapshot.version == last.version) {
+                        assertSame(last.graphics, snapshot.graphics);
+                    }
+                    last = snapshot;
+
+                    mOverlay.onDraw(canvas);
+
+                    GraphicOverlay.CaptureSnapshot capture = mOverlay.captureSnapshot();
+                    GraphicOverlay.CaptureGraphic[] captured = capture.getGraphics();
+                    assertDistinct(captured);
+                    assertTrue(captured.length <= TRACKERS * GRAPHICS_PER_TRACKER);
+                    for (GraphicOverlay.CaptureGraphic graphic : captured) {
+                        assertTrue(((Capture) graphic).mGraphic.mTracker < TRACKERS);
+                    }
+                    capture.draw(canvas, 640, 480);
+                    checked[0]++;
+                }
+            }
+        };
+        drawLoop.start();
+
+        for (Worker tracker : trackers) {
+            tracker.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        }
+        mutating.set(false);
+        drawLoop.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        for (Throwable error : mErrors) {
+            throw new AssertionError(error);
+        }
+        assertTrue("Draw loop never ran", checked[0] > 0);
+        GraphicOverlay.Graphic[] remaining = mOverlay.getSnapshot().graphics;
+        for (TestGraphic survivor : survivors) {
+            assertTrue("Lost an add", indexOf(remaining, survivor) >= 0);
+        }
+        assertEquals(TRACKERS, survivors.size());
+    }
+
+    private static int indexOf(Object[] array, Object value) {
+        for (int i = 0; i < array.length; ++i) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
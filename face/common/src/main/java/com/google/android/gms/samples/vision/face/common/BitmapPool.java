@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.common;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide pool of mutable bitmaps which decodes reuse through
+ * {@link BitmapFactory.Options#inBitmap}, instead of allocating a fresh bitmap every time.<p>
+ *
+ * Bitmaps are bucketed by their size in bytes.  From KitKat on any pooled bitmap that is large
+ * enough (but not wastefully so) can be decoded into; before that the decoder needs an exact size
+ * and config match and a sample size of one, and before Honeycomb there is no reuse at all.  The
+ * pool holds at most a fixed number of bytes and drops the least recently returned bitmaps beyond
+ * that.<p>
+ *
+ * Bitmaps handed to {@link #put} must not be used by the caller afterwards.  The pool never
+ * recycles a bitmap, since it can't tell whether an earlier holder still draws it; bitmaps it drops
+ * or can't reuse are only let go, and their memory is freed once no one refers to them.
+ */
+public class BitmapPool {
+    private static final int MAX_SIZE_RATIO = 2;
+
+    private static BitmapPool sInstance;
+
+    private final long mMaxBytes;
+    private long mCurrentBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+    private final ArrayDeque<Bitmap> mLru = new ArrayDeque<>();
+
+    private long mHits;
+    private long mMisses;
+    private long mBytesSaved;
+
+    /**
+     * Opens a fresh stream over the same data on every call, since decoding through the pool reads
+     * the bounds first.
+     */
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the shared pool, sized to a quarter of the heap.
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / 4);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Takes a bitmap out of the pool that can hold an image of the given size, or returns null.
+     * From KitKat on the bitmap is reconfigured to the requested size.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            bitmap.reconfigure(width, height, config);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap to the pool.  Bitmaps that can't be reused are dropped instead.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int bytes = byteCount(bitmap);
+        if (!bitmap.isMutable() || bytes > mMaxBytes
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(bytes, bucket);
+        }
+        bucket.addLast(bitmap);
+        mLru.addLast(bitmap);
+        mCurrentBytes += bytes;
+
+        while (mCurrentBytes > mMaxBytes) {
+            Bitmap eldest = mLru.pollFirst();
+            removeFromBucket(eldest);
+            mCurrentBytes -= byteCount(eldest);
+        }
+    }
+
+    /**
+     * Drops every pooled bitmap.
+     */
+    public synchronized void clear() {
+        mLru.clear();
+        mBuckets.clear();
+        mCurrentBytes = 0;
+    }
+
+    public Bitmap decodeByteArray(final byte[] data, BitmapFactory.Options options) {
+        try {
+            return decode(new Decoder() {
+                @Override
+                public Bitmap decode(BitmapFactory.Options options) {
+                    return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                }
+            }, options);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Bitmap decodeFile(final String path, BitmapFactory.Options options) {
+        try {
+            return decode(new Decoder() {
+                @Override
+                public Bitmap decode(BitmapFactory.Options options) {
+                    return BitmapFactory.decodeFile(path, options);
+                }
+            }, options);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Bitmap decodeStream(final StreamOpener opener, BitmapFactory.Options options)
+            throws IOException {
+        return decode(new Decoder() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) throws IOException {
+                InputStream stream = opener.open();
+                try {
+                    return BitmapFactory.decodeStream(stream, null, options);
+                } finally {
+                    stream.close();
+                }
+            }
+        }, options);
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized float getHitRate() {
+        long total = mHits + mMisses;
+        return (total == 0) ? 0 : (float) mHits / total;
+    }
+
+    /**
+     * Returns the number of bitmap bytes that decodes didn't have to allocate thanks to the pool.
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{hits=" + mHits + ", misses=" + mMisses + ", bytesSaved=" + mBytesSaved
+                + ", pooledBytes=" + mCurrentBytes + "}";
+    }
+
+    /**
+     * Decodes into a pooled bitmap if there is a suitable one.  The options are used as given,
+     * except that the result is always mutable so that it can be returned to the pool later.
+     */
+    private Bitmap decode(Decoder decoder, BitmapFactory.Options options) throws IOException {
+        if (options == null) {
+            options = new BitmapFactory.Options();
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return decoder.decode(options);
+        }
+
+        options.inJustDecodeBounds = true;
+        decoder.decode(options);
+        options.inJustDecodeBounds = false;
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = Math.max(options.inSampleSize, 1);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        Bitmap.Config config = (options.inPreferredConfig != null)
+                ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+
+        Bitmap candidate = null;
+        if (sampleSize == 1 || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            synchronized (this) {
+                candidate = take(width, height, config);
+            }
+        }
+        options.inMutable = true;
+        options.inBitmap = candidate;
+        try {
+            Bitmap bitmap = decoder.decode(options);
+            if (candidate != null && bitmap == candidate) {
+                synchronized (this) {
+                    mBytesSaved += byteCount(bitmap);
+                }
+            } else if (candidate != null) {
+                // The decode failed or allocated anyway; the candidate is still unused.
+                put(candidate);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            if (candidate == null) {
+                throw e;
+            }
+            // The decoder couldn't use the pooled bitmap after all.
+            options.inBitmap = null;
+            put(candidate);
+            return decoder.decode(options);
+        } finally {
+            options.inBitmap = null;
+        }
+    }
+
+    private Bitmap take(int width, int height, Bitmap.Config config) {
+        int bytes = width * height * bytesPerPixel(config);
+        Bitmap found = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(bytes);
+            if (entry != null && entry.getKey() <= bytes * MAX_SIZE_RATIO) {
+                found = entry.getValue().pollLast();
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+            if (bucket != null) {
+                for (Iterator<Bitmap> it = bucket.descendingIterator(); it.hasNext(); ) {
+                    Bitmap bitmap = it.next();
+                    if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                            && bitmap.getConfig() == config) {
+                        it.remove();
+                        found = bitmap;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (found == null) {
+            mMisses++;
+            return null;
+        }
+        int foundBytes = byteCount(found);
+        ArrayDeque<Bitmap> bucket = mBuckets.get(foundBytes);
+        if (bucket != null && bucket.isEmpty()) {
+            mBuckets.remove(foundBytes);
+        }
+        mLru.remove(found);
+        mCurrentBytes -= foundBytes;
+        mHits++;
+        return found;
+    }
+
+    private void removeFromBucket(Bitmap bitmap) {
+        int bytes = byteCount(bitmap);
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        if (bucket != null) {
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(bytes);
+            }
+        }
+    }
+
+    private static int byteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
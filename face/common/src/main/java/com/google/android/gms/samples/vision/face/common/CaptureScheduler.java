@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bolts.Task;
+import bolts.TaskCompletionSource;
+
+/**
+ * Runs full resolution capture jobs on a small dedicated pool with a bounded queue, instead of the
+ * unbounded shared pool behind {@link Task#callInBackground}.<p>
+ *
+ * Each job holds a full size bitmap while it runs, so only one or two run at a time and only a few
+ * more may wait.  When the queue is full, {@link OverflowPolicy#DROP_OLDEST} cancels the job that
+ * has waited longest to make room and {@link OverflowPolicy#REJECT} cancels the new one; either way
+ * the dropped job's task completes as cancelled.  {@link #cancelAll()} cancels the waiting jobs
+ * when the activity pauses; running jobs finish, since a decode or encode can't be interrupted
+ * halfway.<p>
+ *
+ * Queue depth, drop counts and the latency from submission to completion are kept for logging.
+ */
+public class CaptureScheduler {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * What to do with a job submitted while the queue is full.
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        REJECT
+    }
+
+    private final String mName;
+    private final OverflowPolicy mPolicy;
+    private final Clock mClock;
+    private final ThreadPoolExecutor mExecutor;
+
+    private long mCompleted;
+    private long mDropped;
+    private long mRejected;
+    private long mCancelled;
+    private long mTotalWaitMillis;
+    private long mTotalLatencyMillis;
+    private long mWorstLatencyMillis;
+
+    /**
+     * A submitted job and the source of its task.
+     */
+    private final class Job<T> implements Runnable {
+        final Callable<T> callable;
+        final TaskCompletionSource<T> completion = new TaskCompletionSource<>();
+        final long submittedAt = mClock.elapsedRealtime();
+
+        Job(Callable<T> callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        public void run() {
+            long startedAt = mClock.elapsedRealtime();
+            try {
+                completion.trySetResult(callable.call());
+            } catch (Exception e) {
+                completion.trySetError(e);
+            } finally {
+                recordCompletion(startedAt - submittedAt, mClock.elapsedRealtime() - submittedAt);
+            }
+        }
+
+        void cancel() {
+            completion.trySetCancelled();
+        }
+    }
+
+    private final RejectedExecutionHandler mOverflowHandler = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            Job<?> job = (Job<?>) runnable;
+            if (executor.isShutdown()) {
+                job.cancel();
+                return;
+            }
+            if (mPolicy == OverflowPolicy.DROP_OLDEST) {
+                Job<?> oldest = (Job<?>) executor.getQueue().poll();
+                if (oldest != null) {
+                    oldest.cancel();
+                    synchronized (CaptureScheduler.this) {
+                        mDropped++;
+                    }
+                }
+                // Submissions are serialized, so the slot just freed is still free.
+                executor.execute(job);
+            } else {
+                job.cancel();
+                synchronized (CaptureScheduler.this) {
+                    mRejected++;
+                }
+            }
+        }
+    };
+
+    /**
+     * @param name prefix of the worker thread names
+     * @param concurrency number of jobs run at the same time, one or two
+     * @param queueCapacity number of jobs that may wait for a worker
+     */
+    public CaptureScheduler(String name, int concurrency, int queueCapacity,
+                            OverflowPolicy policy) {
+        this(name, concurrency, queueCapacity, policy, Clock.SYSTEM);
+    }
+
+    /**
+     * @param clock times the wait and latency of each job
+     */
+    public CaptureScheduler(String name, int concurrency, int queueCapacity,
+                            OverflowPolicy policy, Clock clock) {
+        if (concurrency < 1 || concurrency > 2) {
+            throw new IllegalArgumentException("Concurrency must be 1 or 2: " + concurrency);
+        }
+        mName = name;
+        mPolicy = policy;
+        mClock = clock;
+        mExecutor = new ThreadPoolExecutor(concurrency, concurrency, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new WorkerFactory(name), mOverflowHandler);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the job and returns its task, which is cancelled if the job is dropped, rejected or
+     * cancelled before it starts.
+     */
+    public synchronized <T> Task<T> submit(Callable<T> callable) {
+        Job<T> job = new Job<>(callable);
+        mExecutor.execute(job);
+        return job.completion.getTask();
+    }
+
+    /**
+     * Cancels every job that hasn't started yet.
+     */
+    public synchronized void cancelAll() {
+        List<Runnable> waiting = new ArrayList<>();
+        mExecutor.getQueue().drainTo(waiting);
+        for (Runnable runnable : waiting) {
+            ((Job<?>) runnable).cancel();
+        }
+        mCancelled += waiting.size();
+    }
+
+    /**
+     * Cancels the waiting jobs and lets the workers exit once the running ones are done.
+     */
+    public synchronized void shutdown() {
+        cancelAll();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Returns the number of jobs waiting for a worker.
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of jobs running right now.
+     */
+    public int getActiveCount() {
+        return mExecutor.getActiveCount();
+    }
+
+    public synchronized long getCompletedCount() {
+        return mCompleted;
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    public synchronized long getRejectedCount() {
+        return mRejected;
+    }
+
+    public synchronized long getCancelledCount() {
+        return mCancelled;
+    }
+
+    /**
+     * Returns the average time from submission to the start of a job, in milliseconds.
+     */
+    public synchronized long getAverageWaitMillis() {
+        return (mCompleted == 0) ? 0 : mTotalWaitMillis / mCompleted;
+    }
+
+    /**
+     * Returns the average time from submission to the end of a job, in milliseconds.
+     */
+    public synchronized long getAverageLatencyMillis() {
+        return (mCompleted == 0) ? 0 : mTotalLatencyMillis / mCompleted;
+    }
+
+    public synchronized long getWorstLatencyMillis() {
+        return mWorstLatencyMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CaptureScheduler{" + mName + ", queued=" + getQueueDepth() + ", completed="
+                + mCompleted + ", dropped=" + mDropped + ", rejected=" + mRejected
+                + ", cancelled=" + mCancelled + ", averageWaitMillis=" + getAverageWaitMillis()
+                + ", averageLatencyMillis=" + getAverageLatencyMillis()
+                + ", worstLatencyMillis=" + mWorstLatencyMillis + "}";
+    }
+
+    private synchronized void recordCompletion(long waitMillis, long latencyMillis) {
+        mCompleted++;
+        mTotalWaitMillis += waitMillis;
+        mTotalLatencyMillis += latencyMillis;
+        mWorstLatencyMillis = Math.max(mWorstLatencyMillis, latencyMillis);
+    }
+
+    /**
+     * Names the workers and runs them below the UI and camera threads.
+     */
+    private static class WorkerFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        WorkerFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mName + "-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
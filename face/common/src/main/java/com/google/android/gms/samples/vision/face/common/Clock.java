@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.common;
+
+import android.os.SystemClock;
+
+/**
+ * Source of the monotonic time in milliseconds that the schedulers measure with, so that tests can
+ * drive them with a fake clock.
+ */
+public interface Clock {
+    /**
+     * Reads {@link SystemClock#elapsedRealtime()}.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    /**
+     * Returns the milliseconds since some fixed point, which never goes backwards.
+     */
+    long elapsedRealtime();
+}
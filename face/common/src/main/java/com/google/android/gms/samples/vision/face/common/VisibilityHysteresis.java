@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.common;
+
+/**
+ * Visibility state machine for a tracked graphic.  A graphic becomes visible on its first hit and
+ * is only hidden once it has been missing for longer than a grace period, measured both in missed
+ * frames and in milliseconds (whichever runs out first).  Trackers only touch the overlay when
+ * this reports a transition, so a face that drops out for a frame or two doesn't flicker.<p>
+ *
+ * Not thread safe; a tracker receives all of its callbacks on the same thread.
+ */
+public class VisibilityHysteresis {
+    public static final int DEFAULT_GRACE_FRAMES = 3;
+    public static final long DEFAULT_GRACE_MILLIS = 250;
+
+    private final int mGraceFrames;
+    private final long mGraceMillis;
+
+    private boolean mVisible;
+    private int mMissedFrames;
+    private long mFirstMissMillis;
+
+    public VisibilityHysteresis() {
+        this(DEFAULT_GRACE_FRAMES, DEFAULT_GRACE_MILLIS);
+    }
+
+    /**
+     * @param graceFrames number of consecutive missed frames tolerated while staying visible
+     * @param graceMillis time since the first missed frame tolerated while staying visible
+     */
+    public VisibilityHysteresis(int graceFrames, long graceMillis) {
+        if (graceFrames < 0 || graceMillis < 0) {
+            throw new IllegalArgumentException("Grace period must not be negative");
+        }
+        mGraceFrames = graceFrames;
+        mGraceMillis = graceMillis;
+    }
+
+    /**
+     * Records a frame in which the item was detected.  Returns true if the graphic just became
+     * visible and should be added to the overlay.
+     */
+    public boolean onHit() {
+        mMissedFrames = 0;
+        if (mVisible) {
+            return false;
+        }
+        mVisible = true;
+        return true;
+    }
+
+    /**
+     * Records a frame in which the item was not detected.  Returns true if the grace period just
+     * ran out and the graphic should be removed from the overlay.
+     */
+    public boolean onMiss(long nowMillis) {
+        if (!mVisible) {
+            return false;
+        }
+        if (mMissedFrames == 0) {
+            mFirstMissMillis = nowMillis;
+        }
+        mMissedFrames++;
+        if (mMissedFrames > mGraceFrames || nowMillis - mFirstMissMillis > mGraceMillis) {
+            mVisible = false;
+            mMissedFrames = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records that the item is gone for good.  Returns true if the graphic was still visible and
+     * should be removed from the overlay.
+     */
+    public boolean onDone() {
+        boolean wasVisible = mVisible;
+        mVisible = false;
+        mMissedFrames = 0;
+        return wasVisible;
+    }
+
+    public boolean isVisible() {
+        return mVisible;
+    }
+}
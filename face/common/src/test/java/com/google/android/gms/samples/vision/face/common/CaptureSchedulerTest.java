@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import bolts.Task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link CaptureScheduler} with one worker, whose job is held on a latch while the tests fill
+ * the queue, and a fake clock.
+ */
+public class CaptureSchedulerTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final FakeClock mClock = new FakeClock();
+    private CaptureScheduler mScheduler;
+
+    private static class FakeClock implements Clock {
+        volatile long mNow;
+
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+    }
+
+    /**
+     * Returns its name once released, moving the clock to {@code finishAt} first.
+     */
+    private class BlockingJob implements Callable<String> {
+        final String mName;
+        final long mFinishAt;
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mReleased = new CountDownLatch(1);
+
+        BlockingJob(String name, long finishAt) {
+            mName = name;
+            mFinishAt = finishAt;
+        }
+
+        @Override
+        public String call() throws Exception {
+            mStarted.countDown();
+            assertTrue(mReleased.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            mClock.mNow = mFinishAt;
+            return mName;
+        }
+
+        void awaitStart() throws InterruptedException {
+            assertTrue(mName + " didn't start", mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            mReleased.countDown();
+        }
+    }
+
+    private void create(CaptureScheduler.OverflowPolicy policy) {
+        mScheduler = new CaptureScheduler("test", 1, 1, policy, mClock);
+    }
+
+    @After
+    public void tearDown() {
+        if (mScheduler != null) {
+            mScheduler.shutdown();
+        }
+    }
+
+    /**
+     * Waits until the scheduler has recorded {@code count} completed jobs, which happens just
+     * after their tasks complete.
+     */
+    private void awaitCompleted(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_SECONDS * 1000;
+        while (mScheduler.getCompletedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, mScheduler.getCompletedCount());
+    }
+
+    @Test
+    public void runsJobAndCompletesTask() throws InterruptedException {
+        create(CaptureScheduler.OverflowPolicy.DROP_OLDEST);
+        BlockingJob job = new BlockingJob("a", 0);
+        job.release();
+        Task<String> task = mScheduler.submit(job);
+        awaitCompleted(1);
+
+        assertTrue(task.isCompleted());
+        assertEquals("a", task.getResult());
+    }
+
+    @Test
+    public void failingJobFaultsTask() throws InterruptedException {
+        create(CaptureScheduler.OverflowPolicy.DROP_OLDEST);
+        Task<String> task = mScheduler.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new Exception("Out of memory");
+            }
+        });
+        awaitCompleted(1);
+
+        assertTrue(task.isFaulted());
+        assertEquals("Out of memory", task.getError().getMessage());
+    }
+
+    @Test
+    public void dropOldestCancelsWaitingJob() throws InterruptedException {
+        create(CaptureScheduler.OverflowPolicy.DROP_OLDEST);
+        BlockingJob running = new BlockingJob("running", 0);
+        Task<String> first = mScheduler.submit(running);
+        running.awaitStart();
+        Task<String> waiting = mScheduler.submit(new BlockingJob("waiting", 0));
+        BlockingJob newest = new BlockingJob("newest", 0);
+        Task<String> last = mScheduler.submit(newest);
+
+        assertTrue(waiting.isCancelled());
+        assertEquals(1, mScheduler.getDroppedCount());
+        assertEquals(0, mScheduler.getRejectedCount());
+        assertEquals(1, mScheduler.getQueueDepth());
+        assertEquals(1, mScheduler.getActiveCount());
+
+        running.release();
+        newest.release();
+        awaitCompleted(2);
+        assertEquals("running", first.getResult());
+        assertEquals("newest", last.getResult());
+        assertEquals(0, mScheduler.getQueueDepth());
+    }
+
+    @Test
+    public void rejectCancelsNewJob() throws InterruptedException {
+        create(CaptureScheduler.OverflowPolicy.REJECT);
+        BlockingJob running = new BlockingJob("running", 0);
+        mScheduler.submit(running);
+        running.awaitStart();
+        BlockingJob waiting = new BlockingJob("waiting", 0);
+        Task<String> queued = mScheduler.submit(waiting);
+        Task<String> rejected = mScheduler.submit(new BlockingJob("rejected", 0));
+
+        assertTrue(rejected.isCancelled());
+        assertFalse(queued.isCompleted());
+        assertEquals(1, mScheduler.getRejectedCount());
+        assertEquals(0, mScheduler.getDroppedCount());
+        assertEquals(1, mScheduler.getQueueDepth());
+
+        running.release();
+        waiting.release();
+        awaitCompleted(2);
+        assertEquals("waiting", queued.getResult());
+    }
+
+    @Test
+    public void cancelAllCancelsOnlyWaitingJobs() throws InterruptedException {
+        create(CaptureScheduler.OverflowPolicy.DROP_OLDEST);
+        BlockingJob running = new BlockingJob("running", 0);
+        Task<String> first = mScheduler.submit(running);
+        running.awaitStart();
+        Task<String> waiting = mScheduler.submit(new BlockingJob("waiting", 0));
+        mScheduler.cancelAll();
+
+        assertTrue(waiting.isCancelled());
+        assertEquals(1, mScheduler.getCancelledCount());
+        assertEquals(0, mScheduler.getQueueDepth());
+        assertFalse(first.isCompleted());
+
+        running.release();
+        awaitCompleted(1);
+        assertEquals("running", first.getResult());
+        assertEquals(1, mScheduler.getCancelledCount());
+    }
+
+    @Test
+    public void submitAfterShutdownIsCancelled() {
+        create(CaptureScheduler.OverflowPolicy.DROP_OLDEST);
+        mScheduler.shutdown();
+
+        assertTrue(mScheduler.submit(new BlockingJob("late", 0)).isCancelled());
+        assertEquals(0, mScheduler.getRejectedCount());
+    }
+
+    @Test
+    public void countsWaitAndLatency() throws InterruptedException {
+        create(CaptureScheduler.OverflowPolicy.DROP_OLDEST);
+        // The first job starts at 0 and ends at 100.  The second is submitted at 10, starts when
+        // the first ends and ends at 150: it waited 90 and took 140 in all.
+        BlockingJob first = new BlockingJob("first", 100);
+        mScheduler.submit(first);
+        first.awaitStart();
+        mClock.mNow = 10;
+        BlockingJob second = new BlockingJob("second", 150);
+        mScheduler.submit(second);
+        second.release();
+        first.release();
+        awaitCompleted(2);
+
+        assertEquals(45, mScheduler.getAverageWaitMillis());
+        assertEquals(120, mScheduler.getAverageLatencyMillis());
+        assertEquals(140, mScheduler.getWorstLatencyMillis());
+    }
+
+    @Test
+    public void countersStartAtZero() {
+        create(CaptureScheduler.OverflowPolicy.REJECT);
+
+        assertEquals(0, mScheduler.getCompletedCount());
+        assertEquals(0, mScheduler.getAverageWaitMillis());
+        assertEquals(0, mScheduler.getAverageLatencyMillis());
+        assertEquals(0, mScheduler.getQueueDepth());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyAboveTwoIsRejected() {
+        new CaptureScheduler("test", 3, 1, CaptureScheduler.OverflowPolicy.REJECT, mClock);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VisibilityHysteresisTest {
+    @Test
+    public void firstHitShows() {
+        VisibilityHysteresis visibility = new VisibilityHysteresis();
+
+        assertTrue(visibility.onHit());
+        assertTrue(visibility.isVisible());
+        assertFalse(visibility.onHit());
+    }
+
+    @Test
+    public void missBeforeFirstHitDoesNothing() {
+        VisibilityHysteresis visibility = new VisibilityHysteresis();
+
+        assertFalse(visibility.onMiss(0));
+        assertFalse(visibility.isVisible());
+    }
+
+    @Test
+    public void staysVisibleForGraceFrames() {
+        VisibilityHysteresis visibility = new VisibilityHysteresis(3, 1000);
+        visibility.onHit();
+
+        assertFalse(visibility.onMiss(10));
+        assertFalse(visibility.onMiss(20));
+        assertFalse(visibility.onMiss(30));
+        assertTrue(visibility.isVisible());
+        assertTrue(visibility.onMiss(40));
+        assertFalse(visibility.isVisible());
+        assertFalse(visibility.onMiss(50));
+    }
+
+    @Test
+    public void hidesOnceGraceMillisRunOut() {
+        VisibilityHysteresis visibility = new VisibilityHysteresis(10, 250);
+        visibility.onHit();
+
+        assertFalse(visibility.onMiss(100));
+        assertFalse(visibility.onMiss(350));
+        assertTrue(visibility.onMiss(351));
+    }
+
+    @Test
+    public void hitResetsGracePeriod() {
+        VisibilityHysteresis visibility = new VisibilityHysteresis(2, 1000);
+        visibility.onHit();
+        visibility.onMiss(10);
+        visibility.onMiss(20);
+
+        assertFalse(visibility.onHit());
+        assertFalse(visibility.onMiss(40));
+        assertFalse(visibility.onMiss(50));
+        assertTrue(visibility.onMiss(60));
+    }
+
+    @Test
+    public void hitAfterHidingShowsAgain() {
+        VisibilityHysteresis visibility = new VisibilityHysteresis(0, 0);
+        visibility.onHit();
+
+        assertTrue(visibility.onMiss(10));
+        assertTrue(visibility.onHit());
+    }
+
+    @Test
+    public void doneHidesOnlyIfVisible() {
+        VisibilityHysteresis visibility = new VisibilityHysteresis();
+
+        assertFalse(visibility.onDone());
+        visibility.onHit();
+        assertTrue(visibility.onDone());
+        assertFalse(visibility.isVisible());
+        assertFalse(visibility.onDone());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeGraceIsRejected() {
+        new VisibilityHysteresis(-1, 0);
+    }
+}
@@ -18,6 +18,7 @@ package com.google.android.gms.samples.vision.face.multitracker;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
 
 import com.google.android.gms.samples.vision.face.multitracker.ui.camera.GraphicOverlay;
@@ -57,7 +58,25 @@ class BarcodeGraphic extends TrackedGraphic<Barcode> {
 
     private Paint mRectPaint;
     private Paint mTextPaint;
-    private volatile Barcode mBarcode;
+    private final RectF mRect = new RectF();
+
+    // The latest detection, replaced as a whole on every update so that drawing always sees a box
+    // and a value from the same barcode.
+    private volatile Detection mDetection;
+
+    /**
+     * Bounding box and value of one detection, computed once per update rather than on every draw.
+     * Immutable.
+     */
+    private static final class Detection {
+        final Rect boundingBox;
+        final String rawValue;
+
+        Detection(Rect boundingBox, String rawValue) {
+            this.boundingBox = boundingBox;
+            this.rawValue = rawValue;
+        }
+    }
 
     BarcodeGraphic(GraphicOverlay overlay) {
         super(overlay);
@@ -80,7 +99,7 @@ class BarcodeGraphic extends TrackedGraphic<Barcode> {
      * relevant portions of the overlay to trigger a redraw.
      */
     void updateItem(Barcode barcode) {
-        mBarcode = barcode;
+        mDetection = new Detection(barcode.getBoundingBox(), barcode.rawValue);
         postInvalidate();
     }
 
@@ -89,20 +108,21 @@ class BarcodeGraphic extends TrackedGraphic<Barcode> {
      */
     @Override
     public void draw(Canvas canvas) {
-        Barcode barcode = mBarcode;
-        if (barcode == null) {
+        Detection detection = mDetection;
+        if (detection == null) {
             return;
         }
+        Rect box = detection.boundingBox;
 
         // Draws the bounding box around the barcode.
-        RectF rect = new RectF(barcode.getBoundingBox());
-        rect.left = translateX(rect.left);
-        rect.top = translateY(rect.top);
-        rect.right = translateX(rect.right);
-        rect.bottom = translateY(rect.bottom);
+        RectF rect = mRect;
+        rect.left = translateX(box.left);
+        rect.top = translateY(box.top);
+        rect.right = translateX(box.right);
+        rect.bottom = translateY(box.bottom);
         canvas.drawRect(rect, mRectPaint);
 
         // Draws a label at the bottom of the barcode indicate the barcode value that was detected.
-        canvas.drawText(barcode.rawValue, rect.left, rect.bottom, mTextPaint);
+        canvas.drawText(detection.rawValue, rect.left, rect.bottom, mTextPaint);
     }
 }
@@ -18,6 +18,7 @@ package com.google.android.gms.samples.vision.face.multitracker;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PointF;
 
 import com.google.android.gms.vision.MultiProcessor;
 import com.google.android.gms.vision.Tracker;
@@ -64,7 +65,11 @@ class FaceGraphic extends TrackedGraphic<Face> {
     private Paint mIdPaint;
     private Paint mBoxPaint;
 
-    private volatile Face mFace;
+    // Face center and half size in image coordinates, replaced as a whole on every update so that
+    // drawing needs neither a lock nor the allocating Face.getPosition().
+    private volatile float[] mBounds;
+    private int mLabelId = -1;
+    private volatile String mLabel;
 
     FaceGraphic(GraphicOverlay overlay) {
         super(overlay);
@@ -90,7 +95,15 @@ class FaceGraphic extends TrackedGraphic<Face> {
      * relevant portions of the overlay to trigger a redraw.
      */
     void updateItem(Face face) {
-        mFace = face;
+        if (mLabelId != getId()) {
+            mLabelId = getId();
+            mLabel = "id: " + mLabelId;
+        }
+        PointF position = face.getPosition();
+        float halfWidth = face.getWidth() / 2;
+        float halfHeight = face.getHeight() / 2;
+        mBounds = new float[] {position.x + halfWidth, position.y + halfHeight, halfWidth,
+                halfHeight};
         postInvalidate();
     }
 
@@ -99,20 +112,20 @@ class FaceGraphic extends TrackedGraphic<Face> {
      */
     @Override
     public void draw(Canvas canvas) {
-        Face face = mFace;
-        if (face == null) {
+        float[] bounds = mBounds;
+        if (bounds == null) {
             return;
         }
 
         // Draws a circle at the position of the detected face, with the face's track id below.
-        float cx = translateX(face.getPosition().x + face.getWidth() / 2);
-        float cy = translateY(face.getPosition().y + face.getHeight() / 2);
+        float cx = translateX(bounds[0]);
+        float cy = translateY(bounds[1]);
         canvas.drawCircle(cx, cy, FACE_POSITION_RADIUS, mFacePositionPaint);
-        canvas.drawText("id: " + getId(), cx + ID_X_OFFSET, cy + ID_Y_OFFSET, mIdPaint);
+        canvas.drawText(mLabel, cx + ID_X_OFFSET, cy + ID_Y_OFFSET, mIdPaint);
 
         // Draws an oval around the face.
-        float xOffset = scaleX(face.getWidth() / 2.0f);
-        float yOffset = scaleY(face.getHeight() / 2.0f);
+        float xOffset = scaleX(bounds[2]);
+        float yOffset = scaleY(bounds[3]);
         float left = cx - xOffset;
         float top = cy - yOffset;
         float right = cx + xOffset;
@@ -15,6 +15,9 @@
  */
 package com.google.android.gms.samples.vision.face.multitracker;
 
+import android.os.SystemClock;
+
+import com.google.android.gms.samples.vision.face.common.VisibilityHysteresis;
 import com.google.android.gms.samples.vision.face.multitracker.ui.camera.GraphicOverlay;
 import com.google.android.gms.vision.Detector;
 import com.google.android.gms.vision.Tracker;
@@ -28,6 +31,7 @@ import com.google.android.gms.vision.Tracker;
 class GraphicTracker<T> extends Tracker<T> {
     private GraphicOverlay mOverlay;
     private TrackedGraphic<T> mGraphic;
+    private VisibilityHysteresis mVisibility = new VisibilityHysteresis();
 
     GraphicTracker(GraphicOverlay overlay, TrackedGraphic<T> graphic) {
         mOverlay = overlay;
@@ -47,18 +51,22 @@ class GraphicTracker<T> extends Tracker<T> {
      */
     @Override
     public void onUpdate(Detector.Detections<T> detectionResults, T item) {
-        mOverlay.add(mGraphic);
         mGraphic.updateItem(item);
+        if (mVisibility.onHit()) {
+            mOverlay.add(mGraphic);
+        }
     }
 
     /**
      * Hide the graphic when the corresponding face was not detected.  This can happen for
      * intermediate frames temporarily, for example if the face was momentarily blocked from
-     * view.
+     * view, so the graphic is kept for a short grace period before it is removed.
      */
     @Override
     public void onMissing(Detector.Detections<T> detectionResults) {
-        mOverlay.remove(mGraphic);
+        if (mVisibility.onMiss(SystemClock.elapsedRealtime())) {
+            mOverlay.remove(mGraphic);
+        }
     }
 
     /**
@@ -67,6 +75,8 @@ class GraphicTracker<T> extends Tracker<T> {
      */
     @Override
     public void onDone() {
-        mOverlay.remove(mGraphic);
+        if (mVisibility.onDone()) {
+            mOverlay.remove(mGraphic);
+        }
     }
 }
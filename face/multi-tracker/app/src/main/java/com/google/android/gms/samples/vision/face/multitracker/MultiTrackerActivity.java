@@ -24,7 +24,6 @@ import com.google.android.gms.samples.vision.face.multitracker.ui.camera.CameraS
 import com.google.android.gms.samples.vision.face.multitracker.ui.camera.GraphicOverlay;
 
 import com.google.android.gms.vision.CameraSource;
-import com.google.android.gms.vision.MultiDetector;
 import com.google.android.gms.vision.MultiProcessor;
 import com.google.android.gms.vision.barcode.BarcodeDetector;
 import com.google.android.gms.vision.face.FaceDetector;
@@ -39,6 +38,13 @@ import java.io.IOException;
 public final class MultiTrackerActivity extends Activity {
     private static final String TAG = "MultiTracker";
 
+    private static final int FACE_STRIDE = 1;
+    private static final int FACE_PRIORITY = 1;
+    private static final long FACE_BUDGET_MS = 50;
+    private static final int BARCODE_STRIDE = 5;
+    private static final int BARCODE_PRIORITY = 0;
+    private static final long BARCODE_BUDGET_MS = 100;
+
     private CameraSource mCameraSource;
     private CameraSourcePreview mPreview;
     private GraphicOverlay mGraphicOverlay;
@@ -73,14 +79,15 @@ public final class MultiTrackerActivity extends Activity {
         barcodeDetector.setProcessor(
                 new MultiProcessor.Builder<>(barcodeFactory).build());
 
-        // A multi-detector groups the two detectors together as one detector.  All images received
-        // by this detector from the camera will be sent to each of the underlying detectors, which
-        // will each do face and barcode detection, respectively.  The detection results from each
-        // are then sent to associated tracker instances which maintain per-item graphics on the
-        // screen.
-        MultiDetector multiDetector = new MultiDetector.Builder()
-                .add(faceDetector)
-                .add(barcodeDetector)
+        // A scheduling detector groups the two detectors together as one detector.  Images received
+        // by this detector from the camera are sent to the underlying detectors on their own
+        // schedules: faces need low latency and are detected on every frame, barcodes change
+        // rarely and are only looked for on every fifth frame.  A detector that overruns its time
+        // budget sits out its next frame.  The detection results from each are then sent to
+        // associated tracker instances which maintain per-item graphics on the screen.
+        SchedulingDetector multiDetector = new SchedulingDetector.Builder()
+                .add(faceDetector, FACE_STRIDE, FACE_PRIORITY, FACE_BUDGET_MS)
+                .add(barcodeDetector, BARCODE_STRIDE, BARCODE_PRIORITY, BARCODE_BUDGET_MS)
                 .build();
 
         if (!multiDetector.isOperational()) {
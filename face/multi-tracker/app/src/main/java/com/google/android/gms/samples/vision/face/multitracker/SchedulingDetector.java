@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.multitracker;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.samples.vision.face.common.Clock;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Groups several detectors like {@link com.google.android.gms.vision.MultiDetector}, but gives each
+ * of them its own schedule instead of running all of them on every frame:
+ * <ul>
+ * <li>a frame stride, so that e.g. a barcode detector only looks at every fifth frame,</li>
+ * <li>a priority, which decides the order in which the detectors run on a frame,</li>
+ * <li>a time budget per frame; a detector that overruns it sits out its next scheduled frame so
+ * that it doesn't keep stalling the others.</li>
+ * </ul>
+ * Latency counters are kept per detector.<p>
+ *
+ * Normally the detectors deliver to their own processors through {@link #receiveFrame}.  A direct
+ * call to {@link #detect} runs the scheduled detectors the same way and merges their results into
+ * one array, with the keys of the detector at position {@code i} of {@link #getChildren()} offset
+ * by {@code i * }{@link #KEY_OFFSET}.
+ */
+class SchedulingDetector extends Detector<Object> {
+    /**
+     * Offset between the result keys of two detectors in {@link #detect}.  Detectors key their
+     * results by tracking id, which stays far below this.
+     */
+    static final int KEY_OFFSET = 1 << 24;
+
+    private final List<Child> mChildren;
+    private final Clock mClock;
+    private long mFrameCount;
+
+    /**
+     * Schedule and latency counters of one detector.  Counters are updated on the detector thread
+     * and may be read from any thread.
+     */
+    static class Child {
+        private final Detector<?> mDetector;
+        private final int mStride;
+        private final int mPriority;
+        private final long mBudgetMillis;
+        private boolean mSkipNext;
+
+        private volatile long mRuns;
+        private volatile long mSkips;
+        private volatile long mOverruns;
+        private volatile long mTotalMillis;
+        private volatile long mMaxMillis;
+        private volatile long mLastMillis;
+
+        private Child(Detector<?> detector, int stride, int priority, long budgetMillis) {
+            mDetector = detector;
+            mStride = stride;
+            mPriority = priority;
+            mBudgetMillis = budgetMillis;
+        }
+
+        Detector<?> getDetector() {
+            return mDetector;
+        }
+
+        /**
+         * Number of frames this detector ran on.
+         */
+        long getRuns() {
+            return mRuns;
+        }
+
+        /**
+         * Number of scheduled frames skipped after an overrun.
+         */
+        long getSkips() {
+            return mSkips;
+        }
+
+        /**
+         * Number of frames on which this detector took longer than its budget.
+         */
+        long getOverruns() {
+            return mOverruns;
+        }
+
+        long getAverageMillis() {
+            long runs = mRuns;
+            return (runs == 0) ? 0 : mTotalMillis / runs;
+        }
+
+        long getMaxMillis() {
+            return mMaxMillis;
+        }
+
+        long getLastMillis() {
+            return mLastMillis;
+        }
+
+        boolean isScheduled(long frame) {
+            if (frame % mStride != 0) {
+                return false;
+            }
+            if (mSkipNext) {
+                mSkipNext = false;
+                mSkips++;
+                return false;
+            }
+            return true;
+        }
+
+        void record(long millis) {
+            mRuns++;
+            mTotalMillis += millis;
+            mLastMillis = millis;
+            if (millis > mMaxMillis) {
+                mMaxMillis = millis;
+            }
+            if (millis > mBudgetMillis) {
+                mOverruns++;
+                mSkipNext = true;
+            }
+        }
+    }
+
+    /**
+     * Builder for creating a scheduling detector.
+     */
+    static class Builder {
+        private final List<Child> mChildren = new ArrayList<>();
+        private Clock mClock = Clock.SYSTEM;
+
+        /**
+         * Adds a detector.
+         *
+         * @param stride the detector runs on one frame out of every {@code stride}
+         * @param priority detectors with a higher priority run first on a frame
+         * @param budgetMillis time the detector may take on a frame before its next scheduled
+         *                     frame is skipped
+         */
+        Builder add(Detector<?> detector, int stride, int priority, long budgetMillis) {
+            if (stride < 1) {
+                throw new IllegalArgumentException("Stride must be at least 1");
+            }
+            mChildren.add(new Child(detector, stride, priority, budgetMillis));
+            return this;
+        }
+
+        /**
+         * Sets the clock the detectors are timed with, {@link Clock#SYSTEM} by default.
+         */
+        Builder setClock(Clock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        SchedulingDetector build() {
+            if (mChildren.isEmpty()) {
+                throw new RuntimeException("No underlying detectors added to SchedulingDetector.");
+            }
+            return new SchedulingDetector(mChildren, mClock);
+        }
+    }
+
+    private SchedulingDetector(List<Child> children, Clock clock) {
+        mClock = clock;
+        List<Child> sorted = new ArrayList<>(children);
+        Collections.sort(sorted, new Comparator<Child>() {
+            @Override
+            public int compare(Child lhs, Child rhs) {
+                return (lhs.mPriority < rhs.mPriority) ? 1 : (lhs.mPriority > rhs.mPriority) ? -1 : 0;
+            }
+        });
+        mChildren = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Returns the scheduled detectors in the order they run, highest priority first.
+     */
+    List<Child> getChildren() {
+        return mChildren;
+    }
+
+    /**
+     * Returns the detector whose result {@link #detect} stored under the given key.
+     */
+    Child getChildForKey(int key) {
+        return mChildren.get(key / KEY_OFFSET);
+    }
+
+    /**
+     * Returns the key the detector itself gave the result {@link #detect} stored under the given
+     * key.
+     */
+    static int getChildKey(int key) {
+        return key % KEY_OFFSET;
+    }
+
+    @Override
+    public void receiveFrame(Frame frame) {
+        long frameIndex = mFrameCount++;
+        for (int i = 0; i < mChildren.size(); ++i) {
+            Child child = mChildren.get(i);
+            if (!child.isScheduled(frameIndex)) {
+                continue;
+            }
+            long start = mClock.elapsedRealtime();
+            child.mDetector.receiveFrame(frame);
+            child.record(mClock.elapsedRealtime() - start);
+        }
+    }
+
+    /**
+     * Runs the detectors scheduled for this frame and returns their results, keyed as described
+     * above.  Counts as a frame of the schedule, like {@link #receiveFrame}.
+     */
+    @Override
+    public SparseArray<Object> detect(Frame frame) {
+        long frameIndex = mFrameCount++;
+        SparseArray<Object> merged = new SparseArray<>();
+        for (int i = 0; i < mChildren.size(); ++i) {
+            Child child = mChildren.get(i);
+            if (!child.isScheduled(frameIndex)) {
+                continue;
+            }
+            long start = mClock.elapsedRealtime();
+            SparseArray<?> results = child.mDetector.detect(frame);
+            child.record(mClock.elapsedRealtime() - start);
+            int offset = i * KEY_OFFSET;
+            for (int j = 0; j < results.size(); ++j) {
+                merged.append(offset + results.keyAt(j), results.valueAt(j));
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public boolean isOperational() {
+        for (Child child : mChildren) {
+            if (!child.mDetector.isOperational()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void release() {
+        for (Child child : mChildren) {
+            child.mDetector.release();
+        }
+        super.release();
+    }
+}
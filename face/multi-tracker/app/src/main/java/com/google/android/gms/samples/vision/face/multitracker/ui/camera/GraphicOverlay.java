@@ -22,8 +22,9 @@ import android.view.View;
 
 import com.google.android.gms.vision.CameraSource;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -42,15 +43,21 @@ import java.util.Set;
  * <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the coordinate
  * from the preview's coordinate system to the view coordinate system.</li>
  * </ol>
+ *
+ * The set of graphics is kept as an immutable {@link Snapshot} which is replaced atomically on every
+ * change, so drawing never blocks the detector threads that add and remove graphics.  All changes
+ * made within one display frame are folded into a single invalidate, posted for the next vsync.
  */
 public class GraphicOverlay extends View {
-    private final Object mLock = new Object();
-    private int mPreviewWidth;
+    private volatile int mPreviewWidth;
     private float mWidthScaleFactor = 1.0f;
-    private int mPreviewHeight;
+    private volatile int mPreviewHeight;
     private float mHeightScaleFactor = 1.0f;
-    private int mFacing = CameraSource.CAMERA_FACING_BACK;
-    private Set<Graphic> mGraphics = new HashSet<>();
+    private volatile int mFacing = CameraSource.CAMERA_FACING_BACK;
+    private final AtomicReference<Snapshot> mGraphics = new AtomicReference<>(Snapshot.EMPTY);
+    private final AtomicBoolean mRedrawPending = new AtomicBoolean();
+    private final AtomicLong mRequestedRedraws = new AtomicLong();
+    private final AtomicLong mPerformedRedraws = new AtomicLong();
 
     /**
      * Base class for a custom graphics object to be rendered within the graphic overlay.  Subclass
@@ -114,7 +121,54 @@ public class GraphicOverlay extends View {
         }
 
         public void postInvalidate() {
-            mOverlay.postInvalidate();
+            mOverlay.requestRedraw();
+        }
+    }
+
+    /**
+     * Immutable view of the graphics in the overlay.  Graphics are kept in the order in which they
+     * were added, which is also the order in which they are drawn.  The version is bumped on every
+     * change.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new Graphic[0], 0);
+
+        public final Graphic[] graphics;
+        public final long version;
+
+        private Snapshot(Graphic[] graphics, long version) {
+            this.graphics = graphics;
+            this.version = version;
+        }
+
+        private int indexOf(Graphic graphic) {
+            for (int i = 0; i < graphics.length; ++i) {
+                if (graphics[i] == graphic) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Snapshot with(Graphic graphic) {
+            if (indexOf(graphic) >= 0) {
+                return this;
+            }
+            Graphic[] next = new Graphic[graphics.length + 1];
+            System.arraycopy(graphics, 0, next, 0, graphics.length);
+            next[graphics.length] = graphic;
+            return new Snapshot(next, version + 1);
+        }
+
+        private Snapshot without(Graphic graphic) {
+            int index = indexOf(graphic);
+            if (index < 0) {
+                return this;
+            }
+            Graphic[] next = new Graphic[graphics.length - 1];
+            System.arraycopy(graphics, 0, next, 0, index);
+            System.arraycopy(graphics, index + 1, next, index, next.length - index);
+            return new Snapshot(next, version + 1);
         }
     }
 
@@ -122,34 +176,53 @@ public class GraphicOverlay extends View {
         super(context, attrs);
     }
 
+    /**
+     * Returns the current set of graphics.  The returned snapshot never changes, later additions
+     * and removals publish a new one.
+     */
+    public Snapshot getSnapshot() {
+        return mGraphics.get();
+    }
+
     /**
      * Removes all graphics from the overlay.
      */
     public void clear() {
-        synchronized (mLock) {
-            mGraphics.clear();
-        }
-        postInvalidate();
+        Snapshot current;
+        do {
+            current = mGraphics.get();
+            if (current.graphics.length == 0) {
+                break;
+            }
+        } while (!mGraphics.compareAndSet(current,
+                new Snapshot(Snapshot.EMPTY.graphics, current.version + 1)));
+        requestRedraw();
     }
 
     /**
      * Adds a graphic to the overlay.
      */
     public void add(Graphic graphic) {
-        synchronized (mLock) {
-            mGraphics.add(graphic);
-        }
-        postInvalidate();
+        Snapshot current;
+        Snapshot next;
+        do {
+            current = mGraphics.get();
+            next = current.with(graphic);
+        } while (next != current && !mGraphics.compareAndSet(current, next));
+        requestRedraw();
     }
 
     /**
      * Removes a graphic from the overlay.
      */
     public void remove(Graphic graphic) {
-        synchronized (mLock) {
-            mGraphics.remove(graphic);
-        }
-        postInvalidate();
+        Snapshot current;
+        Snapshot next;
+        do {
+            current = mGraphics.get();
+            next = current.without(graphic);
+        } while (next != current && !mGraphics.compareAndSet(current, next));
+        requestRedraw();
     }
 
     /**
@@ -157,12 +230,43 @@ public class GraphicOverlay extends View {
      * image coordinates later.
      */
     public void setCameraInfo(int previewWidth, int previewHeight, int facing) {
-        synchronized (mLock) {
-            mPreviewWidth = previewWidth;
-            mPreviewHeight = previewHeight;
-            mFacing = facing;
+        mPreviewWidth = previewWidth;
+        mPreviewHeight = previewHeight;
+        mFacing = facing;
+        requestRedraw();
+    }
+
+    /**
+     * Marks the overlay as dirty.  Only the first request since the last draw posts an invalidate,
+     * aligned to the next display frame; later requests in the same frame are folded into it.  Safe
+     * to call from any thread.
+     */
+    public void requestRedraw() {
+        mRequestedRedraws.incrementAndGet();
+        if (mRedrawPending.compareAndSet(false, true)) {
+            postInvalidateOnAnimation();
         }
-        postInvalidate();
+    }
+
+    /**
+     * Returns the number of redraws requested through {@link #requestRedraw()}.
+     */
+    public long getRequestedRedrawCount() {
+        return mRequestedRedraws.get();
+    }
+
+    /**
+     * Returns the number of times the overlay has actually been drawn.
+     */
+    public long getPerformedRedrawCount() {
+        return mPerformedRedraws.get();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // Invalidates posted while detached are dropped, so don't keep waiting on one.
+        mRedrawPending.set(false);
     }
 
     /**
@@ -171,16 +275,19 @@ public class GraphicOverlay extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        // Cleared before drawing so that changes published while drawing schedule another frame.
+        mRedrawPending.set(false);
+        mPerformedRedraws.incrementAndGet();
 
-        synchronized (mLock) {
-            if ((mPreviewWidth != 0) && (mPreviewHeight != 0)) {
-                mWidthScaleFactor = (float) canvas.getWidth() / (float) mPreviewWidth;
-                mHeightScaleFactor = (float) canvas.getHeight() / (float) mPreviewHeight;
-            }
+        int previewWidth = mPreviewWidth;
+        int previewHeight = mPreviewHeight;
+        if ((previewWidth != 0) && (previewHeight != 0)) {
+            mWidthScaleFactor = (float) canvas.getWidth() / (float) previewWidth;
+            mHeightScaleFactor = (float) canvas.getHeight() / (float) previewHeight;
+        }
 
-            for (Graphic graphic : mGraphics) {
-                graphic.draw(canvas);
-            }
+        for (Graphic graphic : mGraphics.get().graphics) {
+            graphic.draw(canvas);
         }
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.multitracker;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the bytes the calling thread allocates, through the HotSpot extension of
+ * {@link ThreadMXBean}. What reading the counter allocates itself is measured once and taken off.
+ */
+final class Allocations {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static final long OVERHEAD = isSupported() ? measureOverhead() : 0;
+
+    private Allocations() {
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean hotSpot = (com.sun.management.ThreadMXBean) threads;
+        if (!hotSpot.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        hotSpot.setThreadAllocatedMemoryEnabled(true);
+        return hotSpot;
+    }
+
+    /**
+     * Returns whether this JVM can count allocations. Tests should be skipped if not.
+     */
+    static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    private static long read() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long measureOverhead() {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 10; ++i) {
+            long start = read();
+            overhead = Math.min(overhead, read() - start);
+        }
+        return overhead;
+    }
+
+    /**
+     * Runs the task and returns the bytes it allocated on this thread. Takes the least of a few
+     * runs, so that a one-off allocation by the JVM itself doesn't count.
+     */
+    static long count(Runnable task) {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 3; ++i) {
+            long start = read();
+            task.run();
+            least = Math.min(least, read() - start - OVERHEAD);
+        }
+        return least;
+    }
+}
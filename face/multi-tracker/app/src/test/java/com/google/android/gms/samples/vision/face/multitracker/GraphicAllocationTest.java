@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.multitracker;
+
+import android.graphics.Canvas;
+import android.graphics.Point;
+import android.graphics.PointF;
+
+import com.google.android.gms.samples.vision.face.multitracker.ui.camera.GraphicOverlay;
+import com.google.android.gms.vision.barcode.Barcode;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Draws each tracked graphic over and over after a warm-up and checks that the draws allocate
+ * nothing.  The canvas calls are unit test stubs that do nothing, so what is counted is the
+ * graphic's own work.
+ */
+public class GraphicAllocationTest {
+    private static final int WARM_UP_DRAWS = 50;
+    private static final int DRAWS = 1000;
+
+    private final GraphicOverlay mOverlay = new GraphicOverlay(null, null);
+    private final Canvas mCanvas = new Canvas();
+
+    @Before
+    public void onlyIfSupported() {
+        Assume.assumeTrue(Allocations.isSupported());
+    }
+
+    /**
+     * Returns the bytes allocated by {@link #DRAWS} draws of the graphic, after warming it up.
+     */
+    private long drawAllocations(final GraphicOverlay.Graphic graphic) {
+        for (int i = 0; i < WARM_UP_DRAWS; ++i) {
+            graphic.draw(mCanvas);
+        }
+        return Allocations.count(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < DRAWS; ++i) {
+                    graphic.draw(mCanvas);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void faceDrawDoesNotAllocate() {
+        FaceGraphic graphic = new FaceGraphic(mOverlay);
+        graphic.setId(7);
+        graphic.updateItem(new Face(7, new PointF(200, 300), 200, 260, 0, 0, new Landmark[0], 1,
+                1, 0.5f));
+
+        assertEquals("Bytes allocated by " + DRAWS + " draws", 0, drawAllocations(graphic));
+    }
+
+    @Test
+    public void barcodeDrawDoesNotAllocate() {
+        Barcode barcode = new Barcode();
+        barcode.cornerPoints = new Point[] {
+                new Point(100, 100), new Point(300, 100), new Point(300, 200), new Point(100, 200)
+        };
+        barcode.rawValue = "0123456789012";
+        BarcodeGraphic graphic = new BarcodeGraphic(mOverlay);
+        graphic.updateItem(barcode);
+
+        assertEquals("Bytes allocated by " + DRAWS + " draws", 0, drawAllocations(graphic));
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.multitracker;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.samples.vision.face.common.Clock;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the schedule of {@link SchedulingDetector}, first by driving the children directly and then
+ * through {@link SchedulingDetector#receiveFrame} and {@link SchedulingDetector#detect} with fake
+ * detectors that take a set time on a fake clock.
+ */
+public class SchedulingDetectorTest {
+    private final FakeClock mClock = new FakeClock();
+    private final List<String> mLog = new ArrayList<>();
+
+    private static class FakeClock implements Clock {
+        long mNow;
+
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+    }
+
+    /**
+     * Detector that logs its name and moves the clock on by its cost for each frame it sees.  The
+     * costs are used in turn and the last one repeats.
+     */
+    private class FakeDetector extends Detector<Object> {
+        final String mName;
+        final long[] mCostsMillis;
+        int mFrames;
+
+        FakeDetector(String name, long... costsMillis) {
+            mName = name;
+            mCostsMillis = costsMillis;
+        }
+
+        private void work() {
+            mLog.add(mName);
+            mClock.mNow += mCostsMillis[Math.min(mFrames, mCostsMillis.length - 1)];
+            mFrames++;
+        }
+
+        @Override
+        public void receiveFrame(Frame frame) {
+            work();
+        }
+
+        @Override
+        public SparseArray<Object> detect(Frame frame) {
+            work();
+            return new SparseArray<>();
+        }
+    }
+
+    private void receiveFrames(SchedulingDetector detector, int count) {
+        for (int i = 0; i < count; ++i) {
+            detector.receiveFrame(null);
+        }
+    }
+
+    private static SchedulingDetector.Child single(int stride, long budgetMillis) {
+        return new SchedulingDetector.Builder()
+                .add(null, stride, 0, budgetMillis)
+                .build()
+                .getChildren()
+                .get(0);
+    }
+
+    @Test
+    public void runsEveryStrideFrames() {
+        SchedulingDetector.Child child = single(3, 100);
+        StringBuilder schedule = new StringBuilder();
+        for (long frame = 0; frame < 9; ++frame) {
+            schedule.append(child.isScheduled(frame) ? 'x' : '.');
+        }
+
+        assertEquals("x..x..x..", schedule.toString());
+        assertEquals(0, child.getSkips());
+    }
+
+    @Test
+    public void overrunSkipsNextScheduledFrame() {
+        SchedulingDetector.Child child = single(2, 10);
+        assertTrue(child.isScheduled(0));
+        child.record(25);
+
+        assertEquals(1, child.getOverruns());
+        // Off-stride frames don't use up the skip.
+        assertFalse(child.isScheduled(1));
+        assertEquals(0, child.getSkips());
+        assertFalse(child.isScheduled(2));
+        assertEquals(1, child.getSkips());
+        assertTrue(child.isScheduled(4));
+    }
+
+    @Test
+    public void runWithinBudgetDoesNotSkip() {
+        SchedulingDetector.Child child = single(1, 10);
+        child.record(10);
+
+        assertTrue(child.isScheduled(1));
+        assertEquals(0, child.getOverruns());
+        assertEquals(0, child.getSkips());
+    }
+
+    @Test
+    public void recordKeepsLatencyCounters() {
+        SchedulingDetector.Child child = single(1, 100);
+        assertEquals(0, child.getAverageMillis());
+        child.record(10);
+        child.record(30);
+        child.record(20);
+
+        assertEquals(3, child.getRuns());
+        assertEquals(20, child.getAverageMillis());
+        assertEquals(30, child.getMaxMillis());
+        assertEquals(20, child.getLastMillis());
+    }
+
+    @Test
+    public void childrenRunByPriority() {
+        SchedulingDetector detector = new SchedulingDetector.Builder()
+                .add(null, 1, 1, 100)
+                .add(null, 2, 5, 100)
+                .add(null, 3, 1, 100)
+                .build();
+        List<SchedulingDetector.Child> children = detector.getChildren();
+
+        assertEquals(3, children.size());
+        assertTrue(children.get(0).isScheduled(2));
+        assertFalse(children.get(0).isScheduled(3));
+        // Equal priorities keep the order they were added in.
+        assertTrue(children.get(1).isScheduled(1));
+        assertTrue(children.get(2).isScheduled(3));
+        assertFalse(children.get(2).isScheduled(1));
+    }
+
+    @Test
+    public void mergedKeysMapBackToChildren() {
+        SchedulingDetector detector = new SchedulingDetector.Builder()
+                .add(null, 1, 0, 100)
+                .add(null, 1, 0, 100)
+                .add(null, 1, 0, 100)
+                .build();
+        int key = 2 * SchedulingDetector.KEY_OFFSET + 17;
+
+        assertSame(detector.getChildren().get(2), detector.getChildForKey(key));
+        assertEquals(17, SchedulingDetector.getChildKey(key));
+        assertSame(detector.getChildren().get(0), detector.getChildForKey(17));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void strideMustBePositive() {
+        new SchedulingDetector.Builder().add(null, 0, 0, 100);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void needsAtLeastOneDetector() {
+        new SchedulingDetector.Builder().build();
+    }
+
+    @Test
+    public void overrunningDetectorSitsOutWhileOthersRun() {
+        FakeDetector face = new FakeDetector("face", 5);
+        FakeDetector barcode = new FakeDetector("barcode", 30, 5);
+        SchedulingDetector detector = new SchedulingDetector.Builder()
+                .add(barcode, 1, 1, 10)
+                .add(face, 1, 2, 20)
+                .setClock(mClock)
+                .build();
+        receiveFrames(detector, 4);
+
+        assertEquals(Arrays.asList("face", "barcode", "face", "face", "barcode", "face", "barcode"),
+                mLog);
+        SchedulingDetector.Child faceChild = detector.getChildren().get(0);
+        SchedulingDetector.Child barcodeChild = detector.getChildren().get(1);
+        assertSame(face, faceChild.getDetector());
+        assertEquals(4, faceChild.getRuns());
+        assertEquals(0, faceChild.getSkips());
+        assertEquals(3, barcodeChild.getRuns());
+        assertEquals(1, barcodeChild.getSkips());
+        assertEquals(1, barcodeChild.getOverruns());
+    }
+
+    @Test
+    public void detectorThatAlwaysOverrunsRunsEveryOtherScheduledFrame() {
+        FakeDetector face = new FakeDetector("face", 5);
+        FakeDetector barcode = new FakeDetector("barcode", 30);
+        SchedulingDetector detector = new SchedulingDetector.Builder()
+                .add(face, 1, 1, 20)
+                .add(barcode, 2, 0, 10)
+                .setClock(mClock)
+                .build();
+        receiveFrames(detector, 8);
+
+        // The barcode detector is scheduled on frames 0, 2, 4 and 6 and skips 2 and 6.
+        assertEquals(8, face.mFrames);
+        assertEquals(2, barcode.mFrames);
+        SchedulingDetector.Child barcodeChild = detector.getChildren().get(1);
+        assertEquals(2, barcodeChild.getSkips());
+        assertEquals(2, barcodeChild.getOverruns());
+        assertEquals(0, detector.getChildren().get(0).getOverruns());
+    }
+
+    @Test
+    public void latencyIsMeasuredAroundEachDetector() {
+        FakeDetector face = new FakeDetector("face", 10, 30, 20);
+        FakeDetector slow = new FakeDetector("slow", 1000);
+        SchedulingDetector detector = new SchedulingDetector.Builder()
+                .add(face, 1, 1, 100)
+                .add(slow, 1, 0, 2000)
+                .setClock(mClock)
+                .build();
+        receiveFrames(detector, 3);
+
+        // The slow detector's time isn't charged to the face detector that ran before it.
+        SchedulingDetector.Child child = detector.getChildren().get(0);
+        assertEquals(20, child.getAverageMillis());
+        assertEquals(30, child.getMaxMillis());
+        assertEquals(20, child.getLastMillis());
+        assertEquals(1000, detector.getChildren().get(1).getAverageMillis());
+    }
+
+    @Test
+    public void detectFollowsTheSameSchedule() {
+        FakeDetector face = new FakeDetector("face", 5);
+        FakeDetector barcode = new FakeDetector("barcode", 30, 5);
+        SchedulingDetector detector = new SchedulingDetector.Builder()
+                .add(face, 1, 1, 20)
+                .add(barcode, 1, 0, 10)
+                .setClock(mClock)
+                .build();
+        detector.detect(null);
+        detector.detect(null);
+        // Frames given to detect and receiveFrame count towards the same schedule.
+        detector.receiveFrame(null);
+
+        assertEquals(3, face.mFrames);
+        assertEquals(2, barcode.mFrames);
+        assertEquals(1, detector.getChildren().get(1).getSkips());
+    }
+}
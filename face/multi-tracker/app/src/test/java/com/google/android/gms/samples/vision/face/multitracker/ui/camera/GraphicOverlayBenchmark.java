@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.multitracker.ui.camera;
+
+import android.graphics.Canvas;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Measures contention between tracker threads publishing graphics and one draw loop: each
+ * tracker keeps adding and removing graphics of its own while the loop draws the overlay as fast
+ * as it can.  Logs publishes and draws per millisecond for 1 to 8 trackers, for the overlay's
+ * copy-on-write snapshot and, for comparison, for the locked set it replaced.<p>
+ *
+ * Skipped by the normal unit test run; run it with {@code ./gradlew testDebugUnitTest -Pbenchmark}
+ * or, from the IDE, with the VM option {@code -Dbenchmark=true}.
+ */
+public class GraphicOverlayBenchmark {
+    private static final Logger LOG = Logger.getLogger("GraphicOverlayBenchmark");
+    private static final int[] TRACKERS = {1, 2, 4, 8};
+    private static final int GRAPHICS_PER_TRACKER = 4;
+    private static final long WARMUP_MILLIS = 200;
+    private static final long RUN_MILLIS = 500;
+
+    /**
+     * The graphics set under test.
+     */
+    private interface Scene {
+        void add(GraphicOverlay.Graphic graphic);
+
+        void remove(GraphicOverlay.Graphic graphic);
+
+        void draw(Canvas canvas);
+    }
+
+    /**
+     * The overlay as it is.
+     */
+    private static final class SnapshotScene implements Scene {
+        final GraphicOverlay mOverlay = new GraphicOverlay(null, null);
+
+        @Override
+        public void add(GraphicOverlay.Graphic graphic) {
+            mOverlay.add(graphic);
+        }
+
+        @Override
+        public void remove(GraphicOverlay.Graphic graphic) {
+            mOverlay.remove(graphic);
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            mOverlay.onDraw(canvas);
+        }
+    }
+
+    /**
+     * The overlay before the snapshot: a hash set behind one lock, held while drawing.
+     */
+    private static final class LockedScene implements Scene {
+        final Object mLock = new Object();
+        final Set<GraphicOverlay.Graphic> mGraphics = new HashSet<>();
+
+        @Override
+        public void add(GraphicOverlay.Graphic graphic) {
+            synchronized (mLock) {
+                mGraphics.add(graphic);
+            }
+        }
+
+        @Override
+        public void remove(GraphicOverlay.Graphic graphic) {
+            synchronized (mLock) {
+                mGraphics.remove(graphic);
+            }
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            synchronized (mLock) {
+                for (GraphicOverlay.Graphic graphic : mGraphics) {
+                    graphic.draw(canvas);
+                }
+            }
+        }
+    }
+
+    /**
+     * Does a little arithmetic per draw, standing in for the canvas calls.
+     */
+    private static final class WorkGraphic extends GraphicOverlay.Graphic {
+        float mValue = 1;
+
+        WorkGraphic(GraphicOverlay overlay) {
+            super(overlay);
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            for (int i = 0; i < 64; ++i) {
+                mValue = mValue * 1.0001f + 0.5f;
+            }
+        }
+    }
+
+    @BeforeClass
+    public static void onlyWhenAsked() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    /**
+     * Runs the trackers and the draw loop on the scene for the given time and returns the
+     * publishes and the draws done, in that order.
+     */
+    private static long[] run(final Scene scene, int trackers, long millis)
+            throws InterruptedException {
+        final GraphicOverlay owner = new GraphicOverlay(null, null);
+        final AtomicLong publishes = new AtomicLong();
+        final long[] draws = new long[1];
+        final long end = System.nanoTime() + millis * 1000000;
+
+        Thread[] threads = new Thread[trackers];
+        for (int i = 0; i < trackers; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    WorkGraphic[] graphics = new WorkGraphic[GRAPHICS_PER_TRACKER];
+                    for (int j = 0; j < graphics.length; ++j) {
+                        graphics[j] = new WorkGraphic(owner);
+                    }
+                    long count = 0;
+                    while (System.nanoTime() < end) {
+                        for (WorkGraphic graphic : graphics) {
+                            scene.add(graphic);
+                        }
+                        for (WorkGraphic graphic : graphics) {
+                            scene.remove(graphic);
+                        }
+                        count += 2 * graphics.length;
+                    }
+                    publishes.addAndGet(count);
+                }
+            };
+        }
+        Thread drawLoop = new Thread() {
+            @Override
+            public void run() {
+                Canvas canvas = new Canvas();
+                long count = 0;
+                while (System.nanoTime() < end) {
+                    scene.draw(canvas);
+                    count++;
+                }
+                draws[0] = count;
+            }
+        };
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        drawLoop.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        drawLoop.join();
+        return new long[] {publishes.get(), draws[0]};
+    }
+
+    private static void measure(String name, Scene scene) throws InterruptedException {
+        for (int trackers : TRACKERS) {
+            run(scene, trackers, WARMUP_MILLIS);
+            long[] counts = run(scene, trackers, RUN_MILLIS);
+            LOG.info(String.format(Locale.US,
+                    "%-8s %d trackers: %10.1f publishes/ms %8.1f draws/ms", name, trackers,
+                    (double) counts[0] / RUN_MILLIS, (double) counts[1] / RUN_MILLIS));
+        }
+    }
+
+    @Test
+    public void snapshot() throws InterruptedException {
+        measure("snapshot", new SnapshotScene());
+    }
+
+    @Test
+    public void locked() throws InterruptedException {
+        measure("locked", new LockedScene());
+    }
+}
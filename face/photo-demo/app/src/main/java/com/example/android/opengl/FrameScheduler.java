@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+/**
+ * Decides when the GL view renders continuously and paces the frames it renders.
+ * <p>
+ * The view renders continuously while something animates and goes back to rendering only when
+ * dirty once nothing has woken the scheduler for the idle timeout. While animating, frames are
+ * spaced at least one frame interval apart, capping the frame rate, and the animation time advances
+ * by the time between frames, read from a monotonic {@link Clock}; it stands still while idle, so
+ * the animation resumes where it stopped. Frame intervals are recorded for statistics.
+ * <p>
+ * Plain Java with an injected clock, so the policy doesn't depend on the GL thread. All methods are
+ * thread safe; the callback is invoked with the scheduler's lock held, which keeps render mode
+ * changes from the UI and GL threads in order.
+ */
+public class FrameScheduler {
+
+    /**
+     * Source of monotonic time.
+     */
+    public interface Clock {
+        long nanoTime();
+    }
+
+    /**
+     * Reads {@link System#nanoTime()}, which doesn't jump with wall clock changes.
+     */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Told when rendering should switch between continuous and on demand.
+     */
+    public interface Callback {
+        void onAnimatingChanged(boolean animating);
+    }
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    // Longest step the animation takes in one frame, so that a stall doesn't make it jump.
+    private static final long MAX_STEP_NANOS = NANOS_PER_SECOND / 10;
+
+    private final Clock mClock;
+    private final long mFrameIntervalNanos;
+    private final long mIdleTimeoutNanos;
+    private Callback mCallback;
+
+    private boolean mAnimating;
+    private long mLastActivity;
+    // Start of the previous animated frame, or -1 if there was none since the last wake.
+    private long mLastFrameStart = -1;
+    private long mAnimationNanos;
+
+    private long mFrames;
+    private long mTotalIntervalNanos;
+    private long mWorstIntervalNanos;
+    private long mLateFrames;
+
+    /**
+     * @param maxFps highest frame rate to render at while animating
+     * @param idleTimeoutMillis how long to keep animating after the last {@link #wake()}
+     */
+    public FrameScheduler(Clock clock, int maxFps, long idleTimeoutMillis) {
+        mClock = clock;
+        mFrameIntervalNanos = NANOS_PER_SECOND / maxFps;
+        mIdleTimeoutNanos = idleTimeoutMillis * NANOS_PER_MILLI;
+    }
+
+    public synchronized void setCallback(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Keeps the animation going for another idle timeout, starting it if it was idle.
+     */
+    public synchronized void wake() {
+        mLastActivity = mClock.nanoTime();
+        if (!mAnimating) {
+            setAnimating(true);
+        }
+    }
+
+    /**
+     * Returns how long the GL thread should wait before starting the next frame to stay within the
+     * frame rate cap. Zero while idle, when frames are only drawn on demand.
+     */
+    public synchronized long nanosUntilNextFrame() {
+        if (!mAnimating || mLastFrameStart < 0) {
+            return 0;
+        }
+        long wait = mLastFrameStart + mFrameIntervalNanos - mClock.nanoTime();
+        return Math.max(0, wait);
+    }
+
+    /**
+     * Called on the GL thread at the start of every frame. Advances the animation time, records the
+     * frame interval and goes idle if the timeout has passed.
+     *
+     * @return whether the scheduler is still animating
+     */
+    public synchronized boolean beginFrame() {
+        if (!mAnimating) {
+            return false;
+        }
+        long now = mClock.nanoTime();
+        if (mLastFrameStart >= 0) {
+            long interval = now - mLastFrameStart;
+            mAnimationNanos += Math.min(interval, MAX_STEP_NANOS);
+            mFrames++;
+            mTotalIntervalNanos += interval;
+            mWorstIntervalNanos = Math.max(mWorstIntervalNanos, interval);
+            if (interval > mFrameIntervalNanos * 3 / 2) {
+                mLateFrames++;
+            }
+        }
+        mLastFrameStart = now;
+
+        if (now - mLastActivity >= mIdleTimeoutNanos) {
+            setAnimating(false);
+        }
+        return mAnimating;
+    }
+
+    /**
+     * Returns the animation time in seconds, which only advances while animating.
+     */
+    public synchronized float getAnimationSeconds() {
+        return (float) mAnimationNanos / NANOS_PER_SECOND;
+    }
+
+    public synchronized boolean isAnimating() {
+        return mAnimating;
+    }
+
+    /**
+     * Returns the number of frame intervals recorded.
+     */
+    public synchronized long getFrameCount() {
+        return mFrames;
+    }
+
+    public synchronized float getAverageFrameMillis() {
+        return (mFrames == 0) ? 0 : (float) mTotalIntervalNanos / mFrames / NANOS_PER_MILLI;
+    }
+
+    public synchronized float getWorstFrameMillis() {
+        return (float) mWorstIntervalNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns the number of frames that took more than one and a half frame intervals.
+     */
+    public synchronized long getLateFrameCount() {
+        return mLateFrames;
+    }
+
+    public synchronized void resetStats() {
+        mFrames = 0;
+        mTotalIntervalNanos = 0;
+        mWorstIntervalNanos = 0;
+        mLateFrames = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameScheduler{frames=" + mFrames + ", averageMillis=" + getAverageFrameMillis()
+                + ", worstMillis=" + getWorstFrameMillis() + ", late=" + mLateFrames + "}";
+    }
+
+    private void setAnimating(boolean animating) {
+        mAnimating = animating;
+        mLastFrameStart = -1;
+        if (mCallback != null) {
+            mCallback.onAnimatingChanged(animating);
+        }
+    }
+}
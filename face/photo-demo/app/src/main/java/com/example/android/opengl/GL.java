@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+
+/**
+ * The OpenGL ES 2.0 calls made by the renderer and its shapes, so that tests can run them against
+ * a recording fake instead of a driver. The methods have the signatures of their
+ * {@link android.opengl.GLES20} counterparts; {@link #texImage2D} stands for
+ * {@link android.opengl.GLUtils#texImage2D(int, int, Bitmap, int)}. {@link AndroidGL} passes them
+ * on to the driver.
+ * <p>
+ * All methods must be called on the GL thread.
+ */
+public interface GL {
+
+    /**
+     * Returns whether {@link MyGLRenderer#checkGlError} queries the driver for errors. Only debug
+     * builds do, so that the draw loop makes no queries.
+     */
+    boolean checksErrors();
+
+    void glActiveTexture(int texture);
+
+    void glAttachShader(int program, int shader);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBindTexture(int target, int texture);
+
+    void glBlendFunc(int sfactor, int dfactor);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glCompileShader(int shader);
+
+    int glCreateProgram();
+
+    int glCreateShader(int type);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteProgram(int program);
+
+    void glDeleteShader(int shader);
+
+    void glDisable(int cap);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glEnable(int cap);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetError();
+
+    String glGetProgramInfoLog(int program);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glLinkProgram(int program);
+
+    void glShaderSource(int shader, String string);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glUniform1f(int location, float x);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform4fv(int location, int count, float[] v, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    void glUseProgram(int program);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                               int offset);
+
+    void glViewport(int x, int y, int width, int height);
+
+    void texImage2D(int target, int level, Bitmap bitmap, int border);
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Geometry kept in GPU buffer objects: one vertex buffer with interleaved attributes and an
+ * optional 16 bit index buffer.
+ * <p>
+ * Static meshes are uploaded once from a {@link MeshBuilder} and only rebound per draw, so the
+ * driver no longer copies client side arrays on every frame. Dynamic meshes reserve room for the
+ * builder's full capacity and take new vertex data through {@link #update}; their indices are
+ * still uploaded once, which suits batches of quads that share one index pattern.
+ * <p>
+ * Buffer objects belong to the GL context, so meshes must be created again after the context is
+ * lost. All methods must be called on the GL thread.
+ */
+public class Mesh {
+
+    private final GL mGL;
+    private final int mMode;
+    private final int[] mComponents;
+    private final int mStride;
+    private final int mVertexBuffer;
+    private final int mIndexBuffer;
+    private int mVertexCount;
+    private final int mIndexCount;
+
+    private static int sDrawCalls;
+
+    /**
+     * Uploads the builder's content as a static mesh.
+     *
+     * @param mode - Primitive type, such as {@link GLES20#GL_TRIANGLES}.
+     */
+    public static Mesh createStatic(GL gl, MeshBuilder builder, int mode) {
+        return new Mesh(gl, builder, mode, false);
+    }
+
+    /**
+     * Creates a mesh whose vertices are replaced through {@link #update}. The builder's indices
+     * are uploaded once.
+     */
+    public static Mesh createDynamic(GL gl, MeshBuilder builder, int mode) {
+        return new Mesh(gl, builder, mode, true);
+    }
+
+    private Mesh(GL gl, MeshBuilder builder, int mode, boolean dynamic) {
+        mGL = gl;
+        mMode = mode;
+        mComponents = builder.getComponents();
+        mStride = builder.getFloatsPerVertex() * 4;
+        mIndexCount = builder.getIndexCount();
+
+        int[] buffers = new int[2];
+        mGL.glGenBuffers(mIndexCount > 0 ? 2 : 1, buffers, 0);
+        mVertexBuffer = buffers[0];
+        mIndexBuffer = buffers[1];
+
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBuffer);
+        if (dynamic) {
+            // Sized for the builder's capacity, whatever it holds right now.
+            mVertexCount = 0;
+            upload(GLES20.GL_ARRAY_BUFFER, builder.getVertexBuffer(),
+                    builder.getMaxVertexCount() * mStride, GLES20.GL_DYNAMIC_DRAW);
+        } else {
+            mVertexCount = builder.getVertexCount();
+            upload(GLES20.GL_ARRAY_BUFFER, builder.getVertexBuffer(), mVertexCount * mStride,
+                    GLES20.GL_STATIC_DRAW);
+        }
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        if (mIndexCount > 0) {
+            mGL.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer);
+            upload(GLES20.GL_ELEMENT_ARRAY_BUFFER, builder.getIndexBuffer(), mIndexCount * 2,
+                    GLES20.GL_STATIC_DRAW);
+            mGL.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        }
+        MyGLRenderer.checkGlError(mGL, "Mesh");
+    }
+
+    /**
+     * Replaces the vertices of a dynamic mesh with the builder's current content.
+     */
+    public void update(MeshBuilder builder) {
+        FloatBuffer data = builder.getVertexBuffer();
+        int floats = data.position();
+        mVertexCount = builder.getVertexCount();
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBuffer);
+        data.position(0);
+        mGL.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, floats * 4, data);
+        data.position(floats);
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Binds the buffers and points the given attribute locations, one per vertex attribute in
+     * builder order, at them. Locations of -1 are skipped.
+     */
+    public void bind(int[] attributeLocations) {
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBuffer);
+        int offset = 0;
+        for (int i = 0; i < mComponents.length; ++i) {
+            int location = attributeLocations[i];
+            if (location >= 0) {
+                mGL.glEnableVertexAttribArray(location);
+                mGL.glVertexAttribPointer(location, mComponents[i], GLES20.GL_FLOAT, false,
+                        mStride, offset);
+            }
+            offset += mComponents[i] * 4;
+        }
+        if (mIndexCount > 0) {
+            mGL.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer);
+        }
+    }
+
+    /**
+     * Draws the whole mesh. The mesh must be bound.
+     */
+    public void draw() {
+        if (mIndexCount > 0) {
+            drawElements(0, mIndexCount);
+        } else {
+            sDrawCalls++;
+            mGL.glDrawArrays(mMode, 0, mVertexCount);
+        }
+    }
+
+    /**
+     * Draws a range of the index buffer. The mesh must be bound.
+     */
+    public void drawElements(int firstIndex, int count) {
+        sDrawCalls++;
+        mGL.glDrawElements(mMode, count, GLES20.GL_UNSIGNED_SHORT, firstIndex * 2);
+    }
+
+    /**
+     * Disables the attribute arrays enabled by {@link #bind} and unbinds the buffers.
+     */
+    public void unbind(int[] attributeLocations) {
+        for (int i = 0; i < mComponents.length; ++i) {
+            if (attributeLocations[i] >= 0) {
+                mGL.glDisableVertexAttribArray(attributeLocations[i]);
+            }
+        }
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        if (mIndexCount > 0) {
+            mGL.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        }
+    }
+
+    /**
+     * Deletes the buffer objects. Only needed while the context is still alive.
+     */
+    public void release() {
+        int[] buffers = { mVertexBuffer, mIndexBuffer };
+        mGL.glDeleteBuffers(mIndexCount > 0 ? 2 : 1, buffers, 0);
+    }
+
+    /**
+     * Returns the number of draw calls issued through meshes since the last reset, for comparing
+     * batched and unbatched drawing.
+     */
+    public static int getDrawCallCount() {
+        return sDrawCalls;
+    }
+
+    public static void resetDrawCallCount() {
+        sDrawCalls = 0;
+    }
+
+    /**
+     * Uploads builder storage from its start, which is where GLES20 reads a buffer from, leaving
+     * the builder's fill position as it was.
+     */
+    private void upload(int target, Buffer data, int bytes, int usage) {
+        int position = data.position();
+        data.position(0);
+        mGL.glBufferData(target, bytes, data, usage);
+        data.position(position);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Collects interleaved vertex data and 16 bit indices in native order buffers, ready to be
+ * uploaded by a {@link Mesh}.
+ * <p>
+ * The buffers are allocated once with a fixed capacity, so a builder can be {@link #reset()} and
+ * refilled on every frame without allocating. Each vertex is made of the attributes given to the
+ * constructor, in that order, each with the given number of float components.
+ */
+public class MeshBuilder {
+
+    private final int[] mComponents;
+    private final int mFloatsPerVertex;
+    private final FloatBuffer mVertices;
+    private final ShortBuffer mIndices;
+
+    /**
+     * @param maxVertices - Number of vertices the builder can hold.
+     * @param maxIndices - Number of indices the builder can hold, 0 for none.
+     * @param components - Number of float components of each vertex attribute.
+     */
+    public MeshBuilder(int maxVertices, int maxIndices, int... components) {
+        mComponents = components.clone();
+        int floats = 0;
+        for (int count : components) {
+            floats += count;
+        }
+        mFloatsPerVertex = floats;
+
+        ByteBuffer vb = ByteBuffer.allocateDirect(maxVertices * mFloatsPerVertex * 4);
+        vb.order(ByteOrder.nativeOrder());
+        mVertices = vb.asFloatBuffer();
+
+        ByteBuffer ib = ByteBuffer.allocateDirect(maxIndices * 2);
+        ib.order(ByteOrder.nativeOrder());
+        mIndices = ib.asShortBuffer();
+    }
+
+    /**
+     * Adds vertex data. Values go in attribute order; a vertex may span several calls.
+     */
+    public MeshBuilder put(float a, float b) {
+        mVertices.put(a).put(b);
+        return this;
+    }
+
+    public MeshBuilder put(float a, float b, float c) {
+        mVertices.put(a).put(b).put(c);
+        return this;
+    }
+
+    public MeshBuilder put(float a, float b, float c, float d) {
+        mVertices.put(a).put(b).put(c).put(d);
+        return this;
+    }
+
+    /**
+     * Adds vertex data from an array.
+     */
+    public MeshBuilder put(float[] values) {
+        mVertices.put(values);
+        return this;
+    }
+
+    /**
+     * Adds indices from an array.
+     */
+    public MeshBuilder index(short[] indices) {
+        mIndices.put(indices);
+        return this;
+    }
+
+    /**
+     * Adds the indices for {@code count} quads of four vertices each, laid out as top left,
+     * bottom left, top right, bottom right, starting at vertex {@code firstVertex}.
+     */
+    public MeshBuilder quadIndices(int firstVertex, int count) {
+        for (int i = 0; i < count; ++i) {
+            int v = firstVertex + i * 4;
+            mIndices.put((short) v).put((short) (v + 1)).put((short) (v + 2));
+            mIndices.put((short) (v + 2)).put((short) (v + 1)).put((short) (v + 3));
+        }
+        return this;
+    }
+
+    /**
+     * Empties the builder, keeping its buffers.
+     */
+    public void reset() {
+        mVertices.clear();
+        mIndices.clear();
+    }
+
+    public int getVertexCount() {
+        return mVertices.position() / mFloatsPerVertex;
+    }
+
+    public int getIndexCount() {
+        return mIndices.position();
+    }
+
+    public int getMaxVertexCount() {
+        return mVertices.capacity() / mFloatsPerVertex;
+    }
+
+    int[] getComponents() {
+        return mComponents;
+    }
+
+    int getFloatsPerVertex() {
+        return mFloatsPerVertex;
+    }
+
+    /**
+     * Returns the vertex storage itself, positioned after the data added so far.
+     */
+    FloatBuffer getVertexBuffer() {
+        return mVertices;
+    }
+
+    /**
+     * Returns the index storage itself, positioned after the indices added so far.
+     */
+    ShortBuffer getIndexBuffer() {
+        return mIndices;
+    }
+}
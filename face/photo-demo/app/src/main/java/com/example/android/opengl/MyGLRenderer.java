@@ -23,6 +23,8 @@ import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import android.util.Log;
 
+import com.google.android.gms.samples.vision.face.photo.BuildConfig;
+
 /**
  * Provides drawing instructions for a GLSurfaceView object. This class
  * must override the OpenGL ES drawing lifecycle methods:
@@ -35,25 +37,57 @@ import android.util.Log;
 public class MyGLRenderer implements GLSurfaceView.Renderer {
 
     private static final String TAG = "MyGLRenderer";
+
+    /**
+     * Enables GL error checks, which query the driver after each checked call. Off in release
+     * builds, so that the draw loop makes no queries.
+     */
+    public static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private final GL mGL;
     private Triangle mTriangle;
     private Square   mSquare;
+    private final StickerCompositor mCompositor;
+    private final FrameScheduler mScheduler;
 
     // mMVPMatrix is an abbreviation for "Model View Projection Matrix"
     private final float[] mMVPMatrix = new float[16];
     private final float[] mProjectionMatrix = new float[16];
     private final float[] mViewMatrix = new float[16];
     private final float[] mRotationMatrix = new float[16];
+    private final float[] mScratch = new float[16];
 
     private float mAngle;
 
+    /**
+     * @param scheduler - Paces the frames and provides the animation time.
+     */
+    public MyGLRenderer(FrameScheduler scheduler) {
+        this(scheduler, new AndroidGL(DEBUG));
+    }
+
+    /**
+     * @param scheduler - Paces the frames and provides the animation time.
+     * @param gl - Takes all GL calls of the renderer and its shapes.
+     */
+    public MyGLRenderer(FrameScheduler scheduler, GL gl) {
+        mScheduler = scheduler;
+        mGL = gl;
+        mCompositor = new StickerCompositor(gl);
+    }
+
     @Override
     public void onSurfaceCreated(GL10 unused, EGLConfig config) {
 
         // Set the background frame color
-        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        mGL.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+
+        // Programs of a previous context are gone with it; the new context gets its own cache
+        ProgramCache programs = new ProgramCache(mGL);
 
-        mTriangle = new Triangle();
-        mSquare   = new Square();
+        mTriangle = new Triangle(mGL, programs);
+        mSquare   = new Square(mGL, programs);
+        mCompositor.onSurfaceCreated(programs);
 
         // Set the camera position (View matrix)
         Matrix.setLookAtM(mViewMatrix, 0, 0, 0, -3, 0f, 0f, 0f, 0f, 2.0f, 0.0f);
@@ -61,17 +95,21 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
 
     @Override
     public void onDrawFrame(GL10 unused) {
-        float[] scratch = new float[16];
+        // Stay within the frame rate cap, then advance the animation time
+        waitForFrame();
+        mScheduler.beginFrame();
 
         // Draw background color
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        mGL.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
 
         // Calculate the projection and view transformation
         Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mViewMatrix, 0);
-        Log.d("TEST", ">>>>> call onDrawFrame");
         // Draw square
-        mSquare.draw(mMVPMatrix);
+        mSquare.draw(mMVPMatrix, mScheduler.getAnimationSeconds());
+
+        // Draw the stickers on top
+        mCompositor.draw();
 
         // Create a rotation for the triangle
 
@@ -85,17 +123,17 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
 //        // Combine the rotation matrix with the projection and camera view
 //        // Note that the mMVPMatrix factor *must be first* in order
 //        // for the matrix multiplication product to be correct.
-//        Matrix.multiplyMM(scratch, 0, mMVPMatrix, 0, mRotationMatrix, 0);
+//        Matrix.multiplyMM(mScratch, 0, mMVPMatrix, 0, mRotationMatrix, 0);
 //
 //        // Draw triangle
-//        mTriangle.draw(scratch);
+//        mTriangle.draw(mScratch);
     }
 
     @Override
     public void onSurfaceChanged(GL10 unused, int width, int height) {
         // Adjust the viewport based on geometry changes,
         // such as screen rotation
-        GLES20.glViewport(0, 0, width, height);
+        mGL.glViewport(0, 0, width, height);
 
         float ratio = (float) width / height;
 
@@ -103,6 +141,23 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
         // in the onDrawFrame() method
         Matrix.frustumM(mProjectionMatrix, 0, -ratio, ratio, -1, 1, 3, 7);
 
+        mCompositor.onSurfaceChanged(width, height);
+    }
+
+    /**
+     * Sleeps until the scheduler allows the next frame. GLSurfaceView renders continuously as
+     * fast as the display allows, so this is what caps the frame rate.
+     */
+    private void waitForFrame() {
+        long wait = mScheduler.nanosUntilNextFrame();
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -111,19 +166,30 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
      * <p><strong>Note:</strong> When developing shaders, use the checkGlError()
      * method to debug shader coding errors.</p>
      *
+     * @param gl - Calls of the current GL context.
      * @param type - Vertex or fragment shader type.
      * @param shaderCode - String containing the shader code.
-     * @return - Returns an id for the shader.
+     * @return - Returns an id for the shader, or 0 if it doesn't compile; the
+     * info log is logged.
      */
-    public static int loadShader(int type, String shaderCode){
+    public static int loadShader(GL gl, int type, String shaderCode){
 
         // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
         // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-        int shader = GLES20.glCreateShader(type);
+        int shader = gl.glCreateShader(type);
 
         // add the source code to the shader and compile it
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
+        gl.glShaderSource(shader, shaderCode);
+        gl.glCompileShader(shader);
+
+        int[] status = new int[1];
+        gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, "Could not compile shader " + type + ": "
+                    + gl.glGetShaderInfoLog(shader));
+            gl.glDeleteShader(shader);
+            return 0;
+        }
 
         return shader;
     }
@@ -133,21 +199,34 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
     * just after making it:
     *
     * <pre>
-    * mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
-    * MyGLRenderer.checkGlError("glGetUniformLocation");</pre>
+    * mColorHandle = gl.glGetUniformLocation(mProgram, "vColor");
+    * MyGLRenderer.checkGlError(gl, "glGetUniformLocation");</pre>
     *
-    * If the operation is not successful, the check throws an error.
+    * If the operation is not successful, the check throws an error. Does nothing
+    * unless the GL {@link GL#checksErrors() checks errors}, which by default it
+    * does if {@link #DEBUG} is set.
     *
+    * @param gl - Calls of the current GL context.
     * @param glOperation - Name of the OpenGL call to check.
     */
-    public static void checkGlError(String glOperation) {
+    public static void checkGlError(GL gl, String glOperation) {
+        if (!gl.checksErrors()) {
+            return;
+        }
         int error;
-        while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
+        while ((error = gl.glGetError()) != GLES20.GL_NO_ERROR) {
             Log.e(TAG, glOperation + ": glError " + error);
             throw new RuntimeException(glOperation + ": glError " + error);
         }
     }
 
+    /**
+     * Returns the compositor that draws stickers over the scene.
+     */
+    public StickerCompositor getCompositor() {
+        return mCompositor;
+    }
+
     /**
      * Returns the rotation angle of the triangle shape (mTriangle).
      *
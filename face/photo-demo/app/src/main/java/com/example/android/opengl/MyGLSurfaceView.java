@@ -16,17 +16,32 @@
 package com.example.android.opengl;
 
 import android.content.Context;
+import android.graphics.BitmapFactory;
 import android.opengl.GLSurfaceView;
+import android.util.Log;
 import android.view.MotionEvent;
 
+import com.google.android.gms.samples.vision.face.photo.R;
+
+import java.util.Collections;
+
 /**
  * A view container where OpenGL ES graphics can be drawn on screen.
  * This view can also be used to capture touch events, such as a user
  * interacting with drawn objects.
  */
-public class MyGLSurfaceView extends GLSurfaceView {
+public class MyGLSurfaceView extends GLSurfaceView implements FrameScheduler.Callback {
+
+    private static final String TAG = "MyGLSurfaceView";
 
+    // Frame rate cap while animating, and how long the animation runs after the last touch
+    private static final int MAX_FPS = 60;
+    private static final long IDLE_TIMEOUT_MILLIS = 3000;
+
+    private final FrameScheduler mScheduler =
+            new FrameScheduler(FrameScheduler.SYSTEM_CLOCK, MAX_FPS, IDLE_TIMEOUT_MILLIS);
     private final MyGLRenderer mRenderer;
+    private final int mSticker;
 
     public MyGLSurfaceView(Context context) {
         super(context);
@@ -35,14 +50,37 @@ public class MyGLSurfaceView extends GLSurfaceView {
         setEGLContextClientVersion(2);
 
         // Set the Renderer for drawing on the GLSurfaceView
-        mRenderer = new MyGLRenderer();
+        mRenderer = new MyGLRenderer(mScheduler);
         setRenderer(mRenderer);
 
-        // Render the view only when there is a change in the drawing data
+        // A sticker that follows the finger, turned by the same angle as the triangle
+        mSticker = mRenderer.getCompositor().addSticker(
+                BitmapFactory.decodeResource(context.getResources(), R.drawable.icon));
+
+        // Render the view only when there is a change in the drawing data, and continuously
+        // while the scheduler is animating; start with a few seconds of animation
         setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        mScheduler.setCallback(this);
+        mScheduler.wake();
+    }
+
+    /**
+     * Switches between continuous and on demand rendering for the scheduler. Called on the UI
+     * thread when woken and on the GL thread when going idle.
+     */
+    @Override
+    public void onAnimatingChanged(boolean animating) {
+        if (animating) {
+            setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        } else {
+            setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+            Log.d(TAG, "Idle after " + mScheduler);
+            mScheduler.resetStats();
+        }
     }
 
     private final float TOUCH_SCALE_FACTOR = 180.0f / 320;
+    private final float STICKER_SIZE = 200.0f;
     private float mPreviousX;
     private float mPreviousY;
 
@@ -74,6 +112,10 @@ public class MyGLSurfaceView extends GLSurfaceView {
                 mRenderer.setAngle(
                         mRenderer.getAngle() +
                         ((dx + dy) * TOUCH_SCALE_FACTOR));  // = 180.0f / 320
+                mRenderer.getCompositor().setPlacements(Collections.singletonList(
+                        new StickerCompositor.Placement(mSticker, x, y, STICKER_SIZE,
+                                STICKER_SIZE, mRenderer.getAngle())));
+                mScheduler.wake();
                 requestRender();
         }
 
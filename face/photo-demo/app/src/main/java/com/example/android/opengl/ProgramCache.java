@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Shares linked shader programs between everything that draws with the same shader sources, so
+ * each pair of sources is compiled and linked once per GL context no matter how many shapes use
+ * it.
+ * <p>
+ * Programs are keyed by their vertex and fragment source. They belong to the GL context, so each
+ * cache belongs to one context too: {@link MyGLRenderer#onSurfaceCreated} creates a new cache for
+ * every new context and hands it to the shapes it creates. A pair of sources that doesn't build is
+ * cached as an invalid program, so it is not compiled again every time it is asked for. All methods
+ * must be called on the GL thread of the cache's context.
+ */
+public class ProgramCache {
+
+    private static final String TAG = "ProgramCache";
+
+    private final GL mGL;
+    private final Map<String, ShaderProgram> mPrograms = new HashMap<String, ShaderProgram>();
+    private int mHits;
+    private int mBuilds;
+    private long mBuildMillis;
+
+    /**
+     * @param gl - Calls of the context the programs are built in.
+     */
+    public ProgramCache(GL gl) {
+        mGL = gl;
+    }
+
+    /**
+     * Returns the program for the given sources, compiling and linking it if this context doesn't
+     * have it yet. The named attributes and uniforms are resolved when the program is linked.
+     * If a shader doesn't compile or the program doesn't link, the info log is logged and the
+     * returned program is not {@link ShaderProgram#isValid() valid}.
+     */
+    public ShaderProgram get(String vertexShaderCode, String fragmentShaderCode,
+                             String[] attributes, String[] uniforms) {
+        String key = vertexShaderCode + '\0' + fragmentShaderCode;
+        ShaderProgram program = mPrograms.get(key);
+        if (program != null) {
+            mHits++;
+            return program;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        program = new ShaderProgram(mGL, vertexShaderCode, fragmentShaderCode, attributes,
+                uniforms);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        mBuilds++;
+        mBuildMillis += elapsed;
+        Log.d(TAG, "Built program " + program.getId() + " in " + elapsed + " ms, " + this);
+
+        mPrograms.put(key, program);
+        return program;
+    }
+
+    /**
+     * Returns the number of requests served without compiling.
+     */
+    public int getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of programs compiled and linked.
+     */
+    public int getBuildCount() {
+        return mBuilds;
+    }
+
+    /**
+     * Returns the total time spent compiling and linking, in milliseconds.
+     */
+    public long getBuildMillis() {
+        return mBuildMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ProgramCache{programs=" + mPrograms.size() + ", hits=" + mHits + ", builds="
+                + mBuilds + ", buildMillis=" + mBuildMillis + "}";
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * A linked OpenGL ES 2.0 program together with the locations of its attributes and uniforms.
+ * <p>
+ * Locations are looked up once, right after linking, for the names given to the constructor;
+ * other names are looked up the first time they are asked for. Shapes copy the ones they need into
+ * fields when they are created, so the draw loop never asks the driver for a location. Programs are
+ * normally obtained through {@link ProgramCache}, which shares them between shapes. A program that
+ * fails to build is logged and left invalid rather than thrown, so a bad shader only blanks the
+ * shapes that use it.
+ */
+public class ShaderProgram {
+
+    private static final String TAG = "ShaderProgram";
+
+    private final GL mGL;
+    private final int mProgram;
+    private final Map<String, Integer> mAttributes = new HashMap<String, Integer>();
+    private final Map<String, Integer> mUniforms = new HashMap<String, Integer>();
+
+    /**
+     * Compiles and links the program and resolves the given names. Must be called on the GL
+     * thread. If a shader doesn't compile or the program doesn't link, the info log is logged and
+     * the program is left {@link #isValid() invalid}.
+     */
+    public ShaderProgram(GL gl, String vertexShaderCode, String fragmentShaderCode,
+                         String[] attributes, String[] uniforms) {
+        mGL = gl;
+        mProgram = link(gl, vertexShaderCode, fragmentShaderCode);
+        if (mProgram == 0) {
+            return;
+        }
+
+        for (String name : attributes) {
+            mAttributes.put(name, gl.glGetAttribLocation(mProgram, name));
+        }
+        for (String name : uniforms) {
+            mUniforms.put(name, gl.glGetUniformLocation(mProgram, name));
+        }
+        MyGLRenderer.checkGlError(gl, "ShaderProgram");
+    }
+
+    /**
+     * Returns the linked program, or 0 if it couldn't be built.
+     */
+    private static int link(GL gl, String vertexShaderCode, String fragmentShaderCode) {
+        int vertexShader = MyGLRenderer.loadShader(gl, GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = MyGLRenderer.loadShader(gl, GLES20.GL_FRAGMENT_SHADER,
+                fragmentShaderCode);
+        if (vertexShader == 0 || fragmentShader == 0) {
+            // Deleting 0 is silently ignored.
+            gl.glDeleteShader(vertexShader);
+            gl.glDeleteShader(fragmentShader);
+            return 0;
+        }
+
+        int program = gl.glCreateProgram();         // create empty OpenGL Program
+        gl.glAttachShader(program, vertexShader);   // add the vertex shader to program
+        gl.glAttachShader(program, fragmentShader); // add the fragment shader to program
+        gl.glLinkProgram(program);                  // create OpenGL program executables
+
+        // Flagged for deletion, they go away with the program.
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(fragmentShader);
+
+        int[] status = new int[1];
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, "Could not link program: " + gl.glGetProgramInfoLog(program));
+            gl.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * Returns whether the program compiled and linked. Shapes skip drawing with an invalid
+     * program.
+     */
+    public boolean isValid() {
+        return mProgram != 0;
+    }
+
+    /**
+     * Makes this the current program.
+     */
+    public void use() {
+        mGL.glUseProgram(mProgram);
+    }
+
+    public int getId() {
+        return mProgram;
+    }
+
+    /**
+     * Returns the location of an attribute, or -1 if the program has no such active attribute.
+     */
+    public int getAttribLocation(String name) {
+        Integer location = mAttributes.get(name);
+        if (location == null && mProgram == 0) {
+            return -1;
+        } else if (location == null) {
+            location = mGL.glGetAttribLocation(mProgram, name);
+            mAttributes.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * Returns the location of a uniform, or -1 if the program has no such active uniform.
+     */
+    public int getUniformLocation(String name) {
+        Integer location = mUniforms.get(name);
+        if (location == null && mProgram == 0) {
+            return -1;
+        } else if (location == null) {
+            location = mGL.glGetUniformLocation(mProgram, name);
+            mUniforms.put(name, location);
+        }
+        return location;
+    }
+}
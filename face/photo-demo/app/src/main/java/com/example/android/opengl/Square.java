@@ -15,13 +15,7 @@
  */
 package com.example.android.opengl;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
-
 import android.opengl.GLES20;
-import android.util.Log;
 
 /**
  * A two-dimensional square for use as a drawn object in OpenGL ES 2.0.
@@ -38,7 +32,8 @@ public class Square {
             // The matrix must be included as a modifier of gl_Position.
             // Note that the uMVPMatrix factor *must be first* in order
             // for the matrix multiplication product to be correct.
-            "  gl_Position = uMVPMatrix * vPosition * vec4(1, sin(t/10.0) + 1, 1, sin(t/100.0) + 2);" +
+            // t is in seconds
+            "  gl_Position = uMVPMatrix * vPosition * vec4(1, sin(t*6.0) + 1.0, 1, sin(t*0.6) + 2.0);" +
             "}";
 
     private final String fragmentShaderCode =
@@ -49,12 +44,14 @@ public class Square {
             "  gl_FragColor = vec4(0.2, 0.709803922, 0.898039216 * t, 1.0);" +
             "}";
 
-    private final FloatBuffer vertexBuffer;
-    private final ShortBuffer drawListBuffer;
-    private final int mProgram;
-    private int mPositionHandle;
-    private int mColorHandle;
-    private int mMVPMatrixHandle;
+    private final GL mGL;
+    private final Mesh mMesh;
+    private final int[] mAttributes;
+    private final ShaderProgram mProgram;
+    private final int mPositionHandle;
+    private final int mColorHandle;
+    private final int mMVPMatrixHandle;
+    private final int mTimeHandle;
 
     // number of coordinates per vertex in this array
     static final int COORDS_PER_VERTEX = 3;
@@ -66,93 +63,67 @@ public class Square {
 
     private final short drawOrder[] = { 0, 1, 2, 0, 3, 2 }; // order to draw vertices
 
-    private final int vertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
-
     float color[] = { 0.2f, 0.709803922f, 0.898039216f, 1.0f };
 
     /**
      * Sets up the drawing object data for use in an OpenGL ES context.
+     *
+     * @param gl - Calls of the current GL context.
+     * @param programs - Programs of the current GL context.
      */
-    public Square() {
-        // initialize vertex byte buffer for shape coordinates
-        ByteBuffer bb = ByteBuffer.allocateDirect(squareCoords.length * 4); // x4 ?
-        bb.order(ByteOrder.nativeOrder());
-        vertexBuffer = bb.asFloatBuffer();
-        vertexBuffer.put(squareCoords);
-        vertexBuffer.position(0);
-
-        // initialize byte buffer for the draw list
-        ByteBuffer dlb = ByteBuffer.allocateDirect(
-                // (# of coordinate values * 2 bytes per short)
-                drawOrder.length * 2);
-        dlb.order(ByteOrder.nativeOrder());
-        drawListBuffer = dlb.asShortBuffer();
-        drawListBuffer.put(drawOrder);
-        drawListBuffer.position(0);
-
-        // prepare shaders and OpenGL program
-        int vertexShader = MyGLRenderer.loadShader(
-                GLES20.GL_VERTEX_SHADER,
-                vertexShaderCode);
-        int fragmentShader = MyGLRenderer.loadShader(
-                GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderCode);
-
-        mProgram = GLES20.glCreateProgram();             // create empty OpenGL Program
-        GLES20.glAttachShader(mProgram, vertexShader);   // add the vertex shader to program
-        GLES20.glAttachShader(mProgram, fragmentShader); // add the fragment shader to program
-        GLES20.glLinkProgram(mProgram);                  // create OpenGL program executables
+    public Square(GL gl, ProgramCache programs) {
+        mGL = gl;
+
+        // upload the shape coordinates and the draw list to buffer objects once
+        MeshBuilder builder = new MeshBuilder(squareCoords.length / COORDS_PER_VERTEX,
+                drawOrder.length, COORDS_PER_VERTEX);
+        builder.put(squareCoords).index(drawOrder);
+        mMesh = Mesh.createStatic(gl, builder, GLES20.GL_TRIANGLES);
+
+        // get the shared program for these shaders, and look up its handles once
+        mProgram = programs.get(vertexShaderCode, fragmentShaderCode,
+                new String[] { "vPosition" }, new String[] { "vColor", "uMVPMatrix", "t" });
+        mPositionHandle = mProgram.getAttribLocation("vPosition");
+        mColorHandle = mProgram.getUniformLocation("vColor");
+        mMVPMatrixHandle = mProgram.getUniformLocation("uMVPMatrix");
+        mTimeHandle = mProgram.getUniformLocation("t");
+        mAttributes = new int[] { mPositionHandle };
     }
 
-    private float frameCount = 0;
     /**
      * Encapsulates the OpenGL ES instructions for drawing this shape.
      *
      * @param mvpMatrix - The Model View Project matrix in which to draw
      * this shape.
+     * @param time - Animation time in seconds, from a monotonic clock.
      */
-    public void draw(float[] mvpMatrix) {
-        // Add program to OpenGL environment
-        GLES20.glUseProgram(mProgram);
+    public void draw(float[] mvpMatrix, float time) {
+        if (!mProgram.isValid()) {
+            return;
+        }
 
-        // get handle to vertex shader's vPosition member
-        mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
-
-        // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-        // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(
-                mPositionHandle, COORDS_PER_VERTEX,
-                GLES20.GL_FLOAT, false,
-                vertexStride, vertexBuffer);
+        // Add program to OpenGL environment
+        mProgram.use();
 
-        // get handle to fragment shader's vColor member
-        mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
+        // Bind the square's buffers to the vertex attributes
+        mMesh.bind(mAttributes);
 
         // Set color for drawing the triangle
-        GLES20.glUniform4fv(mColorHandle, 1, color, 0);
+        mGL.glUniform4fv(mColorHandle, 1, color, 0);
 
-        // get handle to shape's transformation matrix
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-        MyGLRenderer.checkGlError("glGetUniformLocation");
         // Apply the projection and view transformation
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
-        MyGLRenderer.checkGlError("glUniformMatrix4fv");
+        mGL.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
+        MyGLRenderer.checkGlError(mGL, "glUniformMatrix4fv");
 
-        float t = frameCount++;
-        Log.d("GL", ">>>> t = " + t);
-        int timestampHandler = GLES20.glGetUniformLocation(mProgram, "t");
-        GLES20.glVertexAttrib1f(timestampHandler, t);
-        MyGLRenderer.checkGlError("t");
+        // t is a uniform, so it is set as one
+        mGL.glUniform1f(mTimeHandle, time);
+        MyGLRenderer.checkGlError(mGL, "glUniform1f");
 
         // Draw the square
-        GLES20.glDrawElements(
-                GLES20.GL_TRIANGLES, drawOrder.length,
-                GLES20.GL_UNSIGNED_SHORT, drawListBuffer);
+        mMesh.draw();
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        mMesh.unbind(mAttributes);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+
+/**
+ * Draws stickers as textured quads on top of a GL scene, one quad per {@link Placement}.
+ * <p>
+ * Each sticker bitmap is uploaded to a texture once, lazily on the GL thread, and kept until the
+ * GL context goes away; {@link #onSurfaceCreated} then forgets all GL objects and they are
+ * recreated from the retained bitmaps on the next draw. All quads share one program. Their corners
+ * are transformed to view pixels on the CPU and written into one dynamic vertex buffer per frame;
+ * since placements are sorted by sticker, each texture is bound once and all of its quads go out in
+ * a single draw call.
+ * <p>
+ * Stickers and placements may be set from any thread; everything else runs on the GL thread.
+ */
+public class StickerCompositor {
+
+    private static final String VERTEX_SHADER_CODE =
+            "uniform mat4 uMVPMatrix;" +
+            "attribute vec4 aPosition;" +
+            "attribute vec2 aTexCoord;" +
+            "varying vec2 vTexCoord;" +
+            "void main() {" +
+            "  gl_Position = uMVPMatrix * aPosition;" +
+            "  vTexCoord = aTexCoord;" +
+            "}";
+
+    private static final String FRAGMENT_SHADER_CODE =
+            "precision mediump float;" +
+            "uniform sampler2D uTexture;" +
+            "varying vec2 vTexCoord;" +
+            "void main() {" +
+            "  gl_FragColor = texture2D(uTexture, vTexCoord);" +
+            "}";
+
+    static final int COORDS_PER_VERTEX = 2;
+    static final int TEX_COORDS_PER_VERTEX = 2;
+    static final int VERTICES_PER_QUAD = 4;
+    static final int INDICES_PER_QUAD = 6;
+
+    // Quads drawn per batch; more placements take several batches.
+    static final int MAX_QUADS = 256;
+
+    // Corners of the unit quad around the origin, in the order MeshBuilder.quadIndices expects,
+    // with the texture's top row at the top in the y-down pixel projection.
+    static final float QUAD_CORNERS[] = {
+            // x, y, s, t
+            -0.5f, -0.5f, 0.0f, 0.0f,   // top left
+            -0.5f,  0.5f, 0.0f, 1.0f,   // bottom left
+             0.5f, -0.5f, 1.0f, 0.0f,   // top right
+             0.5f,  0.5f, 1.0f, 1.0f }; // bottom right
+
+    /**
+     * Where to draw one sticker: its center and size in view pixels and its clockwise rotation in
+     * degrees. Immutable.
+     */
+    public static class Placement {
+        final int sticker;
+        final float centerX;
+        final float centerY;
+        final float width;
+        final float height;
+        final float rotation;
+
+        public Placement(int sticker, float centerX, float centerY, float width, float height,
+                         float rotation) {
+            this.sticker = sticker;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+        }
+    }
+
+    private static final Comparator<Placement> BY_STICKER = new Comparator<Placement>() {
+        @Override
+        public int compare(Placement lhs, Placement rhs) {
+            return lhs.sticker < rhs.sticker ? -1 : (lhs.sticker == rhs.sticker ? 0 : 1);
+        }
+    };
+
+    private final GL mGL;
+    private final List<Bitmap> mBitmaps = new ArrayList<Bitmap>();
+    private int[] mTextures = new int[0];
+    private volatile Placement[] mPlacements = new Placement[0];
+
+    private final MeshBuilder mBatch = new MeshBuilder(MAX_QUADS * VERTICES_PER_QUAD,
+            MAX_QUADS * INDICES_PER_QUAD, COORDS_PER_VERTEX, TEX_COORDS_PER_VERTEX);
+    private Mesh mMesh;
+    private ShaderProgram mProgram;
+    private int mMVPMatrixHandle;
+    private int mTextureHandle;
+    private final int[] mAttributes = new int[2];
+
+    // Runs of consecutive quads with the same texture within the current batch.
+    private final int[] mRunTextures = new int[MAX_QUADS];
+    private final int[] mRunLengths = new int[MAX_QUADS];
+
+    private final float[] mProjectionMatrix = new float[16];
+
+    private int mTextureUploads;
+
+    /**
+     * @param gl - Calls of the GL thread the compositor draws on.
+     */
+    public StickerCompositor(GL gl) {
+        mGL = gl;
+    }
+
+    /**
+     * Adds a sticker and returns its id for use in {@link Placement}s. The bitmap is kept for as
+     * long as the compositor, so that it can be uploaded again after the GL context is lost.
+     */
+    public synchronized int addSticker(Bitmap bitmap) {
+        mBitmaps.add(bitmap);
+        return mBitmaps.size() - 1;
+    }
+
+    /**
+     * Replaces the quads drawn from the next frame on.
+     */
+    public void setPlacements(List<Placement> placements) {
+        Placement[] sorted = placements.toArray(new Placement[placements.size()]);
+        // Stable, so quads of the same sticker keep their relative order.
+        Arrays.sort(sorted, BY_STICKER);
+        mPlacements = sorted;
+    }
+
+    /**
+     * Called from {@link MyGLRenderer#onSurfaceCreated} with a new GL context. Objects of the
+     * previous context are gone with it, so they are forgotten rather than deleted.
+     *
+     * @param programs programs of the new context
+     */
+    public void onSurfaceCreated(ProgramCache programs) {
+        synchronized (this) {
+            mTextures = new int[0];
+        }
+
+        mProgram = programs.get(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE,
+                new String[] { "aPosition", "aTexCoord" },
+                new String[] { "uMVPMatrix", "uTexture" });
+        mAttributes[0] = mProgram.getAttribLocation("aPosition");
+        mAttributes[1] = mProgram.getAttribLocation("aTexCoord");
+        mMVPMatrixHandle = mProgram.getUniformLocation("uMVPMatrix");
+        mTextureHandle = mProgram.getUniformLocation("uTexture");
+
+        // Every batch uses the same index pattern, so only the vertices change per frame.
+        mBatch.reset();
+        mBatch.quadIndices(0, MAX_QUADS);
+        mMesh = Mesh.createDynamic(mGL, mBatch, GLES20.GL_TRIANGLES);
+    }
+
+    /**
+     * Sets up a projection in view pixels, with the origin at the top left like the Canvas based
+     * overlays.
+     */
+    public void onSurfaceChanged(int width, int height) {
+        Matrix.orthoM(mProjectionMatrix, 0, 0, width, height, 0, -1, 1);
+    }
+
+    /**
+     * Draws all placements over the current frame.
+     */
+    public void draw() {
+        Placement[] placements = mPlacements;
+        if (placements.length == 0 || !mProgram.isValid()) {
+            return;
+        }
+
+        mProgram.use();
+        mGL.glEnable(GLES20.GL_BLEND);
+        // GLUtils uploads premultiplied alpha.
+        mGL.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGL.glUniform1i(mTextureHandle, 0);
+        // The corners are already in view pixels.
+        mGL.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mProjectionMatrix, 0);
+
+        mMesh.bind(mAttributes);
+        for (int first = 0; first < placements.length; first += MAX_QUADS) {
+            drawBatch(placements, first, Math.min(placements.length, first + MAX_QUADS));
+        }
+        mMesh.unbind(mAttributes);
+        mGL.glDisable(GLES20.GL_BLEND);
+    }
+
+    /**
+     * Writes the quads of placements {@code from} to {@code to} into the vertex buffer and draws
+     * them with one call per run of equal textures.
+     */
+    private void drawBatch(Placement[] placements, int from, int to) {
+        mBatch.reset();
+        int runs = 0;
+        int quads = 0;
+        int lastSticker = -1;
+        for (int i = from; i < to; ++i) {
+            Placement placement = placements[i];
+            int texture = texture(placement.sticker);
+            if (texture == 0) {
+                continue;
+            }
+            if (placement.sticker != lastSticker) {
+                mRunTextures[runs] = texture;
+                mRunLengths[runs] = 0;
+                runs++;
+                lastSticker = placement.sticker;
+            }
+            putQuad(placement, mBatch);
+            mRunLengths[runs - 1]++;
+            quads++;
+        }
+        if (quads == 0) {
+            return;
+        }
+        mMesh.update(mBatch);
+
+        int firstQuad = 0;
+        for (int run = 0; run < runs; ++run) {
+            mGL.glBindTexture(GLES20.GL_TEXTURE_2D, mRunTextures[run]);
+            mMesh.drawElements(firstQuad * INDICES_PER_QUAD, mRunLengths[run] * INDICES_PER_QUAD);
+            firstQuad += mRunLengths[run];
+        }
+    }
+
+    /**
+     * Returns the number of texture uploads so far, one per sticker and GL context.
+     */
+    public int getTextureUploadCount() {
+        return mTextureUploads;
+    }
+
+    /**
+     * Appends the four corners of the placement, transformed to view pixels, with their texture
+     * coordinates. The transform is translate * rotate * scale applied to the unit quad, clockwise
+     * on screen since the pixel projection flips the y axis.
+     */
+    static void putQuad(Placement placement, MeshBuilder builder) {
+        double radians = Math.toRadians(placement.rotation);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        for (int i = 0; i < QUAD_CORNERS.length; i += 4) {
+            float x = QUAD_CORNERS[i] * placement.width;
+            float y = QUAD_CORNERS[i + 1] * placement.height;
+            builder.put(placement.centerX + x * cos - y * sin,
+                    placement.centerY + x * sin + y * cos,
+                    QUAD_CORNERS[i + 2], QUAD_CORNERS[i + 3]);
+        }
+    }
+
+    /**
+     * Returns the texture of a sticker, uploading it first if this context doesn't have it yet.
+     * Returns 0 for unknown stickers.
+     */
+    private int texture(int sticker) {
+        Bitmap bitmap;
+        synchronized (this) {
+            if (sticker < 0 || sticker >= mBitmaps.size()) {
+                return 0;
+            }
+            if (sticker < mTextures.length && mTextures[sticker] != 0) {
+                return mTextures[sticker];
+            }
+            if (mTextures.length < mBitmaps.size()) {
+                mTextures = Arrays.copyOf(mTextures, mBitmaps.size());
+            }
+            bitmap = mBitmaps.get(sticker);
+        }
+
+        int[] name = new int[1];
+        mGL.glGenTextures(1, name, 0);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, name[0]);
+        mGL.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                GLES20.GL_LINEAR);
+        mGL.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER,
+                GLES20.GL_LINEAR);
+        mGL.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S,
+                GLES20.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T,
+                GLES20.GL_CLAMP_TO_EDGE);
+        mGL.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        MyGLRenderer.checkGlError(mGL, "texImage2D");
+        mTextureUploads++;
+
+        synchronized (this) {
+            mTextures[sticker] = name[0];
+        }
+        return name[0];
+    }
+}
@@ -15,10 +15,6 @@
  */
 package com.example.android.opengl;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-
 import android.opengl.GLES20;
 
 /**
@@ -45,11 +41,13 @@ public class Triangle {
             "  gl_FragColor = vColor;" +
             "}";
 
-    private final FloatBuffer vertexBuffer;
-    private final int mProgram;
-    private int mPositionHandle;
-    private int mColorHandle;
-    private int mMVPMatrixHandle;
+    private final GL mGL;
+    private final Mesh mMesh;
+    private final int[] mAttributes;
+    private final ShaderProgram mProgram;
+    private final int mPositionHandle;
+    private final int mColorHandle;
+    private final int mMVPMatrixHandle;
 
     // number of coordinates per vertex in this array
     static final int COORDS_PER_VERTEX = 3;
@@ -60,39 +58,30 @@ public class Triangle {
             0.5f, -0.311004243f, 0.0f    // bottom right
     };
     private final int vertexCount = triangleCoords.length / COORDS_PER_VERTEX;
-    private final int vertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
 
     float color[] = { 0.63671875f, 0.76953125f, 0.22265625f, 0.0f };
 
     /**
      * Sets up the drawing object data for use in an OpenGL ES context.
+     *
+     * @param gl - Calls of the current GL context.
+     * @param programs - Programs of the current GL context.
      */
-    public Triangle() {
-        // initialize vertex byte buffer for shape coordinates
-        ByteBuffer bb = ByteBuffer.allocateDirect(
-                // (number of coordinate values * 4 bytes per float)
-                triangleCoords.length * 4);
-        // use the device hardware's native byte order
-        bb.order(ByteOrder.nativeOrder());
-
-        // create a floating point buffer from the ByteBuffer
-        vertexBuffer = bb.asFloatBuffer();
-        // add the coordinates to the FloatBuffer
-        vertexBuffer.put(triangleCoords);
-        // set the buffer to read the first coordinate
-        vertexBuffer.position(0);
-
-        // prepare shaders and OpenGL program
-        int vertexShader = MyGLRenderer.loadShader(
-                GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-        int fragmentShader = MyGLRenderer.loadShader(
-                GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
-
-        mProgram = GLES20.glCreateProgram();             // create empty OpenGL Program
-        GLES20.glAttachShader(mProgram, vertexShader);   // add the vertex shader to program
-        GLES20.glAttachShader(mProgram, fragmentShader); // add the fragment shader to program
-        GLES20.glLinkProgram(mProgram);                  // create OpenGL program executables
-
+    public Triangle(GL gl, ProgramCache programs) {
+        mGL = gl;
+
+        // upload the shape coordinates to a buffer object once
+        MeshBuilder builder = new MeshBuilder(vertexCount, 0, COORDS_PER_VERTEX);
+        builder.put(triangleCoords);
+        mMesh = Mesh.createStatic(gl, builder, GLES20.GL_TRIANGLES);
+
+        // get the shared program for these shaders, and look up its handles once
+        mProgram = programs.get(vertexShaderCode, fragmentShaderCode,
+                new String[] { "vPosition" }, new String[] { "vColor", "uMVPMatrix" });
+        mPositionHandle = mProgram.getAttribLocation("vPosition");
+        mColorHandle = mProgram.getUniformLocation("vColor");
+        mMVPMatrixHandle = mProgram.getUniformLocation("uMVPMatrix");
+        mAttributes = new int[] { mPositionHandle };
     }
 
     /**
@@ -102,40 +91,28 @@ public class Triangle {
      * this shape.
      */
     public void draw(float[] mvpMatrix) {
-        // Add program to OpenGL environment
-        GLES20.glUseProgram(mProgram);
+        if (!mProgram.isValid()) {
+            return;
+        }
 
-        // get handle to vertex shader's vPosition member
-        mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
-
-        // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-        // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(
-                mPositionHandle, COORDS_PER_VERTEX,
-                GLES20.GL_FLOAT, false,
-                vertexStride, vertexBuffer);
+        // Add program to OpenGL environment
+        mProgram.use();
 
-        // get handle to fragment shader's vColor member
-        mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
+        // Bind the triangle's buffer to the vertex attributes
+        mMesh.bind(mAttributes);
 
         // Set color for drawing the triangle
-        GLES20.glUniform4fv(mColorHandle, 1, color, 0);
-
-        // get handle to shape's transformation matrix
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-        MyGLRenderer.checkGlError("glGetUniformLocation");
+        mGL.glUniform4fv(mColorHandle, 1, color, 0);
 
         // Apply the projection and view transformation
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
-        MyGLRenderer.checkGlError("glUniformMatrix4fv");
+        mGL.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
+        MyGLRenderer.checkGlError(mGL, "glUniformMatrix4fv");
 
         // Draw the triangle
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
+        mMesh.draw();
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        mMesh.unbind(mAttributes);
     }
 
 }
@@ -20,6 +20,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PointF;
 import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.util.SparseArray;
@@ -28,52 +29,117 @@ import android.view.View;
 import com.google.android.gms.vision.face.Face;
 import com.google.android.gms.vision.face.Landmark;
 
+import java.util.List;
+
 /**
  * View which displays a bitmap containing a face along with overlay graphics that identify the
- * locations of detected facial landmarks.
+ * locations of detected facial landmarks.<p>
+ *
+ * The bitmap shown and the one the faces were detected in may both be subsampled from the source
+ * image; everything is laid out in source image coordinates.  Very large photos come as a
+ * {@link TiledImage} instead of a bitmap; then the canvas is scaled to source coordinates and only
+ * the tiles within the clip are drawn, with the landmarks on top in the same space.
  */
-public class FaceView extends View {
+public class FaceView extends View implements TiledImage.Listener {
+
+    private final Rect mClipBounds = new Rect();
+    private final Rect mVisible = new Rect();
+    private final Rect mDestBounds = new Rect();
+    private final Paint mLandmarkPaint = new Paint();
     private Bitmap mBitmap;
+    private TiledImage mTiles;
+    private int mSourceWidth;
+    private int mSourceHeight;
+    private float mFaceScale;
     private SparseArray<Face> mFaces;
 
     public FaceView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        mLandmarkPaint.setColor(Color.GREEN);
+        mLandmarkPaint.setStyle(Paint.Style.STROKE);
     }
 
     /**
-     * Sets the bitmap background and the associated face detections.
+     * Sets the bitmap background and the face detections made in the photo's detection bitmap.
      */
-    void setContent(Bitmap bitmap, SparseArray<Face> faces) {
-        mBitmap = bitmap;
+    void setContent(PhotoDecoder.Result photo, SparseArray<Face> faces) {
+        if (mTiles != null && mTiles != photo.tiles) {
+            mTiles.setListener(null);
+            mTiles.release();
+        }
+        mTiles = photo.tiles;
+        if (mTiles != null) {
+            mTiles.setListener(this);
+        }
+        mBitmap = photo.displayBitmap;
+        mSourceWidth = photo.sourceWidth;
+        mSourceHeight = photo.sourceHeight;
+        mFaceScale = photo.detectionScale;
         mFaces = faces;
         invalidate();
     }
 
+    @Override
+    public void onTileLoaded() {
+        invalidate();
+    }
+
+    /**
+     * Returns the bitmap currently shown, or null if there is none or the photo is tiled.
+     */
+    Bitmap getBitmap() {
+        return mBitmap;
+    }
+
     /**
      * Draws the bitmap background and the associated face landmarks.
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if ((mBitmap != null) && (mFaces != null)) {
+        if (mFaces == null) {
+            return;
+        }
+        if (mTiles != null) {
+            drawTiles(canvas);
+        } else if (mBitmap != null) {
             double scale = drawBitmap(canvas);
-            drawFaceAnnotations(canvas, scale);
+            drawFaceAnnotations(canvas, scale * mFaceScale, 1);
         }
     }
 
     /**
-     * Draws the bitmap background, scaled to the device size.  Returns the scale for future use in
-     * positioning the facial landmark graphics.
+     * Draws the visible tiles and the landmarks in source image coordinates, scaled to fit the
+     * view.
+     */
+    private void drawTiles(Canvas canvas) {
+        float scale = Math.min((float) canvas.getWidth() / mSourceWidth,
+                (float) canvas.getHeight() / mSourceHeight);
+        canvas.getClipBounds(mClipBounds);
+        mVisible.set((int) (mClipBounds.left / scale), (int) (mClipBounds.top / scale),
+                (int) Math.ceil(mClipBounds.right / scale),
+                (int) Math.ceil(mClipBounds.bottom / scale));
+
+        int saveCount = canvas.save();
+        canvas.scale(scale, scale);
+        mTiles.draw(canvas, scale, mVisible);
+        drawFaceAnnotations(canvas, mFaceScale, 1 / scale);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Draws the bitmap background, scaled to the device size.  Returns the scale from source image
+     * coordinates to the view for future use in positioning the facial landmark graphics.
      */
     private double drawBitmap(Canvas canvas) {
         double viewWidth = canvas.getWidth();
         double viewHeight = canvas.getHeight();
-        double imageWidth = mBitmap.getWidth();
-        double imageHeight = mBitmap.getHeight();
+        double imageWidth = mSourceWidth;
+        double imageHeight = mSourceHeight;
         double scale = Math.min(viewWidth / imageWidth, viewHeight / imageHeight);
 
-        Rect destBounds = new Rect(0, 0, (int)(imageWidth * scale), (int)(imageHeight * scale));
-        canvas.drawBitmap(mBitmap, null, destBounds, null);
+        mDestBounds.set(0, 0, (int)(imageWidth * scale), (int)(imageHeight * scale));
+        canvas.drawBitmap(mBitmap, null, mDestBounds, null);
         return scale;
     }
 
@@ -84,19 +150,20 @@ public class FaceView extends View {
      * Note that eye landmarks are defined to be the midpoint between the detected eye corner
      * positions, which tends to place the eye landmarks at the lower eyelid rather than at the
      * pupil position.
+     *
+     * @param scale maps landmark positions to canvas coordinates
+     * @param pixelSize the size of a view pixel in canvas coordinates
      */
-    private void drawFaceAnnotations(Canvas canvas, double scale) {
-        Paint paint = new Paint();
-        paint.setColor(Color.GREEN);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(2);
+    private void drawFaceAnnotations(Canvas canvas, double scale, float pixelSize) {
+        mLandmarkPaint.setStrokeWidth(2 * pixelSize);
 
         for (int i = 0; i < mFaces.size(); ++i) {
-            Face face = mFaces.valueAt(i);
-            for (Landmark landmark : face.getLandmarks()) {
-                int cx = (int) (landmark.getPosition().x * scale);
-                int cy = (int) (landmark.getPosition().y * scale);
-                canvas.drawCircle(cx, cy, 3, paint);
+            List<Landmark> landmarks = mFaces.valueAt(i).getLandmarks();
+            for (int j = 0; j < landmarks.size(); ++j) {
+                PointF position = landmarks.get(j).getPosition();
+                float cx = (float) (position.x * scale);
+                float cy = (float) (position.y * scale);
+                canvas.drawCircle(cx, cy, 3 * pixelSize, mLandmarkPaint);
             }
         }
     }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.photo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.samples.vision.face.common.BitmapPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a photo at no more than the resolution it is needed at, however large the source is.
+ * The bounds are read first; then one bitmap is decoded for face detection, subsampled towards a
+ * target length of its longest edge, and one for display, subsampled towards the size it is
+ * shown at.  When both come out at the same sample size they share one bitmap.<p>
+ *
+ * Very large images are not decoded for display at all but opened as a {@link TiledImage}, which
+ * decodes only the parts that are drawn.
+ */
+class PhotoDecoder {
+    private static final String TAG = "PhotoDecoder";
+
+    /**
+     * A decoded photo.  Coordinates found in the detection bitmap map back to the source image by
+     * multiplying with {@link #detectionScale}.  Exactly one of {@link #displayBitmap} and
+     * {@link #tiles} is set.
+     */
+    static class Result {
+        final Bitmap detectionBitmap;
+        final Bitmap displayBitmap;
+        final TiledImage tiles;
+        final int sourceWidth;
+        final int sourceHeight;
+        final float detectionScale;
+        final long decodeMillis;
+
+        Result(Bitmap detectionBitmap, Bitmap displayBitmap, TiledImage tiles, int sourceWidth,
+               int sourceHeight, long decodeMillis) {
+            this.detectionBitmap = detectionBitmap;
+            this.displayBitmap = displayBitmap;
+            this.tiles = tiles;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.detectionScale = (float) sourceWidth / detectionBitmap.getWidth();
+            this.decodeMillis = decodeMillis;
+        }
+    }
+
+    private final BitmapPool mPool;
+    private final int mDetectionSize;
+    private final int mDisplayWidth;
+    private final int mDisplayHeight;
+    private final long mTiledMinPixels;
+    private final int mMaxTileBytes;
+
+    /**
+     * @param detectionSize longest edge, in pixels, wanted for detection
+     * @param displayWidth width the photo is shown at
+     * @param displayHeight height the photo is shown at
+     * @param tiledMinPixels source size, in pixels, from which on photos are shown tiled
+     * @param maxTileBytes bound for the tile cache of a tiled photo
+     */
+    PhotoDecoder(BitmapPool pool, int detectionSize, int displayWidth, int displayHeight,
+                 long tiledMinPixels, int maxTileBytes) {
+        mPool = pool;
+        mDetectionSize = detectionSize;
+        mDisplayWidth = displayWidth;
+        mDisplayHeight = displayHeight;
+        mTiledMinPixels = tiledMinPixels;
+        mMaxTileBytes = maxTileBytes;
+    }
+
+    Result decode(BitmapPool.StreamOpener opener) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        InputStream stream = opener.open();
+        try {
+            BitmapFactory.decodeStream(stream, null, bounds);
+        } finally {
+            stream.close();
+        }
+        int width = bounds.outWidth;
+        int height = bounds.outHeight;
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Not an image");
+        }
+
+        int detectionSample = sampleSize((float) Math.max(width, height) / mDetectionSize);
+        Bitmap detection = decode(opener, detectionSample);
+
+        TiledImage tiles = null;
+        if ((long) width * height >= mTiledMinPixels && TiledImage.isSupported()) {
+            try {
+                tiles = TiledImage.open(opener, mPool, mMaxTileBytes);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to decode in tiles, decoding for display instead", e);
+            }
+        }
+
+        Bitmap display = null;
+        if (tiles == null) {
+            int displaySample = sampleSize(Math.max((float) width / mDisplayWidth,
+                    (float) height / mDisplayHeight));
+            display = (displaySample == detectionSample)
+                    ? detection : decode(opener, displaySample);
+        }
+        return new Result(detection, display, tiles, width, height,
+                SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Releases the detection bitmap once detection is done, unless it is also the display bitmap.
+     */
+    void releaseDetectionBitmap(Result result) {
+        if (result.detectionBitmap != result.displayBitmap) {
+            mPool.put(result.detectionBitmap);
+        }
+    }
+
+    private Bitmap decode(BitmapPool.StreamOpener opener, int sampleSize) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = mPool.decodeStream(opener, options);
+        if (bitmap == null) {
+            throw new IOException("Unable to decode image");
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the largest power of two that doesn't exceed the given downscale ratio.
+     */
+    static int sampleSize(float ratio) {
+        int sampleSize = 1;
+        while (sampleSize * 2 <= ratio) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -24,6 +24,8 @@ import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.VideoView;
 
+import com.google.android.gms.samples.vision.face.common.BitmapPool;
+
 
 public class PhotoIntentActivity extends Activity {
 
@@ -35,6 +37,8 @@ public class PhotoIntentActivity extends Activity {
 	private static final String IMAGEVIEW_VISIBILITY_STORAGE_KEY = "imageviewvisibility";
 	private ImageView mImageView;
 	private Bitmap mImageBitmap;
+	private Bitmap mPicBitmap;
+	private final BitmapPool mPool = BitmapPool.getInstance();
 
 	private static final String VIDEO_STORAGE_KEY = "viewvideo";
 	private static final String VIDEOVIEW_VISIBILITY_STORAGE_KEY = "videoviewvisibility";
@@ -120,18 +124,27 @@ public class PhotoIntentActivity extends Activity {
 		/* Set bitmap options to scale the image decode target */
 		bmOptions.inJustDecodeBounds = false;
 		bmOptions.inSampleSize = scaleFactor;
-		bmOptions.inPurgeable = true;
 
-		/* Decode the JPEG file into a Bitmap */
-		Bitmap bitmap = BitmapFactory.decodeFile(mCurrentPhotoPath, bmOptions);
+		/* Decode the JPEG file into a Bitmap, reusing pooled memory where possible */
+		Bitmap bitmap = mPool.decodeFile(mCurrentPhotoPath, bmOptions);
 		
 		/* Associate the Bitmap to the ImageView */
 		mImageView.setImageBitmap(bitmap);
+		releasePic();
+		mPicBitmap = bitmap;
 		mVideoUri = null;
 		mImageView.setVisibility(View.VISIBLE);
 		mVideoView.setVisibility(View.INVISIBLE);
 	}
 
+	/* Returns the previously decoded photo to the pool once it is no longer shown */
+	private void releasePic() {
+		if (mPicBitmap != null) {
+			mPool.put(mPicBitmap);
+			mPicBitmap = null;
+		}
+	}
+
 	private void galleryAddPic() {
 		    Intent mediaScanIntent = new Intent("android.intent.action.MEDIA_SCANNER_SCAN_FILE");
 			File f = new File(mCurrentPhotoPath);
@@ -175,6 +188,7 @@ public class PhotoIntentActivity extends Activity {
 		Bundle extras = intent.getExtras();
 		mImageBitmap = (Bitmap) extras.get("data");
 		mImageView.setImageBitmap(mImageBitmap);
+		releasePic();
 		mVideoUri = null;
 		mImageView.setVisibility(View.VISIBLE);
 		mVideoView.setVisibility(View.INVISIBLE);
@@ -18,18 +18,22 @@ package com.google.android.gms.samples.vision.face.photo;
 import android.app.Activity;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.SparseArray;
 import android.view.View;
 
+import com.google.android.gms.samples.vision.face.common.BitmapPool;
+import com.google.android.gms.samples.vision.face.common.CaptureScheduler;
 import com.google.android.gms.vision.Frame;
 import com.google.android.gms.vision.face.Face;
 import com.google.android.gms.vision.face.FaceDetector;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -45,17 +49,23 @@ import bolts.Task;
 public class PhotoViewerActivity extends Activity {
     private static final String TAG = "PhotoViewerActivity";
     private static final int SELECT_PHOTO = 100;
+    // Longest edge of the bitmap faces are detected in; landmarks stay accurate well below this.
+    private static final int DETECTION_SIZE = 1024;
+    // Photos from this many pixels on are shown in tiles instead of as one bitmap.
+    private static final long TILED_MIN_PIXELS = 16 * 1024 * 1024;
     private FaceView overlay;
     private FaceDetector detector;
+    private final BitmapPool mPool = BitmapPool.getInstance();
+    private PhotoDecoder mDecoder;
+    // Only the latest pick is worth decoding; one waits while another decodes.
+    private final CaptureScheduler mScheduler = new CaptureScheduler("photo", 1, 1,
+            CaptureScheduler.OverflowPolicy.DROP_OLDEST);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_photo_viewer);
 
-        InputStream stream = getResources().openRawResource(R.raw.face);
-        Bitmap bitmap = BitmapFactory.decodeStream(stream);
-
         // A new face detector is created for detecting the face and its landmarks.
         //
         // Setting "tracking enabled" to false is recommended for detection with unrelated
@@ -71,9 +81,24 @@ public class PhotoViewerActivity extends Activity {
                 .setLandmarkType(FaceDetector.ALL_LANDMARKS)
                 .build();
 
-        // Create a frame from the bitmap and run face detection on the frame.
-        Frame frame = new Frame.Builder().setBitmap(bitmap).build();
-        SparseArray<Face> faces = detector.detect(frame);
+        // The photo is shown full screen at most, so it is never decoded beyond the screen size.
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        mDecoder = new PhotoDecoder(mPool, DETECTION_SIZE, metrics.widthPixels,
+                metrics.heightPixels, TILED_MIN_PIXELS,
+                (int) (Runtime.getRuntime().maxMemory() / 8));
+
+        PhotoDecoder.Result photo;
+        try {
+            photo = mDecoder.decode(new BitmapPool.StreamOpener() {
+                @Override
+                public InputStream open() {
+                    return getResources().openRawResource(R.raw.face);
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to decode the bundled photo", e);
+        }
+        SparseArray<Face> faces = detect(photo, "bundled photo");
 
         if (!detector.isOperational()) {
             // Note: The first time that an app using face API is installed on a device, GMS will
@@ -88,7 +113,7 @@ public class PhotoViewerActivity extends Activity {
         }
 
         overlay = (FaceView) findViewById(R.id.faceView);
-        overlay.setContent(bitmap, faces);
+        overlay.setContent(photo, faces);
 
         findViewById(R.id.btn_select_photo).setOnClickListener(new View.OnClickListener() {
             @Override
@@ -100,9 +125,35 @@ public class PhotoViewerActivity extends Activity {
         });
     }
 
+    /**
+     * Runs face detection on the photo's detection bitmap, which is released afterwards.  The
+     * faces are in detection bitmap coordinates.
+     */
+    private SparseArray<Face> detect(PhotoDecoder.Result photo, String name) {
+        long start = SystemClock.elapsedRealtime();
+        Frame frame = new Frame.Builder().setBitmap(photo.detectionBitmap).build();
+        SparseArray<Face> faces = detector.detect(frame);
+        long detectMillis = SystemClock.elapsedRealtime() - start;
+
+        Log.d(TAG, "Decoded " + name + " (" + photo.sourceWidth + "x" + photo.sourceHeight
+                + ") in " + photo.decodeMillis + " ms, detected " + faces.size() + " faces at "
+                + photo.detectionBitmap.getWidth() + "x" + photo.detectionBitmap.getHeight()
+                + " in " + detectMillis + " ms, " + mPool);
+        mDecoder.releaseDetectionBitmap(photo);
+        return faces;
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Picks still waiting to be decoded are not shown anymore.
+        mScheduler.cancelAll();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mScheduler.shutdown();
         // Although detector may be used multiple times for different images, it should be released
         // when it is no longer needed in order to free native resources.
         detector.release();
@@ -113,26 +164,36 @@ public class PhotoViewerActivity extends Activity {
         switch(requestCode) {
             case SELECT_PHOTO:
                 if(resultCode == RESULT_OK) {
-                    final Capture<Bitmap> bitmapCapture = new Capture<>();
-                    Task.callInBackground(new Callable<SparseArray<Face>>() {
+                    final Capture<PhotoDecoder.Result> photoCapture = new Capture<>();
+                    mScheduler.submit(new Callable<SparseArray<Face>>() {
                         @Override
                         public SparseArray<Face> call() throws Exception {
                             final Uri imageUri = data.getData();
-                            final InputStream imageStream = getContentResolver().openInputStream(imageUri);
-                            final Bitmap bitmap = BitmapFactory.decodeStream(imageStream);
-                            bitmapCapture.set(bitmap);
-                            Frame frame = new Frame.Builder().setBitmap(bitmap).build();
-                            return detector.detect(frame);
+                            PhotoDecoder.Result photo = mDecoder.decode(
+                                    new BitmapPool.StreamOpener() {
+                                        @Override
+                                        public InputStream open() throws IOException {
+                                            return getContentResolver().openInputStream(imageUri);
+                                        }
+                                    });
+                            photoCapture.set(photo);
+                            return detect(photo, imageUri.toString());
                         }
                     }).onSuccess(new Continuation<SparseArray<Face>, Void>() {
                         @Override
                         public Void then(Task<SparseArray<Face>> task) throws Exception {
-                            overlay.setContent(bitmapCapture.get(), task.getResult());
+                            Bitmap previous = overlay.getBitmap();
+                            overlay.setContent(photoCapture.get(), task.getResult());
+                            // Lets the next pick decode into the bitmap that is no longer shown.
+                            mPool.put(previous);
                             return null;
                         }
                     }, Task.UI_THREAD_EXECUTOR).continueWith(new Continuation<Void, Void>() {
                         @Override
                         public Void then(Task<Void> task) throws Exception {
+                            if (task.isCancelled()) {
+                                Log.d(TAG, "Photo dropped, " + mScheduler);
+                            }
                             return null;
                         }
                     });
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.samples.vision.face.photo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import com.google.android.gms.samples.vision.face.common.BitmapPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Large image that is decoded in tiles, only where and at the resolution it is drawn.<p>
+ *
+ * Tiles are {@link #TILE_SIZE} pixels square once decoded and cover a power of two times that in
+ * the source image, picked from the scale the image is drawn at.  Decoded tiles are kept in an LRU
+ * cache bounded in bytes, so memory use depends on the view size rather than on the source size.
+ * Missing tiles are decoded in the background through a {@link BitmapRegionDecoder}; until they
+ * arrive a small preview of the whole image is drawn in their place.  A tile that fails to decode
+ * is remembered and keeps showing the preview; it is not decoded again on every draw.<p>
+ *
+ * Drawing happens in source image coordinates, so callers scale the canvas to the view and can
+ * draw their own overlays in the same space.  Region decoding needs Gingerbread MR1; check
+ * {@link #isSupported} first.  All methods except {@link #open} must be called on the UI thread.
+ */
+class TiledImage {
+    private static final int TILE_SIZE = 256;
+    private static final int PREVIEW_SIZE = 512;
+
+    /**
+     * Told when a tile has been decoded and the image should be drawn again.
+     */
+    interface Listener {
+        void onTileLoaded();
+    }
+
+    private final BitmapRegionDecoder mDecoder;
+    private final BitmapPool mPool;
+    private final int mWidth;
+    private final int mHeight;
+    private final Bitmap mPreview;
+    private final LruCache<TileKey, Bitmap> mCache;
+    private final Set<TileKey> mPending = new HashSet<>();
+    // Tiles whose decode failed; a corrupt region fails the same way every time.
+    private final Set<TileKey> mFailed = new HashSet<>();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mTileBounds = new Rect();
+    private final Rect mPreviewBounds = new Rect();
+    // Reused for cache lookups, so that drawing cached tiles doesn't allocate keys.
+    private final TileKey mLookupKey = new TileKey();
+    private Listener mListener;
+    private boolean mReleased;
+    private int mDecodeCount;
+
+    private TiledImage(BitmapRegionDecoder decoder, BitmapPool pool, int maxBytes) {
+        mDecoder = decoder;
+        mPool = pool;
+        mWidth = decoder.getWidth();
+        mHeight = decoder.getHeight();
+        mCache = new LruCache<TileKey, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(TileKey key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, TileKey key, Bitmap oldValue,
+                                        Bitmap newValue) {
+                mPool.put(oldValue);
+            }
+        };
+
+        int previewSample = PhotoDecoder.sampleSize(
+                (float) Math.max(mWidth, mHeight) / PREVIEW_SIZE);
+        mPreview = decodeRegion(new Rect(0, 0, mWidth, mHeight), previewSample);
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1;
+    }
+
+    /**
+     * Opens the image for tiled decoding, which includes decoding the preview.  Throws an
+     * IOException if the format can't be region decoded.
+     *
+     * @param maxBytes upper bound for the bytes held by decoded tiles
+     */
+    static TiledImage open(BitmapPool.StreamOpener opener, BitmapPool pool, int maxBytes)
+            throws IOException {
+        InputStream stream = opener.open();
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(stream, false);
+        } finally {
+            stream.close();
+        }
+        return new TiledImage(decoder, pool, maxBytes);
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Draws the visible part of the image into a canvas set up for source image coordinates.
+     *
+     * @param scale the size of a source pixel on screen, used to pick the tile resolution
+     * @param visible the area of the source image that is visible
+     */
+    void draw(Canvas canvas, float scale, Rect visible) {
+        if (mReleased) {
+            return;
+        }
+        int sampleSize = PhotoDecoder.sampleSize(1 / scale);
+        int span = TILE_SIZE * sampleSize;
+        int firstColumn = Math.max(visible.left, 0) / span;
+        int lastColumn = (Math.min(visible.right, mWidth) - 1) / span;
+        int firstRow = Math.max(visible.top, 0) / span;
+        int lastRow = (Math.min(visible.bottom, mHeight) - 1) / span;
+
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                mTileBounds.set(column * span, row * span, Math.min((column + 1) * span, mWidth),
+                        Math.min((row + 1) * span, mHeight));
+                mLookupKey.set(sampleSize, column, row);
+                Bitmap tile = mCache.get(mLookupKey);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, mTileBounds, mPaint);
+                } else {
+                    if (mPreview != null) {
+                        drawPreview(canvas, mTileBounds);
+                    }
+                    if (!mFailed.contains(mLookupKey)) {
+                        request(mLookupKey, sampleSize);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops pending decodes from being cached and frees the decoder and all tiles.
+     */
+    void release() {
+        mReleased = true;
+        mCache.evictAll();
+        mPool.put(mPreview);
+        mDecoder.recycle();
+    }
+
+    int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    int getMissCount() {
+        return mCache.missCount();
+    }
+
+    int getEvictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /**
+     * Returns the number of tiles that failed to decode and are no longer requested.
+     */
+    int getFailedCount() {
+        return mFailed.size();
+    }
+
+    /**
+     * Returns the number of tiles decoded so far; more than the misses only if tiles were evicted
+     * and needed again.
+     */
+    int getDecodeCount() {
+        return mDecodeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TiledImage{" + mWidth + "x" + mHeight + ", hits=" + getHitCount() + ", misses="
+                + getMissCount() + ", decodes=" + mDecodeCount + ", failed=" + mFailed.size()
+                + ", evictions=" + getEvictionCount() + ", cachedBytes=" + mCache.size() + "}";
+    }
+
+    private void drawPreview(Canvas canvas, Rect bounds) {
+        float previewScale = (float) mPreview.getWidth() / mWidth;
+        mPreviewBounds.set((int) (bounds.left * previewScale), (int) (bounds.top * previewScale),
+                (int) Math.ceil(bounds.right * previewScale),
+                (int) Math.ceil(bounds.bottom * previewScale));
+        canvas.drawBitmap(mPreview, mPreviewBounds, bounds, mPaint);
+    }
+
+    private void request(TileKey lookupKey, final int sampleSize) {
+        if (mPending.contains(lookupKey)) {
+            return;
+        }
+        final TileKey key = new TileKey();
+        key.set(lookupKey.mSampleSize, lookupKey.mColumn, lookupKey.mRow);
+        mPending.add(key);
+        final Rect region = new Rect(mTileBounds);
+        Task.callInBackground(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws Exception {
+                return decodeRegion(region, sampleSize);
+            }
+        }).continueWith(new Continuation<Bitmap, Void>() {
+            @Override
+            public Void then(Task<Bitmap> task) throws Exception {
+                mPending.remove(key);
+                Bitmap tile = task.getResult();
+                if (mReleased) {
+                    mPool.put(tile);
+                    return null;
+                }
+                if (tile == null) {
+                    mFailed.add(key);
+                    return null;
+                }
+                mDecodeCount++;
+                mCache.put(key, tile);
+                if (mListener != null) {
+                    mListener.onTileLoaded();
+                }
+                return null;
+            }
+        }, Task.UI_THREAD_EXECUTOR);
+    }
+
+    /**
+     * Decodes a region of the source image, into a pooled bitmap where the platform allows it.
+     * Returns null if the decoder has been released or the region couldn't be decoded.
+     */
+    private Bitmap decodeRegion(Rect region, int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap candidate = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // Reconfigured to the exact region size, which the region decoder requires.
+            candidate = mPool.get((region.width() + sampleSize - 1) / sampleSize,
+                    (region.height() + sampleSize - 1) / sampleSize, Bitmap.Config.ARGB_8888);
+            options.inBitmap = candidate;
+            options.inMutable = true;
+        }
+        try {
+            Bitmap tile = mDecoder.decodeRegion(region, options);
+            if (tile != candidate) {
+                // The decode failed or allocated anyway; the candidate is still unused.
+                mPool.put(candidate);
+            }
+            return tile;
+        } catch (IllegalArgumentException e) {
+            if (candidate == null) {
+                throw e;
+            }
+            options.inBitmap = null;
+            mPool.put(candidate);
+            return decodeRegionQuietly(region, options);
+        } catch (IllegalStateException e) {
+            // Released while this decode was queued.
+            mPool.put(candidate);
+            return null;
+        }
+    }
+
+    private Bitmap decodeRegionQuietly(Rect region, BitmapFactory.Options options) {
+        try {
+            return mDecoder.decodeRegion(region, options);
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Identifies a tile by its sample size and position in the grid for that sample size.
+     */
+    private static final class TileKey {
+        private int mSampleSize;
+        private int mColumn;
+        private int mRow;
+
+        void set(int sampleSize, int column, int row) {
+            mSampleSize = sampleSize;
+            mColumn = column;
+            mRow = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return mSampleSize == other.mSampleSize && mColumn == other.mColumn
+                    && mRow == other.mRow;
+        }
+
+        @Override
+        public int hashCode() {
+            return (mSampleSize * 31 + mColumn) * 31 + mRow;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameSchedulerTest {
+
+    private static final long MILLIS = 1000000L;
+
+    private final FakeClock mClock = new FakeClock();
+    private final List<Boolean> mChanges = new ArrayList<>();
+    private FrameScheduler mScheduler;
+
+    private static class FakeClock implements FrameScheduler.Clock {
+        long mNanos;
+
+        @Override
+        public long nanoTime() {
+            return mNanos;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // 50 fps is a 20 ms frame interval.
+        mScheduler = new FrameScheduler(mClock, 50, 100);
+        mScheduler.setCallback(new FrameScheduler.Callback() {
+            @Override
+            public void onAnimatingChanged(boolean animating) {
+                mChanges.add(animating);
+            }
+        });
+    }
+
+    private boolean frameAt(long millis) {
+        mClock.mNanos = millis * MILLIS;
+        return mScheduler.beginFrame();
+    }
+
+    @Test
+    public void idleUntilWoken() {
+        assertFalse(mScheduler.isAnimating());
+        assertFalse(frameAt(0));
+        assertEquals(0, mScheduler.nanosUntilNextFrame());
+        assertTrue(mChanges.isEmpty());
+
+        mScheduler.wake();
+        assertTrue(mScheduler.isAnimating());
+        assertEquals(Arrays.asList(true), mChanges);
+    }
+
+    @Test
+    public void framesArePacedToFrameInterval() {
+        mScheduler.wake();
+        assertEquals(0, mScheduler.nanosUntilNextFrame());
+        frameAt(0);
+
+        mClock.mNanos = 5 * MILLIS;
+        assertEquals(15 * MILLIS, mScheduler.nanosUntilNextFrame());
+        mClock.mNanos = 25 * MILLIS;
+        assertEquals(0, mScheduler.nanosUntilNextFrame());
+    }
+
+    @Test
+    public void animationTimeFollowsFrames() {
+        mScheduler.wake();
+        frameAt(0);
+        frameAt(20);
+        frameAt(40);
+
+        assertEquals(0.04f, mScheduler.getAnimationSeconds(), 1e-6f);
+    }
+
+    @Test
+    public void stallAdvancesAnimationByAtMostMaxStep() {
+        mScheduler = new FrameScheduler(mClock, 50, 10000);
+        mScheduler.wake();
+        frameAt(0);
+        frameAt(500);
+
+        assertEquals(0.1f, mScheduler.getAnimationSeconds(), 1e-6f);
+    }
+
+    @Test
+    public void goesIdleAfterTimeoutAndResumesWhereItStopped() {
+        mScheduler.wake();
+        assertTrue(frameAt(0));
+        assertTrue(frameAt(50));
+        assertFalse(frameAt(100));
+        assertEquals(Arrays.asList(true, false), mChanges);
+        float stopped = mScheduler.getAnimationSeconds();
+
+        // Time spent idle doesn't count.
+        mClock.mNanos = 5000 * MILLIS;
+        mScheduler.wake();
+        assertTrue(frameAt(5000));
+        assertEquals(stopped, mScheduler.getAnimationSeconds(), 1e-6f);
+        assertTrue(frameAt(5020));
+        assertEquals(stopped + 0.02f, mScheduler.getAnimationSeconds(), 1e-6f);
+    }
+
+    @Test
+    public void wakeExtendsTimeout() {
+        mScheduler.wake();
+        frameAt(0);
+        mClock.mNanos = 80 * MILLIS;
+        mScheduler.wake();
+
+        assertTrue(frameAt(100));
+        assertTrue(frameAt(160));
+        assertFalse(frameAt(180));
+        assertEquals(Arrays.asList(true, false), mChanges);
+    }
+
+    @Test
+    public void statsRecordIntervals() {
+        mScheduler = new FrameScheduler(mClock, 50, 10000);
+        mScheduler.wake();
+        frameAt(0);
+        frameAt(20);
+        frameAt(40);
+        frameAt(80);
+
+        assertEquals(3, mScheduler.getFrameCount());
+        assertEquals(80f / 3, mScheduler.getAverageFrameMillis(), 1e-3f);
+        assertEquals(40f, mScheduler.getWorstFrameMillis(), 1e-3f);
+        assertEquals(1, mScheduler.getLateFrameCount());
+
+        mScheduler.resetStats();
+        assertEquals(0, mScheduler.getFrameCount());
+        assertEquals(0f, mScheduler.getAverageFrameMillis(), 0f);
+        assertEquals(0, mScheduler.getLateFrameCount());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MeshBuilderTest {
+
+    private static float[] vertices(MeshBuilder builder) {
+        FloatBuffer buffer = builder.getVertexBuffer().duplicate();
+        buffer.flip();
+        float[] values = new float[buffer.remaining()];
+        buffer.get(values);
+        return values;
+    }
+
+    private static short[] indices(MeshBuilder builder) {
+        ShortBuffer buffer = builder.getIndexBuffer().duplicate();
+        buffer.flip();
+        short[] values = new short[buffer.remaining()];
+        buffer.get(values);
+        return values;
+    }
+
+    @Test
+    public void layoutFollowsComponents() {
+        MeshBuilder builder = new MeshBuilder(4, 6, 3, 2);
+
+        assertEquals(5, builder.getFloatsPerVertex());
+        assertArrayEquals(new int[] {3, 2}, builder.getComponents());
+        assertEquals(4, builder.getMaxVertexCount());
+        assertEquals(20, builder.getVertexBuffer().capacity());
+        assertEquals(6, builder.getIndexBuffer().capacity());
+    }
+
+    @Test
+    public void buffersAreDirectAndNative() {
+        MeshBuilder builder = new MeshBuilder(4, 6, 2);
+
+        assertTrue(builder.getVertexBuffer().isDirect());
+        assertEquals(ByteOrder.nativeOrder(), builder.getVertexBuffer().order());
+        assertTrue(builder.getIndexBuffer().isDirect());
+        assertEquals(ByteOrder.nativeOrder(), builder.getIndexBuffer().order());
+    }
+
+    @Test
+    public void verticesAreInterleavedAcrossCalls() {
+        MeshBuilder builder = new MeshBuilder(2, 0, 3, 2);
+        builder.put(1, 2, 3).put(0, 1);
+        builder.put(new float[] {4, 5, 6, 1, 0});
+
+        assertEquals(2, builder.getVertexCount());
+        assertArrayEquals(new float[] {1, 2, 3, 0, 1, 4, 5, 6, 1, 0}, vertices(builder), 0f);
+    }
+
+    @Test
+    public void partialVertexIsNotCounted() {
+        MeshBuilder builder = new MeshBuilder(2, 0, 2, 2);
+        builder.put(1, 2, 3, 4).put(5, 6);
+
+        assertEquals(1, builder.getVertexCount());
+    }
+
+    @Test
+    public void quadIndicesPackTwoTrianglesPerQuad() {
+        MeshBuilder builder = new MeshBuilder(12, 12, 2);
+        builder.quadIndices(4, 2);
+
+        assertEquals(12, builder.getIndexCount());
+        assertArrayEquals(new short[] {4, 5, 6, 6, 5, 7, 8, 9, 10, 10, 9, 11}, indices(builder));
+    }
+
+    @Test
+    public void quadIndicesReachPastSignedShort() {
+        MeshBuilder builder = new MeshBuilder(0, 6, 2);
+        builder.quadIndices(40000, 1);
+
+        short[] packed = indices(builder);
+        // GL reads them as unsigned shorts.
+        assertEquals(40000, packed[0] & 0xffff);
+        assertEquals(40003, packed[5] & 0xffff);
+    }
+
+    @Test
+    public void explicitIndicesFollowQuadIndices() {
+        MeshBuilder builder = new MeshBuilder(8, 9, 2);
+        builder.quadIndices(0, 1).index(new short[] {4, 5, 6});
+
+        assertArrayEquals(new short[] {0, 1, 2, 2, 1, 3, 4, 5, 6}, indices(builder));
+    }
+
+    @Test
+    public void resetKeepsBuffers() {
+        MeshBuilder builder = new MeshBuilder(4, 6, 2);
+        FloatBuffer vertices = builder.getVertexBuffer();
+        ShortBuffer indices = builder.getIndexBuffer();
+        builder.put(1, 2).put(3, 4);
+        builder.quadIndices(0, 1);
+        builder.reset();
+
+        assertEquals(0, builder.getVertexCount());
+        assertEquals(0, builder.getIndexCount());
+        assertSame(vertices, builder.getVertexBuffer());
+        assertSame(indices, builder.getIndexBuffer());
+        assertEquals(4, builder.getMaxVertexCount());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Draws frames of {@link MyGLRenderer} against a {@link RecordingGL} and checks what a frame costs
+ * once the context is set up: no location lookups, no error queries unless errors are checked,
+ * and no allocations.
+ */
+public class MyGLRendererTest {
+
+    private static final long FRAME_NANOS = 20 * 1000000L;
+    private static final int WARM_UP_FRAMES = 50;
+    private static final int FRAMES = 100;
+
+    private final FakeClock mClock = new FakeClock();
+
+    private static class FakeClock implements FrameScheduler.Clock {
+        long mNanos;
+
+        @Override
+        public long nanoTime() {
+            return mNanos;
+        }
+    }
+
+    private RecordingGL mGL;
+    private MyGLRenderer mRenderer;
+
+    private void create(boolean checksErrors) {
+        FrameScheduler scheduler = new FrameScheduler(mClock, 50, Long.MAX_VALUE / 1000000L);
+        scheduler.wake();
+        mGL = new RecordingGL(checksErrors);
+        mRenderer = new MyGLRenderer(scheduler, mGL);
+        mRenderer.onSurfaceCreated(null, null);
+        mRenderer.onSurfaceChanged(null, 640, 480);
+
+        // The recording GL doesn't read the bitmaps.
+        StickerCompositor compositor = mRenderer.getCompositor();
+        int first = compositor.addSticker(null);
+        int second = compositor.addSticker(null);
+        List<StickerCompositor.Placement> placements = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            placements.add(new StickerCompositor.Placement(i % 2 == 0 ? first : second,
+                    40 * i, 100, 64, 64, 15 * i));
+        }
+        compositor.setPlacements(placements);
+    }
+
+    private void drawFrames(int count) {
+        for (int i = 0; i < count; ++i) {
+            mClock.mNanos += FRAME_NANOS;
+            mRenderer.onDrawFrame(null);
+        }
+    }
+
+    @Test
+    public void releaseFrameMakesNoQueries() {
+        create(false);
+        // The first frame uploads the sticker textures.
+        drawFrames(1);
+        mGL.reset();
+        drawFrames(FRAMES);
+
+        assertEquals(0, mGL.mLocationQueries);
+        assertEquals(0, mGL.mErrorQueries);
+        assertEquals(0, mGL.mTextureUploads);
+        // The square and one run per sticker.
+        assertEquals(3 * FRAMES, mGL.mDraws);
+        assertTrue(mGL.mCalls > 0);
+    }
+
+    @Test
+    public void debugFrameChecksErrors() {
+        create(true);
+        drawFrames(1);
+        mGL.reset();
+        drawFrames(1);
+
+        assertEquals(0, mGL.mLocationQueries);
+        assertTrue(mGL.mErrorQueries > 0);
+    }
+
+    @Test
+    public void releaseFrameDoesNotAllocate() {
+        Assume.assumeTrue(Allocations.isSupported());
+        create(false);
+        drawFrames(WARM_UP_FRAMES);
+
+        long bytes = Allocations.count(new Runnable() {
+            @Override
+            public void run() {
+                drawFrames(FRAMES);
+            }
+        });
+        assertEquals("Bytes allocated by " + FRAMES + " frames", 0, bytes);
+    }
+}
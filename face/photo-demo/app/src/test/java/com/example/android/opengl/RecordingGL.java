@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+/**
+ * {@link GL} for tests that counts the calls made to it instead of drawing. Programs and shaders
+ * always build, names count up from 1, and the first {@link #MAX_DRAWS} draw calls are logged with
+ * the texture bound at the time and their vertex or index count. Recording doesn't allocate, so
+ * that tests can check that a frame doesn't either.
+ */
+class RecordingGL implements GL {
+
+    static final int MAX_DRAWS = 1024;
+
+    private final boolean mChecksErrors;
+    private int mNames;
+    private int mBoundTexture;
+
+    int mCalls;
+    int mLocationQueries;
+    int mErrorQueries;
+    int mTextureUploads;
+    int mDraws;
+    final int[] mDrawTextures = new int[MAX_DRAWS];
+    final int[] mDrawCounts = new int[MAX_DRAWS];
+
+    RecordingGL(boolean checksErrors) {
+        mChecksErrors = checksErrors;
+    }
+
+    /**
+     * Forgets the calls recorded so far.
+     */
+    void reset() {
+        mCalls = 0;
+        mLocationQueries = 0;
+        mErrorQueries = 0;
+        mTextureUploads = 0;
+        mDraws = 0;
+    }
+
+    private void generate(int n, int[] names, int offset) {
+        for (int i = 0; i < n; ++i) {
+            names[offset + i] = ++mNames;
+        }
+    }
+
+    private void recordDraw(int count) {
+        if (mDraws < MAX_DRAWS) {
+            mDrawTextures[mDraws] = mBoundTexture;
+            mDrawCounts[mDraws] = count;
+        }
+        mDraws++;
+    }
+
+    @Override
+    public boolean checksErrors() {
+        return mChecksErrors;
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        mCalls++;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        mCalls++;
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        mCalls++;
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        mCalls++;
+        mBoundTexture = texture;
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        mCalls++;
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        mCalls++;
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        mCalls++;
+    }
+
+    @Override
+    public void glClear(int mask) {
+        mCalls++;
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        mCalls++;
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        mCalls++;
+    }
+
+    @Override
+    public int glCreateProgram() {
+        mCalls++;
+        return ++mNames;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        mCalls++;
+        return ++mNames;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        mCalls++;
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        mCalls++;
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        mCalls++;
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        mCalls++;
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        mCalls++;
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        mCalls++;
+        recordDraw(count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mCalls++;
+        recordDraw(count);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        mCalls++;
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        mCalls++;
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        mCalls++;
+        generate(n, buffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        mCalls++;
+        generate(n, textures, offset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        mCalls++;
+        return ++mLocationQueries;
+    }
+
+    @Override
+    public int glGetError() {
+        mCalls++;
+        mErrorQueries++;
+        return GLES20.GL_NO_ERROR;
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        mCalls++;
+        return "";
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        mCalls++;
+        params[offset] = GLES20.GL_TRUE;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        mCalls++;
+        return "";
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        mCalls++;
+        params[offset] = GLES20.GL_TRUE;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        mCalls++;
+        return ++mLocationQueries;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        mCalls++;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        mCalls++;
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        mCalls++;
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        mCalls++;
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        mCalls++;
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        mCalls++;
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                                   int offset) {
+        mCalls++;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        mCalls++;
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, int offset) {
+        mCalls++;
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        mCalls++;
+    }
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        mCalls++;
+        mTextureUploads++;
+    }
+}
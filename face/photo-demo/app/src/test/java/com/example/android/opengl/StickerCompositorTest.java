@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.opengl;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests the quad geometry of {@link StickerCompositor}, which is built on the CPU, and its batching
+ * against a {@link RecordingGL}.
+ */
+public class StickerCompositorTest {
+
+    private static final Logger LOG = Logger.getLogger("StickerCompositorTest");
+    private static final float EPSILON = 1e-4f;
+
+    private final RecordingGL mGL = new RecordingGL(false);
+
+    /**
+     * Returns a compositor set up in a new context, with stickers 0 and 1. The recording GL doesn't
+     * read the bitmaps.
+     */
+    private StickerCompositor compositor() {
+        StickerCompositor compositor = new StickerCompositor(mGL);
+        compositor.addSticker(null);
+        compositor.addSticker(null);
+        compositor.onSurfaceCreated(new ProgramCache(mGL));
+        compositor.onSurfaceChanged(640, 480);
+        mGL.reset();
+        return compositor;
+    }
+
+    /**
+     * Returns placements of the given stickers, in the given order.
+     */
+    private static List<StickerCompositor.Placement> placements(int... stickers) {
+        List<StickerCompositor.Placement> placements = new ArrayList<>();
+        for (int i = 0; i < stickers.length; ++i) {
+            placements.add(new StickerCompositor.Placement(stickers[i], i, i, 10, 10, 0));
+        }
+        return placements;
+    }
+
+    private static int[] repeat(int sticker, int count) {
+        int[] stickers = new int[count];
+        for (int i = 0; i < count; ++i) {
+            stickers[i] = sticker;
+        }
+        return stickers;
+    }
+
+    private static float[] quad(StickerCompositor.Placement placement) {
+        MeshBuilder builder = new MeshBuilder(StickerCompositor.VERTICES_PER_QUAD, 0,
+                StickerCompositor.COORDS_PER_VERTEX, StickerCompositor.TEX_COORDS_PER_VERTEX);
+        StickerCompositor.putQuad(placement, builder);
+        assertEquals(StickerCompositor.VERTICES_PER_QUAD, builder.getVertexCount());
+
+        FloatBuffer buffer = builder.getVertexBuffer().duplicate();
+        buffer.flip();
+        float[] values = new float[buffer.remaining()];
+        buffer.get(values);
+        return values;
+    }
+
+    @Test
+    public void quadCoversPlacement() {
+        float[] values = quad(new StickerCompositor.Placement(0, 100, 50, 40, 20, 0));
+
+        assertArrayEquals(new float[] {
+                80, 40, 0, 0,    // top left
+                80, 60, 0, 1,    // bottom left
+                120, 40, 1, 0,   // top right
+                120, 60, 1, 1    // bottom right
+        }, values, EPSILON);
+    }
+
+    @Test
+    public void quadTurnsClockwiseOnScreen() {
+        float[] values = quad(new StickerCompositor.Placement(0, 100, 50, 40, 20, 90));
+
+        // With y pointing down, a clockwise quarter turn takes the top left corner to the top
+        // right; texture coordinates stay with their corners.
+        assertArrayEquals(new float[] {
+                110, 30, 0, 0,
+                90, 30, 0, 1,
+                110, 70, 1, 0,
+                90, 70, 1, 1
+        }, values, EPSILON);
+    }
+
+    @Test
+    public void quadsMatchQuadIndexOrder() {
+        // quadIndices draws (0, 1, 2) and (2, 1, 3); both must wind the same way.
+        float[] c = StickerCompositor.QUAD_CORNERS;
+
+        assertEquals(Math.signum(cross(c, 0, 1, 2)), Math.signum(cross(c, 2, 1, 3)), 0f);
+    }
+
+    private static float cross(float[] corners, int a, int b, int c) {
+        float abx = corners[b * 4] - corners[a * 4];
+        float aby = corners[b * 4 + 1] - corners[a * 4 + 1];
+        float acx = corners[c * 4] - corners[a * 4];
+        float acy = corners[c * 4 + 1] - corners[a * 4 + 1];
+        return abx * acy - aby * acx;
+    }
+
+    @Test
+    public void drawsOneCallPerStickerRun() {
+        StickerCompositor compositor = compositor();
+        compositor.setPlacements(placements(1, 0, 1, 0, 0));
+        compositor.draw();
+
+        // Sorted by sticker: three quads of sticker 0, then two of sticker 1.
+        assertEquals(2, mGL.mDraws);
+        assertEquals(3 * StickerCompositor.INDICES_PER_QUAD, mGL.mDrawCounts[0]);
+        assertEquals(2 * StickerCompositor.INDICES_PER_QUAD, mGL.mDrawCounts[1]);
+        assertNotEquals(0, mGL.mDrawTextures[0]);
+        assertNotEquals(0, mGL.mDrawTextures[1]);
+        assertNotEquals(mGL.mDrawTextures[0], mGL.mDrawTextures[1]);
+    }
+
+    @Test
+    public void splitsBatchesAtMaxQuads() {
+        StickerCompositor compositor = compositor();
+        compositor.setPlacements(placements(repeat(0, StickerCompositor.MAX_QUADS + 10)));
+        compositor.draw();
+
+        assertEquals(2, mGL.mDraws);
+        assertEquals(StickerCompositor.MAX_QUADS * StickerCompositor.INDICES_PER_QUAD,
+                mGL.mDrawCounts[0]);
+        assertEquals(10 * StickerCompositor.INDICES_PER_QUAD, mGL.mDrawCounts[1]);
+        assertEquals(mGL.mDrawTextures[0], mGL.mDrawTextures[1]);
+    }
+
+    @Test
+    public void runAcrossBatchesIsSplit() {
+        StickerCompositor compositor = compositor();
+        List<StickerCompositor.Placement> placements =
+                placements(repeat(0, StickerCompositor.MAX_QUADS - 6));
+        placements.addAll(placements(repeat(1, 20)));
+        compositor.setPlacements(placements);
+        compositor.draw();
+
+        // The first batch ends with six quads of sticker 1, the second has the other 14.
+        assertEquals(3, mGL.mDraws);
+        assertEquals((StickerCompositor.MAX_QUADS - 6) * StickerCompositor.INDICES_PER_QUAD,
+                mGL.mDrawCounts[0]);
+        assertEquals(6 * StickerCompositor.INDICES_PER_QUAD, mGL.mDrawCounts[1]);
+        assertEquals(14 * StickerCompositor.INDICES_PER_QUAD, mGL.mDrawCounts[2]);
+        assertEquals(mGL.mDrawTextures[1], mGL.mDrawTextures[2]);
+    }
+
+    @Test
+    public void skipsUnknownStickers() {
+        StickerCompositor compositor = compositor();
+        compositor.setPlacements(placements(-1, 0, 7, 7));
+        compositor.draw();
+
+        assertEquals(1, mGL.mDraws);
+        assertEquals(StickerCompositor.INDICES_PER_QUAD, mGL.mDrawCounts[0]);
+        assertEquals(1, mGL.mTextureUploads);
+    }
+
+    @Test
+    public void drawsNothingForUnknownStickersOnly() {
+        StickerCompositor compositor = compositor();
+        compositor.setPlacements(placements(2, 3));
+        compositor.draw();
+
+        assertEquals(0, mGL.mDraws);
+        assertEquals(0, mGL.mTextureUploads);
+    }
+
+    @Test
+    public void uploadsEachStickerOncePerContext() {
+        StickerCompositor compositor = compositor();
+        compositor.setPlacements(placements(0, 1, 0));
+        compositor.draw();
+        compositor.draw();
+        compositor.draw();
+
+        assertEquals(2, mGL.mTextureUploads);
+        assertEquals(2, compositor.getTextureUploadCount());
+
+        // A new context has none of the textures.
+        compositor.onSurfaceCreated(new ProgramCache(mGL));
+        compositor.draw();
+        compositor.draw();
+        assertEquals(4, mGL.mTextureUploads);
+        assertEquals(4, compositor.getTextureUploadCount());
+    }
+
+    @Test
+    public void uploadsOnlyStickersInUse() {
+        StickerCompositor compositor = compositor();
+        compositor.setPlacements(placements(1));
+        compositor.draw();
+
+        assertEquals(1, mGL.mTextureUploads);
+    }
+
+    @Test
+    public void batchingCutsDrawCalls() {
+        // 100 quads each of two stickers, drawn one quad per frame and then all in one frame.
+        int[] stickers = new int[200];
+        for (int i = 0; i < stickers.length; ++i) {
+            stickers[i] = i % 2;
+        }
+        List<StickerCompositor.Placement> placements = placements(stickers);
+        StickerCompositor compositor = compositor();
+        compositor.setPlacements(placements);
+        compositor.draw();
+        mGL.reset();
+
+        Mesh.resetDrawCallCount();
+        for (StickerCompositor.Placement placement : placements) {
+            compositor.setPlacements(Collections.singletonList(placement));
+            compositor.draw();
+        }
+        int singleDrawCalls = Mesh.getDrawCallCount();
+        int singleGLCalls = mGL.mCalls;
+
+        mGL.reset();
+        Mesh.resetDrawCallCount();
+        compositor.setPlacements(placements);
+        compositor.draw();
+        int batchedDrawCalls = Mesh.getDrawCallCount();
+        int batchedGLCalls = mGL.mCalls;
+
+        LOG.info(String.format(Locale.US, "%d quads: %d draw calls and %d GL calls one at a time, "
+                + "%d draw calls and %d GL calls batched", placements.size(), singleDrawCalls,
+                singleGLCalls, batchedDrawCalls, batchedGLCalls));
+        assertEquals(placements.size(), singleDrawCalls);
+        assertEquals(2, batchedDrawCalls);
+        assertEquals(mGL.mDraws, batchedDrawCalls);
+    }
+}